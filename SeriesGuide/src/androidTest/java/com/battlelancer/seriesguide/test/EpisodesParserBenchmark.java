@@ -0,0 +1,182 @@
+package com.battlelancer.seriesguide.test;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.InstrumentationTestCase;
+import com.battlelancer.seriesguide.dataliberation.model.Show;
+import com.battlelancer.seriesguide.provider.SeriesGuideContract.Episodes;
+import com.battlelancer.seriesguide.provider.SeriesGuideContract.Seasons;
+import com.battlelancer.seriesguide.provider.SeriesGuideContract.Shows;
+import com.battlelancer.seriesguide.provider.SeriesGuideDatabase;
+import com.battlelancer.seriesguide.provider.SeriesGuideDatabase.Tables;
+import com.battlelancer.seriesguide.thetvdbapi.TheTVDB;
+import com.battlelancer.seriesguide.thetvdbapi.TvdbException;
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Parses a synthetic TVDb episodes XML of a daily show with 5k episodes, then compares writing
+ * the parsed episodes with one insert or update per {@link ContentValues} (like the provider did
+ * before) to writing them with the compiled statements of {@link
+ * SeriesGuideDatabase#insertOrUpdateEpisodesImpl}.
+ */
+public class EpisodesParserBenchmark extends InstrumentationTestCase {
+
+    public static Test suite() {
+        return new TestSuite(EpisodesParserBenchmark.class);
+    }
+
+    /** Does not exist in the app database, so all parsed episodes are new. */
+    private static final int SHOW_TVDB_ID = 999999999;
+    private static final int SEASONS = 25;
+    private static final int EPISODES_PER_SEASON = 200;
+    private static final int EPISODES = SEASONS * EPISODES_PER_SEASON;
+    private static final int RUNS = 5;
+
+    public void test_parseEpisodes() throws TvdbException, UnsupportedEncodingException {
+        byte[] xml = buildEpisodesXml().getBytes("UTF-8");
+
+        // warm up
+        parse(xml);
+
+        long start = System.nanoTime();
+        ArrayList<ContentValues> episodes = null;
+        for (int run = 0; run < RUNS; run++) {
+            episodes = parse(xml);
+        }
+        long msPerRun = (System.nanoTime() - start) / 1000000 / RUNS;
+        System.out.println("parse " + EPISODES + " episodes: " + msPerRun + " ms");
+
+        assertThat(episodes).hasSize(EPISODES);
+    }
+
+    public void test_insertAndUpdateEpisodes() throws TvdbException, UnsupportedEncodingException {
+        ContentValues[] episodes = parse(buildEpisodesXml().getBytes("UTF-8"))
+                .toArray(new ContentValues[EPISODES]);
+
+        SQLiteDatabase before = createDatabase();
+        SQLiteDatabase after = createDatabase();
+        try {
+            long start = System.nanoTime();
+            insertOrUpdateEach(before, episodes);
+            long msInsertBefore = (System.nanoTime() - start) / 1000000;
+            start = System.nanoTime();
+            insertOrUpdateEach(before, episodes);
+            long msUpdateBefore = (System.nanoTime() - start) / 1000000;
+
+            start = System.nanoTime();
+            int inserted = SeriesGuideDatabase.insertOrUpdateEpisodesImpl(after, episodes);
+            long msInsertAfter = (System.nanoTime() - start) / 1000000;
+            start = System.nanoTime();
+            int updated = SeriesGuideDatabase.insertOrUpdateEpisodesImpl(after, episodes);
+            long msUpdateAfter = (System.nanoTime() - start) / 1000000;
+
+            System.out.println("insert " + EPISODES + " episodes, before: " + msInsertBefore
+                    + " ms, after: " + msInsertAfter + " ms");
+            System.out.println("update " + EPISODES + " episodes, before: " + msUpdateBefore
+                    + " ms, after: " + msUpdateAfter + " ms");
+
+            assertThat(inserted).isEqualTo(EPISODES);
+            assertThat(updated).isEqualTo(EPISODES);
+            assertThat(DatabaseUtils.queryNumEntries(after, Tables.EPISODES))
+                    .isEqualTo(DatabaseUtils.queryNumEntries(before, Tables.EPISODES));
+        } finally {
+            before.close();
+            after.close();
+        }
+    }
+
+    private ArrayList<ContentValues> parse(byte[] xml) throws TvdbException {
+        Show show = new Show();
+        show.tvdbId = SHOW_TVDB_ID;
+        show.airtime = 23 * 60 * 60 * 1000;
+        show.country = "United States";
+        return TheTVDB.parseEpisodes(getInstrumentation().getTargetContext(), show,
+                new ByteArrayInputStream(xml), new ArrayList<ContentProviderOperation>());
+    }
+
+    private static String buildEpisodesXml() {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" ?><Data>");
+        xml.append("<Series><id>").append(SHOW_TVDB_ID).append("</id></Series>");
+        int episodeId = 1;
+        for (int season = 1; season <= SEASONS; season++) {
+            for (int number = 1; number <= EPISODES_PER_SEASON; number++) {
+                int day = (season * EPISODES_PER_SEASON + number) % 28 + 1;
+                xml.append("<Episode>")
+                        .append("<id>").append(episodeId++).append("</id>")
+                        .append("<Director>Director</Director>")
+                        .append("<EpisodeName>Episode ").append(number).append("</EpisodeName>")
+                        .append("<EpisodeNumber>").append(number).append("</EpisodeNumber>")
+                        .append("<FirstAired>").append(1990 + season).append("-02-")
+                        .append(day < 10 ? "0" : "").append(day).append("</FirstAired>")
+                        .append("<GuestStars>|Guest One|Guest Two|</GuestStars>")
+                        .append("<IMDB_ID></IMDB_ID>")
+                        .append("<Overview>The host talks to guests about the news of the day."
+                                + "</Overview>")
+                        .append("<Rating>7.5</Rating>")
+                        .append("<SeasonNumber>").append(season).append("</SeasonNumber>")
+                        .append("<Writer>Writer</Writer>")
+                        .append("<absolute_number></absolute_number>")
+                        .append("<filename>episodes/").append(SHOW_TVDB_ID).append("/")
+                        .append(episodeId).append(".jpg</filename>")
+                        .append("<lastupdated>1400000000</lastupdated>")
+                        .append("<seasonid>").append(season).append("</seasonid>")
+                        .append("<seriesid>").append(SHOW_TVDB_ID).append("</seriesid>")
+                        .append("</Episode>");
+            }
+        }
+        return xml.append("</Data>").toString();
+    }
+
+    private static SQLiteDatabase createDatabase() {
+        SQLiteDatabase db = SQLiteDatabase.create(null);
+        db.execSQL("CREATE TABLE " + Tables.EPISODES + " ("
+                + Episodes._ID + " INTEGER PRIMARY KEY,"
+                + Episodes.TITLE + " TEXT NOT NULL,"
+                + Episodes.OVERVIEW + " TEXT,"
+                + Episodes.NUMBER + " INTEGER DEFAULT 0,"
+                + Episodes.SEASON + " INTEGER DEFAULT 0,"
+                + Episodes.DVDNUMBER + " REAL,"
+                + Episodes.FIRSTAIRED + " TEXT,"
+                + Seasons.REF_SEASON_ID + " INTEGER,"
+                + Shows.REF_SHOW_ID + " INTEGER,"
+                + Episodes.WATCHED + " INTEGER DEFAULT 0,"
+                + Episodes.DIRECTORS + " TEXT DEFAULT '',"
+                + Episodes.GUESTSTARS + " TEXT DEFAULT '',"
+                + Episodes.WRITERS + " TEXT DEFAULT '',"
+                + Episodes.IMAGE + " TEXT DEFAULT '',"
+                + Episodes.FIRSTAIREDMS + " INTEGER DEFAULT -1,"
+                + Episodes.COLLECTED + " INTEGER DEFAULT 0,"
+                + Episodes.RATING + " TEXT DEFAULT '',"
+                + Episodes.IMDBID + " TEXT DEFAULT '',"
+                + Episodes.LAST_EDITED + " INTEGER DEFAULT 0,"
+                + Episodes.ABSOLUTE_NUMBER + " INTEGER);");
+        return db;
+    }
+
+    private static void insertOrUpdateEach(SQLiteDatabase db, ContentValues[] episodes) {
+        db.beginTransaction();
+        try {
+            for (ContentValues values : episodes) {
+                int updated = db.update(Tables.EPISODES, values, Episodes._ID + "=?",
+                        new String[] {
+                                values.getAsString(Episodes._ID)
+                        });
+                if (updated == 0) {
+                    db.insert(Tables.EPISODES, null, values);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+}
@@ -0,0 +1,169 @@
+package com.battlelancer.seriesguide.test;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import com.battlelancer.seriesguide.provider.SeriesGuideContract.Episodes;
+import com.battlelancer.seriesguide.provider.SeriesGuideContract.Seasons;
+import com.battlelancer.seriesguide.provider.SeriesGuideContract.Shows;
+import com.battlelancer.seriesguide.provider.SeriesGuideDatabase.Tables;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Compares query plans and latencies of common per-show and per-season episode queries on a
+ * synthetic library of 100k episodes, once with the schema before db version 34 (TEXT references,
+ * no indices) and once with the current schema.
+ */
+public class EpisodesQueryBenchmark extends TestCase {
+
+    public static Test suite() {
+        return new TestSuite(EpisodesQueryBenchmark.class);
+    }
+
+    private static final int SHOWS = 400;
+    private static final int SEASONS_PER_SHOW = 10;
+    private static final int EPISODES_PER_SEASON = 25;
+    private static final int RUNS = 50;
+
+    private static final String QUERY_OF_SHOW = "SELECT " + Episodes._ID + "," + Episodes.SEASON
+            + "," + Episodes.NUMBER + " FROM " + Tables.EPISODES + " WHERE " + Shows.REF_SHOW_ID
+            + "=? ORDER BY " + Episodes.SEASON + "," + Episodes.NUMBER;
+
+    private static final String QUERY_OF_SEASON = "SELECT " + Episodes._ID + " FROM "
+            + Tables.EPISODES + " WHERE " + Seasons.REF_SEASON_ID + "=?";
+
+    private static final String QUERY_NEXT = "SELECT " + Episodes._ID + " FROM "
+            + Tables.EPISODES + " WHERE " + Shows.REF_SHOW_ID + "=? AND " + Episodes.WATCHED
+            + "=0 AND " + Episodes.FIRSTAIREDMS + ">? ORDER BY " + Episodes.FIRSTAIREDMS
+            + " LIMIT 1";
+
+    private static final String QUERY_UNWATCHED = "SELECT COUNT(*) FROM " + Tables.EPISODES
+            + " WHERE " + Shows.REF_SHOW_ID + "=? AND " + Episodes.WATCHED + "=0 AND "
+            + Episodes.FIRSTAIREDMS + "!=-1 AND " + Episodes.FIRSTAIREDMS + "<=?";
+
+    public void test_episodeQueries() {
+        SQLiteDatabase before = createLibrary(false);
+        SQLiteDatabase after = createLibrary(true);
+        try {
+            for (String query : new String[] {
+                    QUERY_OF_SHOW, QUERY_OF_SEASON, QUERY_NEXT, QUERY_UNWATCHED
+            }) {
+                long msBefore = benchmark(before, query);
+                long msAfter = benchmark(after, query);
+                System.out.println(query);
+                System.out.println("  before: " + msBefore + " ms, plan: "
+                        + queryPlan(before, query));
+                System.out.println("  after:  " + msAfter + " ms, plan: "
+                        + queryPlan(after, query));
+
+                assertThat(queryPlan(after, query)).contains("INDEX");
+            }
+        } finally {
+            before.close();
+            after.close();
+        }
+    }
+
+    private static SQLiteDatabase createLibrary(boolean isIndexed) {
+        String refType = isIndexed ? "INTEGER" : "TEXT";
+        SQLiteDatabase db = SQLiteDatabase.create(null);
+        db.execSQL("CREATE TABLE " + Tables.EPISODES + " ("
+                + Episodes._ID + " INTEGER PRIMARY KEY,"
+                + Episodes.TITLE + " TEXT NOT NULL,"
+                + Episodes.NUMBER + " INTEGER DEFAULT 0,"
+                + Episodes.SEASON + " INTEGER DEFAULT 0,"
+                + Seasons.REF_SEASON_ID + " " + refType + ","
+                + Shows.REF_SHOW_ID + " " + refType + ","
+                + Episodes.WATCHED + " INTEGER DEFAULT 0,"
+                + Episodes.FIRSTAIREDMS + " INTEGER DEFAULT -1);");
+        if (isIndexed) {
+            db.execSQL("CREATE INDEX episodes_show_season_number ON " + Tables.EPISODES + " ("
+                    + Shows.REF_SHOW_ID + "," + Episodes.SEASON + "," + Episodes.NUMBER + ");");
+            db.execSQL("CREATE INDEX episodes_show_release ON " + Tables.EPISODES + " ("
+                    + Shows.REF_SHOW_ID + "," + Episodes.FIRSTAIREDMS + ");");
+            db.execSQL("CREATE INDEX episodes_show_watched_release ON " + Tables.EPISODES + " ("
+                    + Shows.REF_SHOW_ID + "," + Episodes.WATCHED + "," + Episodes.FIRSTAIREDMS
+                    + ");");
+            db.execSQL("CREATE INDEX episodes_season ON " + Tables.EPISODES + " ("
+                    + Seasons.REF_SEASON_ID + ");");
+        }
+
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + Tables.EPISODES + " ("
+                + Episodes._ID + "," + Episodes.TITLE + "," + Episodes.NUMBER + ","
+                + Episodes.SEASON + "," + Seasons.REF_SEASON_ID + "," + Shows.REF_SHOW_ID + ","
+                + Episodes.WATCHED + "," + Episodes.FIRSTAIREDMS + ") VALUES (?,?,?,?,?,?,?,?)");
+        db.beginTransaction();
+        try {
+            int episodeId = 1;
+            for (int show = 1; show <= SHOWS; show++) {
+                for (int season = 1; season <= SEASONS_PER_SHOW; season++) {
+                    int seasonId = show * 100 + season;
+                    for (int number = 1; number <= EPISODES_PER_SEASON; number++) {
+                        insert.bindLong(1, episodeId++);
+                        insert.bindString(2, "Episode " + number);
+                        insert.bindLong(3, number);
+                        insert.bindLong(4, season);
+                        insert.bindString(5, String.valueOf(seasonId));
+                        insert.bindString(6, String.valueOf(show));
+                        insert.bindLong(7, season < SEASONS_PER_SHOW / 2 ? 1 : 0);
+                        insert.bindLong(8, episodeId * 1000L);
+                        insert.executeInsert();
+                    }
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        insert.close();
+        db.execSQL("ANALYZE");
+        return db;
+    }
+
+    private static String[] argsFor(String query, int run) {
+        if (QUERY_OF_SEASON.equals(query)) {
+            return new String[] {
+                    String.valueOf((run % SHOWS + 1) * 100 + 1)
+            };
+        }
+        if (QUERY_OF_SHOW.equals(query)) {
+            return new String[] {
+                    String.valueOf(run % SHOWS + 1)
+            };
+        }
+        return new String[] {
+                String.valueOf(run % SHOWS + 1), String.valueOf(50000000L)
+        };
+    }
+
+    private static long benchmark(SQLiteDatabase db, String query) {
+        long start = System.nanoTime();
+        for (int run = 0; run < RUNS; run++) {
+            Cursor cursor = db.rawQuery(query, argsFor(query, run));
+            while (cursor.moveToNext()) {
+                cursor.getLong(0);
+            }
+            cursor.close();
+        }
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    private static String queryPlan(SQLiteDatabase db, String query) {
+        Cursor plan = db.rawQuery("EXPLAIN QUERY PLAN " + query, argsFor(query, 0));
+        StringBuilder result = new StringBuilder();
+        int detailColumn = plan.getColumnIndex("detail");
+        while (plan.moveToNext()) {
+            if (result.length() > 0) {
+                result.append("; ");
+            }
+            result.append(plan.getString(detailColumn));
+        }
+        plan.close();
+        return result.toString();
+    }
+
+}
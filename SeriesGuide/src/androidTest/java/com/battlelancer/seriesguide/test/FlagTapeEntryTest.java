@@ -0,0 +1,89 @@
+package com.battlelancer.seriesguide.test;
+
+import com.battlelancer.seriesguide.util.EpisodeTools.EpisodeAction;
+import com.battlelancer.seriesguide.util.FlagTapeEntry;
+import com.battlelancer.seriesguide.util.FlagTapeEntryConverter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.api.Assertions.failBecauseExceptionWasNotThrown;
+
+public class FlagTapeEntryTest extends TestCase {
+
+    public static Test suite() {
+        return new TestSuite(FlagTapeEntryTest.class);
+    }
+
+    public void test_converterRoundTrip() throws IOException {
+        FlagTapeEntryConverter converter = new FlagTapeEntryConverter();
+        FlagTapeEntry entry = new FlagTapeEntry(EpisodeAction.SEASON_WATCHED, 80348,
+                flags(3), false);
+
+        FlagTapeEntry read = converter.from(toBytes(converter, entry));
+
+        assertThat(read.action).isEqualTo(EpisodeAction.SEASON_WATCHED);
+        assertThat(read.showId).isEqualTo(80348);
+        assertThat(read.isFlag).isFalse();
+        assertThat(read.flags).hasSize(3);
+    }
+
+    public void test_converterDetectsCorruption() throws IOException {
+        FlagTapeEntryConverter converter = new FlagTapeEntryConverter();
+        byte[] bytes = toBytes(converter,
+                new FlagTapeEntry(EpisodeAction.EPISODE_WATCHED, 80348, flags(1), true));
+        bytes[bytes.length / 2] ^= 0x01;
+        try {
+            converter.from(bytes);
+            failBecauseExceptionWasNotThrown(IOException.class);
+        } catch (IOException e) {
+            assertThat(e).isInstanceOf(IOException.class);
+        }
+    }
+
+    public void test_merge() {
+        FlagTapeEntry watched = new FlagTapeEntry(EpisodeAction.EPISODE_WATCHED, 80348, flags(1),
+                true);
+        FlagTapeEntry watchedPrevious = new FlagTapeEntry(EpisodeAction.EPISODE_WATCHED_PREVIOUS,
+                80348, flags(4), true);
+        FlagTapeEntry unwatched = new FlagTapeEntry(EpisodeAction.EPISODE_WATCHED, 80348, flags(1),
+                false);
+        FlagTapeEntry collected = new FlagTapeEntry(EpisodeAction.EPISODE_COLLECTED, 80348,
+                flags(1), true);
+        FlagTapeEntry otherShow = new FlagTapeEntry(EpisodeAction.EPISODE_WATCHED, 121361,
+                flags(1), true);
+        FlagTapeEntry seasonWatched = new FlagTapeEntry(EpisodeAction.SEASON_WATCHED, 80348,
+                flags(1), true);
+
+        assertThat(watched.canMergeWith(watchedPrevious)).isTrue();
+        assertThat(watched.canMergeWith(unwatched)).isFalse();
+        assertThat(watched.canMergeWith(collected)).isFalse();
+        assertThat(watched.canMergeWith(otherShow)).isFalse();
+        assertThat(watched.canMergeWith(seasonWatched)).isFalse();
+
+        FlagTapeEntry merged = watched.mergeWith(watchedPrevious);
+        assertThat(merged.action).isEqualTo(EpisodeAction.EPISODE_WATCHED);
+        assertThat(merged.flags).hasSize(5);
+    }
+
+    private static List<FlagTapeEntry.Flag> flags(int count) {
+        List<FlagTapeEntry.Flag> flags = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            flags.add(new FlagTapeEntry.Flag(1, i));
+        }
+        return flags;
+    }
+
+    private static byte[] toBytes(FlagTapeEntryConverter converter, FlagTapeEntry entry)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        converter.toStream(entry, bytes);
+        return bytes.toByteArray();
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.battlelancer.seriesguide.test;
+
+import android.text.format.DateUtils;
+import com.battlelancer.seriesguide.thetvdbapi.TheTVDB.ShowStatus;
+import com.battlelancer.seriesguide.util.ShowUpdateScheduler;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class ShowUpdateSchedulerTest extends TestCase {
+
+    private static final long NOW = 1412000000000L;
+
+    private static final long LONG_AGO = NOW - 365 * DateUtils.DAY_IN_MILLIS;
+
+    public static Test suite() {
+        return new TestSuite(ShowUpdateSchedulerTest.class);
+    }
+
+    public void test_endedShow() {
+        long nextUpdate = ShowUpdateScheduler.getNextUpdateTime(NOW, ShowStatus.ENDED, 0,
+                LONG_AGO);
+        assertThat(nextUpdate - NOW).isEqualTo(28 * DateUtils.DAY_IN_MILLIS);
+    }
+
+    public void test_releaseSoon() {
+        long nextUpdate = ShowUpdateScheduler.getNextUpdateTime(NOW, ShowStatus.CONTINUING,
+                NOW + DateUtils.DAY_IN_MILLIS, LONG_AGO);
+        assertThat(nextUpdate - NOW).isEqualTo(12 * DateUtils.HOUR_IN_MILLIS);
+    }
+
+    public void test_hiatus() {
+        long nearRelease = ShowUpdateScheduler.getNextUpdateTime(NOW, ShowStatus.CONTINUING,
+                NOW + 10 * DateUtils.DAY_IN_MILLIS, LONG_AGO);
+        long farRelease = ShowUpdateScheduler.getNextUpdateTime(NOW, ShowStatus.CONTINUING,
+                NOW + 120 * DateUtils.DAY_IN_MILLIS, LONG_AGO);
+        assertThat(nearRelease - NOW).isEqualTo(5 * DateUtils.DAY_IN_MILLIS);
+        assertThat(farRelease - NOW).isEqualTo(28 * DateUtils.DAY_IN_MILLIS);
+    }
+
+    public void test_recentlyEdited() {
+        long nextUpdate = ShowUpdateScheduler.getNextUpdateTime(NOW, ShowStatus.ENDED, 0,
+                NOW - DateUtils.DAY_IN_MILLIS);
+        assertThat(nextUpdate - NOW).isEqualTo(36 * DateUtils.HOUR_IN_MILLIS);
+    }
+
+    public void test_noReleaseUnknownEdit() {
+        long nextUpdate = ShowUpdateScheduler.getNextUpdateTime(NOW, ShowStatus.UNKNOWN, 0, 0);
+        assertThat(nextUpdate - NOW).isEqualTo(2 * DateUtils.WEEK_IN_MILLIS);
+    }
+
+}
@@ -0,0 +1,117 @@
+package com.battlelancer.seriesguide.test;
+
+import com.battlelancer.seriesguide.util.TimeTools;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Compares the per-episode cost of calculating release times with {@link Calendar} and {@link
+ * SimpleDateFormat} (the previous implementation) with the arithmetic implementation in {@link
+ * TimeTools}, on the release dates of ten years of daily episodes.
+ */
+public class TimeToolsBenchmark extends TestCase {
+
+    public static Test suite() {
+        return new TestSuite(TimeToolsBenchmark.class);
+    }
+
+    private static final String COUNTRY = "Germany";
+    private static final String TIMEZONE_ID_COUNTRY = "Europe/Berlin";
+    private static final int DAYS = 3650;
+    private static final int RUNS = 5;
+
+    public void test_parseEpisodeReleaseTime() {
+        String[] releaseDates = buildReleaseDates();
+        long showReleaseTime = TimeTools.parseShowReleaseTime("8:15pm");
+
+        // both implementations must agree
+        for (String releaseDate : releaseDates) {
+            assertThat(TimeTools.parseEpisodeReleaseTime(releaseDate, showReleaseTime, COUNTRY))
+                    .isEqualTo(parseWithCalendar(releaseDate, showReleaseTime));
+        }
+
+        long nsBefore = Long.MAX_VALUE;
+        long nsAfter = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            for (String releaseDate : releaseDates) {
+                parseWithCalendar(releaseDate, showReleaseTime);
+            }
+            nsBefore = Math.min(nsBefore, (System.nanoTime() - start) / releaseDates.length);
+
+            start = System.nanoTime();
+            for (String releaseDate : releaseDates) {
+                TimeTools.parseEpisodeReleaseTime(releaseDate, showReleaseTime, COUNTRY);
+            }
+            nsAfter = Math.min(nsAfter, (System.nanoTime() - start) / releaseDates.length);
+        }
+
+        System.out.println("parseEpisodeReleaseTime per episode");
+        System.out.println("  before: " + nsBefore + " ns");
+        System.out.println("  after:  " + nsAfter + " ns");
+    }
+
+    private static String[] buildReleaseDates() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2008, Calendar.JANUARY, 1);
+        String[] releaseDates = new String[DAYS];
+        for (int day = 0; day < DAYS; day++) {
+            releaseDates[day] = format.format(calendar.getTime());
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        return releaseDates;
+    }
+
+    /**
+     * The previous implementation, without the US and Canada corrections which do not apply to
+     * {@link #COUNTRY}.
+     */
+    private static long parseWithCalendar(String releaseDateEpisode, long releaseTimeShow) {
+        Calendar calendar = Calendar.getInstance(
+                TimeZone.getTimeZone(TimeTools.TIMEZONE_ID_CUSTOM));
+
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+        dateFormat.setTimeZone(TimeZone.getTimeZone(TimeTools.TIMEZONE_ID_CUSTOM));
+        Date releaseDate;
+        try {
+            releaseDate = dateFormat.parse(releaseDateEpisode);
+        } catch (ParseException e) {
+            return -1;
+        }
+        calendar.setTime(releaseDate);
+        int year = calendar.get(Calendar.YEAR);
+        int month = calendar.get(Calendar.MONTH);
+        int day = calendar.get(Calendar.DAY_OF_MONTH);
+
+        calendar.setTimeInMillis(releaseTimeShow);
+        int hour = calendar.get(Calendar.HOUR_OF_DAY);
+        int minute = calendar.get(Calendar.MINUTE);
+
+        calendar.setTimeZone(TimeZone.getTimeZone(TIMEZONE_ID_COUNTRY));
+        calendar.set(Calendar.YEAR, year);
+        calendar.set(Calendar.MONTH, month);
+        calendar.set(Calendar.DAY_OF_MONTH, day);
+        calendar.set(Calendar.HOUR_OF_DAY, hour);
+        calendar.set(Calendar.MINUTE, minute);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+
+        if (hour == 0) {
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+        }
+
+        return calendar.getTimeInMillis();
+    }
+
+}
@@ -67,6 +67,26 @@ public class TimeToolsTest extends TestCase {
         parseAndCompare("08:00PM", "08:00 PM");
     }
 
+    public void test_parseShowReleaseTime_Invalid() {
+        assertThat(TimeTools.parseShowReleaseTime(null)).isEqualTo(-1);
+        assertThat(TimeTools.parseShowReleaseTime("")).isEqualTo(-1);
+        assertThat(TimeTools.parseShowReleaseTime("8pm")).isEqualTo(-1);
+        assertThat(TimeTools.parseShowReleaseTime("20:00")).isEqualTo(-1);
+        assertThat(TimeTools.parseShowReleaseTime("13:00pm")).isEqualTo(-1);
+    }
+
+    public void test_parseEpisodeReleaseTime_Invalid() {
+        long showReleaseTime = TimeTools.parseShowReleaseTime("8:00pm");
+        assertThat(TimeTools.parseEpisodeReleaseTime(null, showReleaseTime, "Germany"))
+                .isEqualTo(-1);
+        assertThat(TimeTools.parseEpisodeReleaseTime("", showReleaseTime, "Germany"))
+                .isEqualTo(-1);
+        assertThat(TimeTools.parseEpisodeReleaseTime("2013-13-01", showReleaseTime, "Germany"))
+                .isEqualTo(-1);
+        assertThat(TimeTools.parseEpisodeReleaseTime("31.05.2013", showReleaseTime, "Germany"))
+                .isEqualTo(-1);
+    }
+
     private void parseAndCompare(String time, String timeResult) {
         long timeMs = TimeTools.parseShowReleaseTime(time);
         String timeString = TIME_FORMAT_CUSTOM_TIMEZONE.format(new Date(timeMs));
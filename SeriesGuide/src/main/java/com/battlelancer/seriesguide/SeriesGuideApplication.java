@@ -25,6 +25,7 @@ import android.os.StrictMode.VmPolicy;
 import android.preference.PreferenceManager;
 import com.battlelancer.seriesguide.settings.AppSettings;
 import com.battlelancer.seriesguide.settings.DisplaySettings;
+import com.battlelancer.seriesguide.util.TimeTools;
 import com.battlelancer.seriesguide.util.Utils;
 import com.crashlytics.android.Crashlytics;
 import com.google.android.gms.analytics.GoogleAnalytics;
@@ -67,6 +68,9 @@ public class SeriesGuideApplication extends Application {
         // Load the current theme into a global variable
         Utils.updateTheme(DisplaySettings.getThemeIndex(this));
 
+        // Cache device time zone and user-set offset used to calculate release times
+        TimeTools.setUpCaches(this);
+
         // Ensure GA opt-out
         GoogleAnalytics.getInstance(this).setAppOptOut(AppSettings.isGaAppOptOut(this));
         if (BuildConfig.DEBUG) {
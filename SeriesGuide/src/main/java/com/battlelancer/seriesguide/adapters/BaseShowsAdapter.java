@@ -25,7 +25,7 @@ import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 import com.battlelancer.seriesguide.R;
-import com.battlelancer.seriesguide.util.TimeTools;
+import com.battlelancer.seriesguide.util.NetworkAndTimeCache;
 
 /**
  * Base adapter using the shows_row.xml layout with a ViewHolder.
@@ -65,12 +65,12 @@ public abstract class BaseShowsAdapter extends CursorAdapter {
 
     /**
      * Builds a network + release time string for a show formatted like "Network / Tue 08:00 PM".
+     * Strings are cached, see {@link NetworkAndTimeCache}.
      */
     public static String buildNetworkAndTimeString(Context context, long releaseTime,
             String releaseCountry, String releaseDay, String network) {
-        String[] values = TimeTools.formatToShowReleaseTimeAndDay(context, releaseTime,
-                releaseCountry, releaseDay);
-        return network + " / " + values[1] + " " + values[0];
+        return NetworkAndTimeCache.get(context)
+                .getNetworkAndTime(releaseTime, releaseCountry, releaseDay, network);
     }
 
     public static class ViewHolder {
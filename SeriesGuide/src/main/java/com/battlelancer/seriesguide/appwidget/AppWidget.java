@@ -33,7 +33,9 @@ import com.battlelancer.seriesguide.thetvdbapi.TheTVDB;
 import com.battlelancer.seriesguide.ui.ActivityFragment;
 import com.battlelancer.seriesguide.ui.ShowsActivity;
 import com.battlelancer.seriesguide.util.DBUtils;
+import com.battlelancer.seriesguide.util.ReleaseTimeFormatter;
 import com.battlelancer.seriesguide.util.ServiceUtils;
+import com.battlelancer.seriesguide.util.ThumbnailCache;
 import com.battlelancer.seriesguide.util.TimeTools;
 import com.battlelancer.seriesguide.util.Utils;
 import java.io.IOException;
@@ -122,16 +124,13 @@ public class AppWidget extends AppWidgetProvider {
                     item.setTextViewText(R.id.textViewWidgetEpisode,
                             Utils.getNextEpisodeString(this, seasonNumber, episodeNumber, title));
 
-                    Date actualRelease = TimeTools.getEpisodeReleaseTime(context,
-                            upcomingEpisodes.getLong(ActivityFragment.ActivityQuery.RELEASE_TIME_MS)
-                    );
+                    long releaseTimeMs = upcomingEpisodes.getLong(
+                            ActivityFragment.ActivityQuery.RELEASE_TIME_MS);
+                    Date actualRelease = TimeTools.getEpisodeReleaseTime(context, releaseTimeMs);
 
                     // "in 13 mins (Fri)"
                     item.setTextViewText(R.id.widgetAirtime,
-                            getString(R.string.release_date_and_day,
-                                    TimeTools.formatToRelativeLocalReleaseTime(this, actualRelease),
-                                    TimeTools.formatToLocalReleaseDay(actualRelease))
-                    );
+                            ReleaseTimeFormatter.get(this).formatRelativeTimeAndDay(releaseTimeMs));
 
                     // absolute release time and network (if any)
                     String releaseTime = TimeTools.formatToLocalReleaseTime(context, actualRelease);
@@ -151,10 +150,9 @@ public class AppWidget extends AppWidgetProvider {
                             ActivityFragment.ActivityQuery.SHOW_POSTER);
                     try {
                         Bitmap poster = ServiceUtils.getPicasso(this)
-                                .load(TheTVDB.buildPosterUrl(posterPath))
-                                .centerCrop()
-                                .resizeDimen(R.dimen.show_poster_width,
-                                        R.dimen.show_poster_height)
+                                .load(ThumbnailCache.buildUri(this,
+                                        TheTVDB.buildPosterUrl(posterPath),
+                                        R.dimen.show_poster_width, R.dimen.show_poster_height))
                                 .get();
                         item.setImageViewBitmap(R.id.widgetPoster, poster);
                     } catch (IOException e) {
@@ -0,0 +1,374 @@
+/*
+ * Copyright 2014 Uwe Trottmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.battlelancer.seriesguide.appwidget;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.text.TextUtils;
+import android.text.format.DateUtils;
+import android.util.SparseArray;
+import com.battlelancer.seriesguide.R;
+import com.battlelancer.seriesguide.provider.SeriesGuideContract.Episodes;
+import com.battlelancer.seriesguide.provider.SeriesGuideContract.Shows;
+import com.battlelancer.seriesguide.provider.SeriesGuideDatabase.Qualified;
+import com.battlelancer.seriesguide.settings.WidgetSettings;
+import com.battlelancer.seriesguide.thetvdbapi.TheTVDB;
+import com.battlelancer.seriesguide.ui.ActivityFragment;
+import com.battlelancer.seriesguide.util.DBUtils;
+import com.battlelancer.seriesguide.util.LruCache;
+import com.battlelancer.seriesguide.util.ServiceUtils;
+import com.battlelancer.seriesguide.util.ThumbnailCache;
+import com.battlelancer.seriesguide.util.TimeTools;
+import com.battlelancer.seriesguide.util.Utils;
+import com.squareup.picasso.Downloader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import timber.log.Timber;
+
+/**
+ * Rows displayed by list widgets. Each list is queried once and shared by all widgets displaying
+ * it, until shows, episodes or settings change. Lists are also queried again once they are older
+ * than {@link #MAX_AGE}, as episodes move from upcoming to recent over time.
+ *
+ * <p> Poster thumbnails are loaded from local caches only and kept in memory per widget item
+ * size, so refreshing widgets never touches the network.
+ */
+public class WidgetSnapshots {
+
+    private static final long MAX_AGE = DateUtils.MINUTE_IN_MILLIS;
+
+    /**
+     * Load posters of this many rows when querying a list, others are loaded once displayed.
+     */
+    private static final int PRELOADED_POSTERS = 20;
+
+    private static final int POSTER_CACHE_SIZE = 2 * 1024 * 1024; // 2MB
+
+    private static WidgetSnapshots sInstance;
+
+    private final Context mContext;
+
+    /**
+     * Snapshots by list type and whether watched episodes are hidden, see {@link #getKey(int,
+     * boolean)}.
+     */
+    private final SparseArray<Snapshot> mSnapshots = new SparseArray<>();
+
+    /**
+     * Changes whenever shows, episodes or settings change.
+     */
+    private final AtomicInteger mDataGeneration = new AtomicInteger();
+
+    private final LruCache<String, Bitmap> mPosters;
+
+    /**
+     * Thumbnail URIs of posters not found in the local caches, so refreshes do not try again
+     * until lists are queried again.
+     */
+    private final Set<String> mMissingPosters = Collections.synchronizedSet(
+            new HashSet<String>());
+
+    private final OnSharedPreferenceChangeListener mSettingsListener;
+
+    public static synchronized WidgetSnapshots get(Context context) {
+        if (sInstance == null) {
+            sInstance = new WidgetSnapshots(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private WidgetSnapshots(Context context) {
+        mContext = context;
+        mPosters = new LruCache<String, Bitmap>(POSTER_CACHE_SIZE) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getRowBytes() * value.getHeight();
+            }
+        };
+
+        ContentObserver observer = new ContentObserver(null) {
+            @Override
+            public void onChange(boolean selfChange) {
+                invalidate();
+            }
+        };
+        context.getContentResolver().registerContentObserver(Shows.CONTENT_URI, true, observer);
+        context.getContentResolver().registerContentObserver(Episodes.CONTENT_URI, true,
+                observer);
+
+        // settings like hiding specials change which episodes are included, keep a reference as
+        // preferences only hold weak references to listeners
+        mSettingsListener = new OnSharedPreferenceChangeListener() {
+            @Override
+            public void onSharedPreferenceChanged(SharedPreferences sharedPreferences,
+                    String key) {
+                invalidate();
+            }
+        };
+        PreferenceManager.getDefaultSharedPreferences(context)
+                .registerOnSharedPreferenceChangeListener(mSettingsListener);
+    }
+
+    /**
+     * Outdates all lists, they are queried again the next time a widget is refreshed.
+     */
+    public void invalidate() {
+        mDataGeneration.incrementAndGet();
+        mMissingPosters.clear();
+    }
+
+    /**
+     * Returns the rows of the given {@link WidgetSettings.Type} list. Queries them if they are not
+     * available or outdated, so call this from a background thread, e.g. when a widget data set
+     * changed.
+     */
+    public synchronized Row[] getRows(int type, boolean isHideWatched) {
+        int key = getKey(type, isHideWatched);
+        Snapshot snapshot = mSnapshots.get(key);
+        // get before querying, so changes during the query outdate the new snapshot
+        int dataGeneration = mDataGeneration.get();
+        int timeSettingsGeneration = TimeTools.getTimeSettingsGeneration();
+        if (snapshot == null
+                || snapshot.dataGeneration != dataGeneration
+                || snapshot.timeSettingsGeneration != timeSettingsGeneration
+                || SystemClock.elapsedRealtime() - snapshot.createdAt > MAX_AGE) {
+            // posters may have been cached in the meantime, try missing ones again
+            mMissingPosters.clear();
+            Row[] rows = queryRows(type, isHideWatched);
+            if (rows == null) {
+                // keep the previous rows if the query failed
+                return snapshot != null ? snapshot.rows : new Row[0];
+            }
+            snapshot = new Snapshot(rows, dataGeneration, timeSettingsGeneration);
+            mSnapshots.put(key, snapshot);
+            preloadPosters(rows);
+        }
+        return snapshot.rows;
+    }
+
+    private static int getKey(int type, boolean isHideWatched) {
+        return type * 2 + (isHideWatched ? 1 : 0);
+    }
+
+    private Row[] queryRows(int type, boolean isHideWatched) {
+        boolean isShowQuery = type == WidgetSettings.Type.FAVORITES;
+
+        Cursor query;
+        switch (type) {
+            case WidgetSettings.Type.RECENT:
+                // Recent episodes
+                query = DBUtils.getRecentEpisodes(isHideWatched, mContext);
+                break;
+            case WidgetSettings.Type.FAVORITES:
+                // Favorite shows + next episodes, exclude those without
+                // episode
+                query = mContext.getContentResolver().query(
+                        Shows.CONTENT_URI_WITH_NEXT_EPISODE,
+                        ShowsQuery.PROJECTION,
+                        Shows.SELECTION_NO_HIDDEN + " AND " + Shows.SELECTION_FAVORITES
+                                + " AND " + Shows.SELECTION_WITH_NEXT_EPISODE, null,
+                        Shows.DEFAULT_SORT);
+                break;
+            default:
+                // Upcoming episodes
+                query = DBUtils.getUpcomingEpisodes(isHideWatched, mContext);
+                break;
+        }
+        if (query == null) {
+            return null;
+        }
+
+        Row[] rows = new Row[query.getCount()];
+        int position = 0;
+        while (query.moveToNext() && position < rows.length) {
+            // episode description
+            int seasonNumber = query.getInt(isShowQuery ?
+                    ShowsQuery.EPISODE_SEASON : ActivityFragment.ActivityQuery.SEASON);
+            int episodeNumber = query.getInt(isShowQuery ?
+                    ShowsQuery.EPISODE_NUMBER : ActivityFragment.ActivityQuery.NUMBER);
+            String title = query.getString(isShowQuery ?
+                    ShowsQuery.EPISODE_TITLE : ActivityFragment.ActivityQuery.TITLE);
+            String episode = Utils.getNextEpisodeString(mContext, seasonNumber, episodeNumber,
+                    title);
+
+            // absolute release time and network (if any)
+            long releaseTime = query.getLong(isShowQuery ?
+                    ShowsQuery.EPISODE_FIRSTAIRED_MS
+                    : ActivityFragment.ActivityQuery.RELEASE_TIME_MS);
+            String absoluteTime = TimeTools.formatToLocalReleaseTime(mContext,
+                    TimeTools.getEpisodeReleaseTime(mContext, releaseTime));
+            String network = query.getString(isShowQuery ?
+                    ShowsQuery.SHOW_NETWORK : ActivityFragment.ActivityQuery.SHOW_NETWORK);
+            if (!TextUtils.isEmpty(network)) {
+                absoluteTime += " " + network;
+            }
+
+            rows[position++] = new Row(
+                    query.getInt(isShowQuery ?
+                            ShowsQuery.SHOW_NEXT_EPISODE_ID : ActivityFragment.ActivityQuery._ID),
+                    query.getString(isShowQuery ?
+                            ShowsQuery.SHOW_TITLE : ActivityFragment.ActivityQuery.SHOW_TITLE),
+                    episode, releaseTime, absoluteTime,
+                    query.getString(isShowQuery ?
+                            ShowsQuery.SHOW_POSTER : ActivityFragment.ActivityQuery.SHOW_POSTER));
+        }
+        query.close();
+
+        if (position < rows.length) {
+            Row[] queriedRows = new Row[position];
+            System.arraycopy(rows, 0, queriedRows, 0, position);
+            rows = queriedRows;
+        }
+        return rows;
+    }
+
+    private void preloadPosters(Row[] rows) {
+        Set<String> posterPaths = new HashSet<>();
+        for (int i = 0; i < rows.length && posterPaths.size() < PRELOADED_POSTERS; i++) {
+            if (posterPaths.add(rows[i].posterPath)) {
+                getPoster(rows[i].posterPath);
+            }
+        }
+    }
+
+    /**
+     * Returns the poster thumbnail for widget items of the current configuration. Only loads from
+     * memory or the local image caches, returns {@code null} if the poster was not cached yet.
+     * Remembers missing posters until lists are queried again.
+     */
+    public Bitmap getPoster(String posterPath) {
+        if (TextUtils.isEmpty(posterPath)) {
+            return null;
+        }
+
+        // the URI contains the item size in pixels, so is different for each widget size
+        String thumbnailUri = ThumbnailCache.buildUri(mContext,
+                TheTVDB.buildPosterUrl(posterPath),
+                R.dimen.widget_item_width, R.dimen.widget_item_height).toString();
+        Bitmap poster = mPosters.get(thumbnailUri);
+        if (poster != null || mMissingPosters.contains(thumbnailUri)) {
+            return poster;
+        }
+
+        try {
+            Downloader.Response response = ServiceUtils.getPicassoDownloader(mContext)
+                    .load(Uri.parse(thumbnailUri), true);
+            poster = response.getBitmap();
+            if (poster == null) {
+                InputStream in = response.getInputStream();
+                if (in != null) {
+                    try {
+                        poster = BitmapFactory.decodeStream(in);
+                    } finally {
+                        in.close();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Timber.w(e.getMessage() + " Failed to load show poster for widget item: "
+                    + posterPath);
+            mMissingPosters.add(thumbnailUri);
+            return null;
+        }
+
+        if (poster != null) {
+            mPosters.put(thumbnailUri, poster);
+        } else {
+            mMissingPosters.add(thumbnailUri);
+        }
+        return poster;
+    }
+
+    /**
+     * An episode displayed by a list widget, with all text except the relative release time
+     * already formatted.
+     */
+    public static class Row {
+
+        public final int episodeTvdbId;
+        public final String showTitle;
+        public final String episode;
+        public final long releaseTime;
+        public final String absoluteTimeAndNetwork;
+        public final String posterPath;
+
+        Row(int episodeTvdbId, String showTitle, String episode, long releaseTime,
+                String absoluteTimeAndNetwork, String posterPath) {
+            this.episodeTvdbId = episodeTvdbId;
+            this.showTitle = showTitle;
+            this.episode = episode;
+            this.releaseTime = releaseTime;
+            this.absoluteTimeAndNetwork = absoluteTimeAndNetwork;
+            this.posterPath = posterPath;
+        }
+    }
+
+    private static class Snapshot {
+
+        final Row[] rows;
+        final long createdAt;
+        final int dataGeneration;
+        final int timeSettingsGeneration;
+
+        Snapshot(Row[] rows, int dataGeneration, int timeSettingsGeneration) {
+            this.rows = rows;
+            this.createdAt = SystemClock.elapsedRealtime();
+            this.dataGeneration = dataGeneration;
+            this.timeSettingsGeneration = timeSettingsGeneration;
+        }
+    }
+
+    interface ShowsQuery {
+        String[] PROJECTION = {
+                Qualified.SHOWS_ID, Shows.TITLE, Shows.NETWORK, Shows.POSTER, Shows.STATUS,
+                Shows.NEXTEPISODE, Episodes.TITLE, Episodes.NUMBER, Episodes.SEASON,
+                Episodes.FIRSTAIREDMS
+        };
+
+        int SHOW_ID = 0;
+
+        int SHOW_TITLE = 1;
+
+        int SHOW_NETWORK = 2;
+
+        int SHOW_POSTER = 3;
+
+        int SHOW_STATUS = 4;
+
+        int SHOW_NEXT_EPISODE_ID = 5;
+
+        int EPISODE_TITLE = 6;
+
+        int EPISODE_NUMBER = 7;
+
+        int EPISODE_SEASON = 8;
+
+        int EPISODE_FIRSTAIRED_MS = 9;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2014 Uwe Trottmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.battlelancer.seriesguide.backend;
+
+import android.text.format.DateUtils;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import timber.log.Timber;
+
+/**
+ * Uploads items to Hexagon in pages while they are added, e.g. while reading them from a cursor.
+ * Only the page being filled and up to {@link #MAX_UPLOADS_IN_FLIGHT} pages being uploaded are
+ * kept in memory. If all items fit into a single page, it is uploaded on the calling thread when
+ * finishing, without starting any worker threads. Failed page uploads are retried with
+ * exponential backoff. Once a page could not be uploaded, no further pages are uploaded.
+ *
+ * <p> Not thread-safe, add items from a single thread. Always call {@link #finish()}.
+ */
+public abstract class HexagonPagedUploader<T> {
+
+    private static final int MAX_UPLOADS_IN_FLIGHT = 2;
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private static final long INITIAL_BACKOFF_MS = DateUtils.SECOND_IN_MILLIS;
+
+    private final String mTag;
+
+    private final int mPageSize;
+
+    /**
+     * Created once a second page is started.
+     */
+    private ExecutorService mExecutor;
+
+    private final Semaphore mUploadSlots = new Semaphore(MAX_UPLOADS_IN_FLIGHT);
+
+    private List<T> mPage;
+
+    private volatile boolean mHasFailed;
+
+    /**
+     * @param tag Used to identify the uploader when logging.
+     */
+    public HexagonPagedUploader(String tag, int pageSize) {
+        mTag = tag;
+        mPageSize = pageSize;
+        mPage = new ArrayList<>(pageSize);
+    }
+
+    /**
+     * Uploads the given page. Called on a worker thread.
+     */
+    protected abstract void uploadPage(List<T> page) throws IOException;
+
+    /**
+     * Adds an item to the current page. If the page is full, starts uploading it and adds the item
+     * to a new page. Blocks if {@link #MAX_UPLOADS_IN_FLIGHT} pages are already being uploaded.
+     *
+     * @return False if a previous page failed to upload, adding more items is pointless.
+     */
+    public boolean add(T item) {
+        if (mHasFailed) {
+            return false;
+        }
+        if (mPage.size() == mPageSize) {
+            submitPage();
+            if (mHasFailed) {
+                return false;
+            }
+        }
+        mPage.add(item);
+        return true;
+    }
+
+    /**
+     * Uploads the remaining items and waits until all pages are uploaded.
+     *
+     * @return Whether all pages were uploaded successfully.
+     */
+    public boolean finish() {
+        if (mExecutor == null) {
+            // only a single page, upload right here
+            if (!mHasFailed && !mPage.isEmpty()) {
+                uploadWithRetries(mPage);
+            }
+            return !mHasFailed;
+        }
+
+        if (!mHasFailed && !mPage.isEmpty()) {
+            submitPage();
+        }
+        mExecutor.shutdown();
+        try {
+            while (!mExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+                Timber.d(mTag + ": waiting for uploads to finish");
+            }
+        } catch (InterruptedException e) {
+            mExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return !mHasFailed;
+    }
+
+    private void submitPage() {
+        final List<T> page = mPage;
+        mPage = new ArrayList<>(mPageSize);
+
+        try {
+            mUploadSlots.acquire();
+        } catch (InterruptedException e) {
+            mHasFailed = true;
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        if (mExecutor == null) {
+            mExecutor = Executors.newFixedThreadPool(MAX_UPLOADS_IN_FLIGHT);
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    uploadWithRetries(page);
+                } finally {
+                    mUploadSlots.release();
+                }
+            }
+        });
+    }
+
+    private void uploadWithRetries(List<T> page) {
+        long backoff = INITIAL_BACKOFF_MS;
+        for (int attempt = 1; !mHasFailed; attempt++) {
+            try {
+                uploadPage(page);
+                return;
+            } catch (IOException e) {
+                if (attempt == MAX_ATTEMPTS) {
+                    Timber.e(e, mTag + ": failed to upload page of " + page.size() + " items");
+                    mHasFailed = true;
+                    return;
+                }
+                Timber.w(e, mTag + ": failed to upload page, retrying in " + backoff + " ms");
+            } catch (RuntimeException e) {
+                // not worth retrying, e.g. a malformed request
+                Timber.e(e, mTag + ": failed to upload page of " + page.size() + " items");
+                mHasFailed = true;
+                return;
+            }
+
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                mHasFailed = true;
+                Thread.currentThread().interrupt();
+                return;
+            }
+            backoff *= 2;
+        }
+    }
+}
@@ -19,12 +19,14 @@ package com.battlelancer.seriesguide.backend;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import com.battlelancer.seriesguide.backend.settings.HexagonSettings;
 import com.battlelancer.seriesguide.items.SearchResult;
 import com.battlelancer.seriesguide.provider.SeriesGuideContract;
 import com.battlelancer.seriesguide.sync.SgSyncAdapter;
 import com.battlelancer.seriesguide.util.EpisodeTools;
+import com.battlelancer.seriesguide.util.HttpHosts;
 import com.battlelancer.seriesguide.util.MovieTools;
 import com.battlelancer.seriesguide.util.ServiceUtils;
 import com.battlelancer.seriesguide.util.ShowTools;
@@ -33,6 +35,12 @@ import com.battlelancer.seriesguide.util.Utils;
 import com.google.android.gms.auth.GoogleAuthException;
 import com.google.api.client.extensions.android.http.AndroidHttp;
 import com.google.api.client.googleapis.extensions.android.gms.auth.GoogleAccountCredential;
+import com.google.api.client.http.HttpExecuteInterceptor;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpResponseInterceptor;
+import com.google.api.client.http.HttpTransport;
 import com.google.api.client.json.gson.GsonFactory;
 import com.uwetrottmann.androidutils.AndroidUtils;
 import com.uwetrottmann.seriesguide.backend.account.Account;
@@ -54,17 +62,65 @@ public class HexagonTools {
 
     private static GoogleAccountCredential sAccountCredential;
 
+    private static HttpTransport sHttpTransport;
+
     private static Shows sShowsService;
     private static Episodes sEpisodesService;
     private static Movies sMoviesService;
 
+    /**
+     * Returns the transport shared by all hexagon services, so connections can be reused.
+     */
+    private static synchronized HttpTransport getHttpTransport() {
+        if (sHttpTransport == null) {
+            sHttpTransport = AndroidHttp.newCompatibleTransport();
+        }
+        return sHttpTransport;
+    }
+
+    /**
+     * Returns an initializer which authenticates requests with {@link
+     * #getAccountCredential(android.content.Context)} and records their metrics with {@link
+     * com.battlelancer.seriesguide.util.HttpHosts}.
+     */
+    private static HttpRequestInitializer getRequestInitializer(Context context) {
+        final GoogleAccountCredential credential = getAccountCredential(context);
+        return new HttpRequestInitializer() {
+            @Override
+            public void initialize(HttpRequest request) throws IOException {
+                credential.initialize(request);
+
+                final HttpExecuteInterceptor credentialInterceptor = request.getInterceptor();
+                final long[] startTime = new long[1];
+                request.setInterceptor(new HttpExecuteInterceptor() {
+                    @Override
+                    public void intercept(HttpRequest httpRequest) throws IOException {
+                        startTime[0] = SystemClock.elapsedRealtime();
+                        if (credentialInterceptor != null) {
+                            credentialInterceptor.intercept(httpRequest);
+                        }
+                    }
+                });
+                request.setResponseInterceptor(new HttpResponseInterceptor() {
+                    @Override
+                    public void interceptResponse(HttpResponse response) throws IOException {
+                        Long contentLength = response.getHeaders().getContentLength();
+                        HttpHosts.record(response.getRequest().getUrl().getHost(),
+                                SystemClock.elapsedRealtime() - startTime[0],
+                                contentLength == null ? -1 : contentLength, false);
+                    }
+                });
+            }
+        };
+    }
+
     /**
      * Creates and returns a new instance for this hexagon service.
      */
     public static synchronized Account buildAccountService(Context context) {
         Account.Builder builder = new Account.Builder(
-                AndroidHttp.newCompatibleTransport(), new GsonFactory(),
-                getAccountCredential(context)
+                getHttpTransport(), new GsonFactory(),
+                getRequestInitializer(context)
         );
         return CloudEndpointUtils.updateBuilder(builder).build();
     }
@@ -75,8 +131,8 @@ public class HexagonTools {
     public static synchronized Shows getShowsService(Context context) {
         if (sShowsService == null) {
             Shows.Builder builder = new Shows.Builder(
-                    AndroidHttp.newCompatibleTransport(), new GsonFactory(),
-                    getAccountCredential(context)
+                    getHttpTransport(), new GsonFactory(),
+                    getRequestInitializer(context)
             );
             sShowsService = CloudEndpointUtils.updateBuilder(builder).build();
         }
@@ -89,8 +145,8 @@ public class HexagonTools {
     public static synchronized Episodes getEpisodesService(Context context) {
         if (sEpisodesService == null) {
             Episodes.Builder builder = new Episodes.Builder(
-                    AndroidHttp.newCompatibleTransport(), new GsonFactory(),
-                    getAccountCredential(context)
+                    getHttpTransport(), new GsonFactory(),
+                    getRequestInitializer(context)
             );
             sEpisodesService = CloudEndpointUtils.updateBuilder(builder).build();
         }
@@ -103,8 +159,8 @@ public class HexagonTools {
     public static synchronized Movies getMoviesService(Context context) {
         if (sMoviesService == null) {
             Movies.Builder builder = new Movies.Builder(
-                    AndroidHttp.newCompatibleTransport(), new GsonFactory(),
-                    getAccountCredential(context)
+                    getHttpTransport(), new GsonFactory(),
+                    getRequestInitializer(context)
             );
             sMoviesService = CloudEndpointUtils.updateBuilder(builder).build();
         }
@@ -172,13 +228,15 @@ public class HexagonTools {
      *
      * <p> Merges shows, episodes and movies after a sign-in. Consecutive syncs will only download
      * changes to shows, episodes and movies.
+     *
+     * @param changedShows TVDb ids of shows with downloaded episode flags are added to this.
      */
     public static boolean syncWithHexagon(Context context, HashSet<Integer> existingShows,
-            HashMap<Integer, SearchResult> newShows) {
+            HashMap<Integer, SearchResult> newShows, HashSet<Integer> changedShows) {
         Timber.d("syncWithHexagon: syncing...");
 
         //// EPISODES
-        boolean syncEpisodesSuccessful = syncEpisodes(context);
+        boolean syncEpisodesSuccessful = syncEpisodes(context, changedShows);
         Timber.d("syncWithHexagon: episode sync "
                 + (syncEpisodesSuccessful ? "SUCCESSFUL" : "FAILED"));
 
@@ -194,7 +252,7 @@ public class HexagonTools {
         return syncEpisodesSuccessful && syncShowsSuccessful && syncMoviesSuccessful;
     }
 
-    private static boolean syncEpisodes(Context context) {
+    private static boolean syncEpisodes(Context context, HashSet<Integer> changedShows) {
         // get shows that need episode merging
         Cursor query = context.getContentResolver().query(SeriesGuideContract.Shows.CONTENT_URI,
                 new String[] { SeriesGuideContract.Shows._ID },
@@ -220,6 +278,7 @@ public class HexagonTools {
                 mergeSuccessful = false;
                 continue;
             }
+            changedShows.add(showTvdbId);
 
             success = EpisodeTools.Upload.flagsToHexagon(context, showTvdbId);
             if (success) {
@@ -236,7 +295,8 @@ public class HexagonTools {
         query.close();
 
         // download changed episodes and update properties on existing episodes
-        boolean changedDownloadSuccessful = EpisodeTools.Download.flagsFromHexagon(context);
+        boolean changedDownloadSuccessful = EpisodeTools.Download.flagsFromHexagon(context,
+                changedShows);
 
         return mergeSuccessful && changedDownloadSuccessful;
     }
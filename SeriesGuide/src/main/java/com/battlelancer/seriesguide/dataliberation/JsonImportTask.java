@@ -115,6 +115,9 @@ public class JsonImportTask extends AsyncTask<Void, Integer, Integer> {
         // Renew search table
         DBUtils.rebuildFtsTable(mContext);
 
+        // calculate season episode counts
+        DBUtils.updateUnwatchedCountsOfAllShows(mContext);
+
         return SUCCESS;
     }
 
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2014 Uwe Trottmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.battlelancer.seriesguide.provider;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import java.util.LinkedHashSet;
+
+/**
+ * Coalesces content change notifications. The first change is notified right away, further
+ * changes within {@link #WINDOW_MS} are collected and each changed URI is notified only once at the
+ * end of the window. This way loaders do not re-query for every single change during a sync.
+ */
+public class ChangeNotifier {
+
+    private static final long WINDOW_MS = 500;
+
+    private static ChangeNotifier _instance;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private final ContentResolver mResolver;
+
+    private final LinkedHashSet<Uri> mPendingUris = new LinkedHashSet<>();
+
+    private long mWindowEnd;
+
+    private int mRequestedCount;
+
+    private int mDeliveredCount;
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private ChangeNotifier(Context context) {
+        mResolver = context.getApplicationContext().getContentResolver();
+    }
+
+    public static synchronized ChangeNotifier getInstance(Context context) {
+        if (_instance == null) {
+            _instance = new ChangeNotifier(context);
+        }
+        return _instance;
+    }
+
+    /**
+     * Notifies observers of the given URI right away if there was no recent change. Otherwise
+     * notifies at the end of the current window, together with other changes.
+     */
+    public void notifyChange(Uri uri) {
+        synchronized (this) {
+            mRequestedCount++;
+            long now = SystemClock.elapsedRealtime();
+            if (!mPendingUris.isEmpty() || now < mWindowEnd) {
+                if (mPendingUris.isEmpty()) {
+                    mHandler.postDelayed(mFlushRunnable, mWindowEnd - now);
+                }
+                mPendingUris.add(uri);
+                return;
+            }
+            mWindowEnd = now + WINDOW_MS;
+            mDeliveredCount++;
+        }
+        mResolver.notifyChange(uri, null);
+    }
+
+    /**
+     * Notifies all pending changes right away, e.g. at the end of a sync.
+     */
+    public void flush() {
+        Uri[] uris;
+        synchronized (this) {
+            mHandler.removeCallbacks(mFlushRunnable);
+            if (mPendingUris.isEmpty()) {
+                return;
+            }
+            uris = mPendingUris.toArray(new Uri[mPendingUris.size()]);
+            mPendingUris.clear();
+            mWindowEnd = SystemClock.elapsedRealtime() + WINDOW_MS;
+            mDeliveredCount += uris.length;
+        }
+        for (Uri uri : uris) {
+            mResolver.notifyChange(uri, null);
+        }
+    }
+
+    /**
+     * Number of change notifications requested since the app was started.
+     */
+    public synchronized int getRequestedCount() {
+        return mRequestedCount;
+    }
+
+    /**
+     * Number of change notifications actually sent to observers since the app was started.
+     */
+    public synchronized int getDeliveredCount() {
+        return mDeliveredCount;
+    }
+
+    /**
+     * Number of change notifications dropped because the same URI was already pending.
+     */
+    public synchronized int getSuppressedCount() {
+        return mRequestedCount - mDeliveredCount - mPendingUris.size();
+    }
+}
@@ -113,7 +113,8 @@ public class SeriesGuideContract {
         String NEXTAIRDATEMS = "series_nextairdate";
 
         /**
-         * Next air date text, e.g. 'Apr 2 (Mon)'.
+         * DEPRECATED. No longer updated, relative release times are formatted from {@link
+         * #NEXTAIRDATEMS} when displayed.
          */
         String NEXTAIRDATETEXT = "series_nextairdatetext";
 
@@ -138,6 +139,12 @@ public class SeriesGuideContract {
          */
         String LASTWATCHEDID = "series_lastwatchedid";
 
+        /**
+         * Time after which the show should be updated from TVDb again, see {@link
+         * com.battlelancer.seriesguide.util.ShowUpdateScheduler}. Added in db version 37.
+         */
+        String NEXT_UPDATE = "series_nextupdate";
+
     }
 
     interface SeasonsColumns {
@@ -342,6 +349,29 @@ public class SeriesGuideContract {
 
     }
 
+    interface ShowStatsColumns {
+
+        /**
+         * Number of episodes of a show, including specials.
+         */
+        String EPISODES = "stats_episodes";
+
+        /**
+         * Number of specials (season 0) of a show.
+         */
+        String SPECIALS = "stats_specials";
+
+        /**
+         * Number of watched episodes of a show, including specials.
+         */
+        String WATCHED = "stats_watched";
+
+        /**
+         * Number of watched specials of a show.
+         */
+        String WATCHED_SPECIALS = "stats_watched_specials";
+    }
+
     private static final Uri BASE_CONTENT_URI = Uri.parse("content://"
             + SeriesGuideApplication.CONTENT_AUTHORITY);
 
@@ -361,6 +391,8 @@ public class SeriesGuideContract {
 
     public static final String PATH_RENEWFTSTABLE = "renewftstable";
 
+    public static final String PATH_UPDATE_SEASON_COUNTS = "updateseasoncounts";
+
     public static final String PATH_SEARCH = "search";
 
     public static final String PATH_FILTER = "filter";
@@ -379,6 +411,14 @@ public class SeriesGuideContract {
 
     public static final String PATH_MOVIES = "movies";
 
+    public static final String PATH_SHOW_STATS = "showstats";
+
+    public static final String PATH_CHECK_SHOW_STATS = "checkshowstats";
+
+    public static final String PATH_EPISODE_FLAGS = "episodeflags";
+
+    public static final String PATH_EPISODE_DETAILS = "episodedetails";
+
     public static class Shows implements ShowsColumns, BaseColumns {
 
         public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon().appendPath(PATH_SHOWS)
@@ -439,6 +479,22 @@ public class SeriesGuideContract {
         public static final Uri CONTENT_URI_WITHSHOW = CONTENT_URI.buildUpon()
                 .appendPath(PATH_WITHSHOW).build();
 
+        /**
+         * Use with bulkInsert to set watched and collected flags of many episodes at once. Values
+         * identify episodes by {@link #REF_SHOW_ID}, {@link #SEASON} and {@link #NUMBER}, see
+         * {@link SeriesGuideDatabase#applyEpisodeFlagsImpl}.
+         */
+        public static final Uri CONTENT_URI_FLAGS = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_EPISODE_FLAGS).build();
+
+        /**
+         * Use with bulkInsert to insert new or update existing episodes with values downloaded
+         * from TVDb at once. Only columns contained in the values are changed on update, see
+         * {@link SeriesGuideDatabase#insertOrUpdateEpisodesImpl}.
+         */
+        public static final Uri CONTENT_URI_DETAILS = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_EPISODE_DETAILS).build();
+
         /**
          * Use if multiple items get returned
          */
@@ -518,6 +574,13 @@ public class SeriesGuideContract {
         public static final String CONTENT_ITEM_TYPE
                 = "vnd.android.cursor.item/vnd.seriesguide.season";
 
+        /**
+         * Query to re-calculate episode counts of all seasons. Pass the current time in ms as the
+         * only selection argument. Nothing is returned.
+         */
+        public static final Uri CONTENT_URI_UPDATE_COUNTS = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_UPDATE_SEASON_COUNTS).build();
+
         public static Uri buildSeasonUri(String seasonTvdbId) {
             return CONTENT_URI.buildUpon().appendPath(seasonTvdbId).build();
         }
@@ -537,6 +600,21 @@ public class SeriesGuideContract {
         public static Uri buildSeasonsOfShowUri(int showTvdbId) {
             return buildSeasonsOfShowUri(String.valueOf(showTvdbId));
         }
+
+        /**
+         * See {@link #CONTENT_URI_UPDATE_COUNTS}, but only for the seasons of the given show.
+         */
+        public static Uri buildUpdateCountsOfShowUri(String showTvdbId) {
+            return CONTENT_URI_UPDATE_COUNTS.buildUpon().appendPath(PATH_OFSHOW)
+                    .appendPath(showTvdbId).build();
+        }
+
+        /**
+         * See {@link #CONTENT_URI_UPDATE_COUNTS}, but only for the given season.
+         */
+        public static Uri buildUpdateCountsOfSeasonUri(String seasonTvdbId) {
+            return CONTENT_URI_UPDATE_COUNTS.buildUpon().appendPath(seasonTvdbId).build();
+        }
     }
 
     public static class EpisodeSearch implements EpisodeSearchColumns {
@@ -683,6 +761,32 @@ public class SeriesGuideContract {
         }
     }
 
+    /**
+     * Episode counts per show, kept up to date by database triggers. Added in db version 36.
+     */
+    public static class ShowStats implements ShowStatsColumns, ShowsColumns {
+
+        /**
+         * Stats of all shows, joined with the {@link Shows} table.
+         */
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_SHOW_STATS).build();
+
+        /**
+         * Special {@link Uri} which, when queried, re-calculates the stats of shows if they do
+         * not match the episodes table. Pass the TVDb ids of the shows to check as selection
+         * arguments, or none to check all shows. Returns nothing.
+         */
+        public static final Uri CONTENT_URI_CHECK = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_CHECK_SHOW_STATS).build();
+
+        /**
+         * Use if multiple items get returned
+         */
+        public static final String CONTENT_TYPE
+                = "vnd.android.cursor.dir/vnd.seriesguide.showstats";
+    }
+
     private SeriesGuideContract() {
     }
 }
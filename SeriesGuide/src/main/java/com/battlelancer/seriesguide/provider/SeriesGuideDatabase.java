@@ -21,18 +21,26 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.provider.BaseColumns;
+import android.text.TextUtils;
+import android.text.format.DateUtils;
+import com.battlelancer.seriesguide.enums.EpisodeFlags;
+import com.battlelancer.seriesguide.enums.SeasonTags;
 import com.battlelancer.seriesguide.provider.SeriesGuideContract.EpisodeSearch;
 import com.battlelancer.seriesguide.provider.SeriesGuideContract.EpisodeSearchColumns;
 import com.battlelancer.seriesguide.provider.SeriesGuideContract.Episodes;
 import com.battlelancer.seriesguide.provider.SeriesGuideContract.EpisodesColumns;
+import com.battlelancer.seriesguide.provider.SeriesGuideContract.ListItemTypes;
 import com.battlelancer.seriesguide.provider.SeriesGuideContract.ListItemsColumns;
 import com.battlelancer.seriesguide.provider.SeriesGuideContract.Lists;
 import com.battlelancer.seriesguide.provider.SeriesGuideContract.ListsColumns;
 import com.battlelancer.seriesguide.provider.SeriesGuideContract.MoviesColumns;
 import com.battlelancer.seriesguide.provider.SeriesGuideContract.SeasonsColumns;
+import com.battlelancer.seriesguide.provider.SeriesGuideContract.ShowStatsColumns;
 import com.battlelancer.seriesguide.provider.SeriesGuideContract.Shows;
 import com.battlelancer.seriesguide.provider.SeriesGuideContract.ShowsColumns;
 import com.battlelancer.seriesguide.util.DBUtils;
@@ -81,7 +89,33 @@ public class SeriesGuideDatabase extends SQLiteOpenHelper {
 
     public static final int DBVER_33_IGNORE_ARTICLE_SORT = 33;
 
-    public static final int DATABASE_VERSION = DBVER_33_IGNORE_ARTICLE_SORT;
+    /**
+     * Changed show and season reference columns of {@link Tables#EPISODES} to INTEGER, added
+     * indices for common episode queries.
+     */
+    public static final int DBVER_34_EPISODE_INDICES = 34;
+
+    /**
+     * Added triggers to keep {@link Tables#EPISODES_SEARCH} in sync with {@link Tables#EPISODES}.
+     */
+    public static final int DBVER_35_SEARCH_TRIGGERS = 35;
+
+    /**
+     * Added {@link Tables#SHOW_STATS} with triggers to keep episode counts per show.
+     */
+    public static final int DBVER_36_SHOW_STATS = 36;
+
+    /**
+     * Added {@link Shows#NEXT_UPDATE} with an index to select shows due for an update.
+     */
+    public static final int DBVER_37_SHOW_NEXT_UPDATE = 37;
+
+    /**
+     * Added {@link Tables#LIST_ITEMS_WITH_DETAILS} with triggers to keep details of list items.
+     */
+    public static final int DBVER_38_LIST_ITEMS_DETAILS = 38;
+
+    public static final int DATABASE_VERSION = DBVER_38_LIST_ITEMS_DETAILS;
 
     private DatabaseUtils.InsertHelper mShowsInserter;
     private DatabaseUtils.InsertHelper mSeasonsInserter;
@@ -100,7 +134,10 @@ public class SeriesGuideDatabase extends SQLiteOpenHelper {
         String SHOWS_NEXT_EPISODE = Tables.SHOWS + "." + Shows.NEXTEPISODE;
         String EPISODES_ID = Tables.EPISODES + "." + Episodes._ID;
         String EPISODES_SHOW_ID = Tables.EPISODES + "." + Shows.REF_SHOW_ID;
+        String SEASONS_ID = Tables.SEASONS + "." + Seasons._ID;
         String SEASONS_SHOW_ID = Tables.SEASONS + "." + Shows.REF_SHOW_ID;
+        String EPISODES_SEASON_ID = Tables.EPISODES + "." + Seasons.REF_SEASON_ID;
+        String SHOW_STATS_SHOW_ID = Tables.SHOW_STATS + "." + Shows.REF_SHOW_ID;
     }
 
     public interface Tables {
@@ -125,87 +162,91 @@ public class SeriesGuideDatabase extends SQLiteOpenHelper {
 
         String EPISODES_SEARCH = "searchtable";
 
-        String LISTS = "lists";
+        String SHOW_STATS = "showstats";
 
-        String LIST_ITEMS = "listitems";
+        String SHOW_STATS_JOIN_SHOWS = SHOW_STATS + " LEFT OUTER JOIN " + SHOWS
+                + " ON " + Qualified.SHOW_STATS_SHOW_ID + "=" + Qualified.SHOWS_ID;
 
-        String LIST_ITEMS_WITH_DETAILS = "(SELECT "
-                + Selections.SHOWS_COLUMNS + " FROM "
-                + "((SELECT " + Selections.LIST_ITEMS_COLUMNS_INTERNAL
-                + " FROM listitems WHERE item_type=1) AS listitems "
-                + "LEFT OUTER JOIN (SELECT " + Selections.SHOWS_COLUMNS_INTERNAL
-                + " FROM series) as series ON item_ref_id=series_id) "
+        String EPISODE_FLAGS_STAGING = "episode_flags_staging";
 
-                + "UNION SELECT " + Selections.SEASONS_COLUMNS + " FROM "
-                + "((SELECT " + Selections.LIST_ITEMS_COLUMNS_INTERNAL
-                + " FROM listitems WHERE item_type=2) AS listitems LEFT OUTER JOIN ("
-                + SEASONS_JOIN_SHOWS
-                + ") AS seasons ON listitems.item_ref_id=seasons._id) "
+        String LISTS = "lists";
 
-                + "UNION SELECT " + Selections.EPISODES_COLUMNS + " FROM "
-                + "((SELECT " + Selections.LIST_ITEMS_COLUMNS_INTERNAL
-                + " FROM listitems WHERE item_type=3) AS listitems LEFT OUTER JOIN ("
-                + EPISODES_JOIN_SHOWS + ") AS episodes ON listitems.item_ref_id=episodes._id))";
+        String LIST_ITEMS = "listitems";
+
+        /**
+         * List items with details of the show, season or episode they reference. Kept up to date
+         * by triggers, so lists do not have to join list items with all three tables each time
+         * they are displayed.
+         */
+        String LIST_ITEMS_WITH_DETAILS = "listitems_details";
 
         String MOVIES = "movies";
     }
 
+    /**
+     * Columns of {@link Tables#LIST_ITEMS_WITH_DETAILS} selected from list items (alias li) joined
+     * with their show (alias s) and season (alias sn) or episode (alias e).
+     */
     private interface Selections {
 
+        String LIST_ITEMS_COLUMNS =
+                "li." + ListItems._ID + ","
+                        + "li." + ListItems.LIST_ITEM_ID + ","
+                        + "li." + Lists.LIST_ID + ","
+                        + "li." + ListItems.TYPE + ","
+                        + "li." + ListItems.ITEM_REF_ID;
+
         String COMMON_SHOW_COLUMNS =
-                Shows.REF_SHOW_ID + ","
-                        + Shows.TITLE + ","
-                        + Shows.POSTER + ","
-                        + Shows.NETWORK + ","
-                        + Shows.STATUS + ","
-                        + Shows.AIRSDAYOFWEEK + ","
-                        + Shows.FAVORITE + ","
-                        + Shows.RELEASE_COUNTRY;
-
-        String COMMON_LIST_ITEMS_COLUMNS =
-                "listitem_id as " + ListItems._ID + ","
-                        + ListItems.LIST_ITEM_ID + ","
-                        + Lists.LIST_ID + ","
-                        + ListItems.TYPE + ","
-                        + ListItems.ITEM_REF_ID;
-
-        String LIST_ITEMS_COLUMNS_INTERNAL =
-                ListItems._ID + " as listitem_id,"
-                        + ListItems.LIST_ITEM_ID + ","
-                        + Lists.LIST_ID + ","
-                        + ListItems.TYPE + ","
-                        + ListItems.ITEM_REF_ID;
-
-        String SHOWS_COLUMNS_INTERNAL =
-                Shows._ID + " as " + COMMON_SHOW_COLUMNS + ","
-                        + Shows.OVERVIEW + ","
-                        + Shows.AIRSTIME + ","
-                        + Shows.NEXTTEXT + ","
-                        + Shows.NEXTAIRDATETEXT;
+                "s." + Shows.TITLE + ","
+                        + "s." + Shows.POSTER + ","
+                        + "s." + Shows.NETWORK + ","
+                        + "s." + Shows.STATUS + ","
+                        + "s." + Shows.AIRSDAYOFWEEK + ","
+                        + "s." + Shows.FAVORITE + ","
+                        + "s." + Shows.RELEASE_COUNTRY;
 
         String SHOWS_COLUMNS =
-                COMMON_LIST_ITEMS_COLUMNS + ","
+                LIST_ITEMS_COLUMNS + ","
+                        + "s." + Shows._ID + ","
                         + COMMON_SHOW_COLUMNS + ","
-                        + Shows.OVERVIEW + ","
-                        + Shows.AIRSTIME + ","
-                        + Shows.NEXTTEXT + ","
-                        + Shows.NEXTAIRDATETEXT;
+                        + "s." + Shows.OVERVIEW + ","
+                        + "s." + Shows.AIRSTIME + ","
+                        + "s." + Shows.NEXTTEXT + ","
+                        + "s." + Shows.NEXTAIRDATEMS;
 
         String SEASONS_COLUMNS =
-                COMMON_LIST_ITEMS_COLUMNS + ","
+                LIST_ITEMS_COLUMNS + ","
+                        + "sn." + Shows.REF_SHOW_ID + ","
                         + COMMON_SHOW_COLUMNS + ","
-                        + Seasons.COMBINED + " as " + Shows.OVERVIEW + ","
-                        + Shows.AIRSTIME + ","
-                        + Shows.NEXTTEXT + ","
-                        + Shows.NEXTAIRDATETEXT;
+                        + "sn." + Seasons.COMBINED + ","
+                        + "s." + Shows.AIRSTIME + ","
+                        + "s." + Shows.NEXTTEXT + ","
+                        + "s." + Shows.NEXTAIRDATEMS;
 
         String EPISODES_COLUMNS =
-                COMMON_LIST_ITEMS_COLUMNS + ","
+                LIST_ITEMS_COLUMNS + ","
+                        + "e." + Shows.REF_SHOW_ID + ","
                         + COMMON_SHOW_COLUMNS + ","
-                        + Episodes.TITLE + " as " + Shows.OVERVIEW + ","
-                        + Episodes.FIRSTAIREDMS + " as " + Shows.AIRSTIME + ","
-                        + Episodes.SEASON + " as " + Shows.NEXTTEXT + ","
-                        + Episodes.NUMBER + " as " + Shows.NEXTAIRDATETEXT;
+                        + "e." + Episodes.TITLE + ","
+                        + "e." + Episodes.FIRSTAIREDMS + ","
+                        + "e." + Episodes.SEASON + ","
+                        + "e." + Episodes.NUMBER;
+
+        String LIST_ITEMS_JOIN_SHOWS = Tables.LIST_ITEMS + " AS li"
+                + " LEFT OUTER JOIN " + Tables.SHOWS + " AS s"
+                + " ON li." + ListItems.ITEM_REF_ID + "=s." + Shows._ID;
+
+        String LIST_ITEMS_JOIN_SEASONS = Tables.LIST_ITEMS + " AS li"
+                + " LEFT OUTER JOIN " + Tables.SEASONS + " AS sn"
+                + " ON li." + ListItems.ITEM_REF_ID + "=sn." + Seasons._ID
+                + " LEFT OUTER JOIN " + Tables.SHOWS + " AS s"
+                + " ON sn." + Shows.REF_SHOW_ID + "=s." + Shows._ID;
+
+        String LIST_ITEMS_JOIN_EPISODES = Tables.LIST_ITEMS + " AS li"
+                + " LEFT OUTER JOIN " + Tables.EPISODES + " AS e"
+                + " ON li." + ListItems.ITEM_REF_ID + "=e." + Episodes._ID
+                + " LEFT OUTER JOIN " + Tables.SHOWS + " AS s"
+                + " ON e." + Shows.REF_SHOW_ID + "=s." + Shows._ID;
     }
 
     interface References {
@@ -274,10 +315,20 @@ public class SeriesGuideDatabase extends SQLiteOpenHelper {
 
             + ShowsColumns.GETGLUEID + " TEXT DEFAULT '',"
 
-            + ShowsColumns.LASTWATCHEDID + " INTEGER DEFAULT 0"
+            + ShowsColumns.LASTWATCHEDID + " INTEGER DEFAULT 0,"
+
+            + ShowsColumns.NEXT_UPDATE + " INTEGER DEFAULT 0"
 
             + ");";
 
+    /**
+     * Shows ordered by the time they are due for an update, e.g. for delta syncs.
+     */
+    private static final String CREATE_SHOWS_INDEX_NEXT_UPDATE = "CREATE INDEX "
+            + "IF NOT EXISTS shows_next_update ON " + Tables.SHOWS + " ("
+            + ShowsColumns.NEXT_UPDATE
+            + ");";
+
     private static final String CREATE_SEASONS_TABLE = "CREATE TABLE " + Tables.SEASONS
             + " ("
 
@@ -316,9 +367,9 @@ public class SeriesGuideDatabase extends SQLiteOpenHelper {
 
             + EpisodesColumns.FIRSTAIRED + " TEXT,"
 
-            + SeasonsColumns.REF_SEASON_ID + " TEXT " + References.SEASON_ID + ","
+            + SeasonsColumns.REF_SEASON_ID + " INTEGER " + References.SEASON_ID + ","
 
-            + ShowsColumns.REF_SHOW_ID + " TEXT " + References.SHOW_ID + ","
+            + ShowsColumns.REF_SHOW_ID + " INTEGER " + References.SHOW_ID + ","
 
             + EpisodesColumns.WATCHED + " INTEGER DEFAULT 0,"
 
@@ -344,6 +395,69 @@ public class SeriesGuideDatabase extends SQLiteOpenHelper {
 
             + ");";
 
+    /**
+     * All columns of {@link Tables#EPISODES}, used to copy rows when re-creating the table.
+     */
+    private static final String EPISODES_COLUMNS = BaseColumns._ID + ","
+            + EpisodesColumns.TITLE + ","
+            + EpisodesColumns.OVERVIEW + ","
+            + EpisodesColumns.NUMBER + ","
+            + EpisodesColumns.SEASON + ","
+            + EpisodesColumns.DVDNUMBER + ","
+            + EpisodesColumns.FIRSTAIRED + ","
+            + SeasonsColumns.REF_SEASON_ID + ","
+            + ShowsColumns.REF_SHOW_ID + ","
+            + EpisodesColumns.WATCHED + ","
+            + EpisodesColumns.DIRECTORS + ","
+            + EpisodesColumns.GUESTSTARS + ","
+            + EpisodesColumns.WRITERS + ","
+            + EpisodesColumns.IMAGE + ","
+            + EpisodesColumns.FIRSTAIREDMS + ","
+            + EpisodesColumns.COLLECTED + ","
+            + EpisodesColumns.RATING + ","
+            + EpisodesColumns.IMDBID + ","
+            + EpisodesColumns.LAST_EDITED + ","
+            + EpisodesColumns.ABSOLUTE_NUMBER;
+
+    /**
+     * Episodes of a show ordered by season and number, e.g. when looking up an episode by its
+     * number.
+     */
+    private static final String CREATE_EPISODES_INDEX_SHOW_SEASON_NUMBER = "CREATE INDEX "
+            + "IF NOT EXISTS episodes_show_season_number ON " + Tables.EPISODES + " ("
+            + ShowsColumns.REF_SHOW_ID + ","
+            + EpisodesColumns.SEASON + ","
+            + EpisodesColumns.NUMBER
+            + ");";
+
+    /**
+     * Episodes of a show ordered by release time, e.g. for the next episode.
+     */
+    private static final String CREATE_EPISODES_INDEX_SHOW_RELEASE = "CREATE INDEX "
+            + "IF NOT EXISTS episodes_show_release ON " + Tables.EPISODES + " ("
+            + ShowsColumns.REF_SHOW_ID + ","
+            + EpisodesColumns.FIRSTAIREDMS
+            + ");";
+
+    /**
+     * Watched or unwatched episodes of a show ordered by release time, e.g. for unwatched
+     * counts.
+     */
+    private static final String CREATE_EPISODES_INDEX_SHOW_WATCHED_RELEASE = "CREATE INDEX "
+            + "IF NOT EXISTS episodes_show_watched_release ON " + Tables.EPISODES + " ("
+            + ShowsColumns.REF_SHOW_ID + ","
+            + EpisodesColumns.WATCHED + ","
+            + EpisodesColumns.FIRSTAIREDMS
+            + ");";
+
+    /**
+     * Episodes of a season, e.g. for the episodes list.
+     */
+    private static final String CREATE_EPISODES_INDEX_SEASON = "CREATE INDEX "
+            + "IF NOT EXISTS episodes_season ON " + Tables.EPISODES + " ("
+            + SeasonsColumns.REF_SEASON_ID
+            + ");";
+
     private static final String CREATE_SEARCH_TABLE = "CREATE VIRTUAL TABLE "
             + Tables.EPISODES_SEARCH + " USING FTS3("
 
@@ -353,6 +467,223 @@ public class SeriesGuideDatabase extends SQLiteOpenHelper {
 
             + ");";
 
+    private static final String SEARCH_INSERT_NEW_EPISODE = "INSERT INTO "
+            + Tables.EPISODES_SEARCH + "(" + EpisodeSearchColumns._DOCID + ","
+            + EpisodeSearchColumns.TITLE + "," + EpisodeSearchColumns.OVERVIEW + ")"
+            + " VALUES (new." + BaseColumns._ID + ",new." + EpisodesColumns.TITLE
+            + ",new." + EpisodesColumns.OVERVIEW + ");";
+
+    private static final String SEARCH_DELETE_OLD_EPISODE = "DELETE FROM "
+            + Tables.EPISODES_SEARCH + " WHERE " + EpisodeSearchColumns._DOCID
+            + "=old." + BaseColumns._ID + ";";
+
+    /**
+     * Adds a search entry for new episodes. Removes any existing entry first, as the same docid
+     * can not be inserted twice.
+     */
+    private static final String CREATE_SEARCH_INSERT_TRIGGER = "CREATE TRIGGER IF NOT EXISTS "
+            + "episodes_search_insert AFTER INSERT ON " + Tables.EPISODES + " BEGIN "
+            + "DELETE FROM " + Tables.EPISODES_SEARCH + " WHERE " + EpisodeSearchColumns._DOCID
+            + "=new." + BaseColumns._ID + ";"
+            + SEARCH_INSERT_NEW_EPISODE
+            + " END;";
+
+    /**
+     * Replaces the search entry if the title or description of an episode actually changed.
+     */
+    private static final String CREATE_SEARCH_UPDATE_TRIGGER = "CREATE TRIGGER IF NOT EXISTS "
+            + "episodes_search_update AFTER UPDATE OF " + EpisodesColumns.TITLE + ","
+            + EpisodesColumns.OVERVIEW + " ON " + Tables.EPISODES
+            + " WHEN old." + EpisodesColumns.TITLE + " IS NOT new." + EpisodesColumns.TITLE
+            + " OR old." + EpisodesColumns.OVERVIEW + " IS NOT new." + EpisodesColumns.OVERVIEW
+            + " BEGIN "
+            + SEARCH_DELETE_OLD_EPISODE
+            + SEARCH_INSERT_NEW_EPISODE
+            + " END;";
+
+    /**
+     * Removes the search entry of deleted episodes.
+     */
+    private static final String CREATE_SEARCH_DELETE_TRIGGER = "CREATE TRIGGER IF NOT EXISTS "
+            + "episodes_search_delete AFTER DELETE ON " + Tables.EPISODES + " BEGIN "
+            + SEARCH_DELETE_OLD_EPISODE
+            + " END;";
+
+    private static final String CREATE_SHOW_STATS_TABLE = "CREATE TABLE " + Tables.SHOW_STATS
+            + " ("
+
+            + ShowsColumns.REF_SHOW_ID + " INTEGER PRIMARY KEY,"
+
+            + ShowStatsColumns.EPISODES + " INTEGER DEFAULT 0,"
+
+            + ShowStatsColumns.SPECIALS + " INTEGER DEFAULT 0,"
+
+            + ShowStatsColumns.WATCHED + " INTEGER DEFAULT 0,"
+
+            + ShowStatsColumns.WATCHED_SPECIALS + " INTEGER DEFAULT 0"
+
+            + ");";
+
+    /**
+     * Builds a SET clause adding (sign 1) or removing (sign -1) the given new or old episode row
+     * to the counts of its show. IS is used as it never returns NULL.
+     */
+    private static String showStatsChange(String row, String sign) {
+        final String isSpecial = "(" + row + "." + EpisodesColumns.SEASON + " IS 0)";
+        final String isWatched = "(" + row + "." + EpisodesColumns.WATCHED + " IS "
+                + EpisodeFlags.WATCHED + ")";
+        return ShowStatsColumns.SPECIALS + "=" + ShowStatsColumns.SPECIALS + sign + isSpecial
+                + "," + ShowStatsColumns.WATCHED + "=" + ShowStatsColumns.WATCHED + sign
+                + isWatched
+                + "," + ShowStatsColumns.WATCHED_SPECIALS + "=" + ShowStatsColumns.WATCHED_SPECIALS
+                + sign + "(" + isSpecial + " AND " + isWatched + ")";
+    }
+
+    private static final String CREATE_SHOW_STATS_INSERT_TRIGGER = "CREATE TRIGGER IF NOT EXISTS "
+            + "show_stats_episode_insert AFTER INSERT ON " + Tables.EPISODES + " BEGIN "
+            + "INSERT OR IGNORE INTO " + Tables.SHOW_STATS + " (" + ShowsColumns.REF_SHOW_ID + ")"
+            + " VALUES (new." + ShowsColumns.REF_SHOW_ID + ");"
+            + "UPDATE " + Tables.SHOW_STATS + " SET "
+            + ShowStatsColumns.EPISODES + "=" + ShowStatsColumns.EPISODES + "+1,"
+            + showStatsChange("new", "+")
+            + " WHERE " + ShowsColumns.REF_SHOW_ID + "=new." + ShowsColumns.REF_SHOW_ID + ";"
+            + " END;";
+
+    /**
+     * Only runs if the watched flag or season of an episode actually changed.
+     */
+    private static final String CREATE_SHOW_STATS_UPDATE_TRIGGER = "CREATE TRIGGER IF NOT EXISTS "
+            + "show_stats_episode_update AFTER UPDATE OF " + EpisodesColumns.WATCHED + ","
+            + EpisodesColumns.SEASON + " ON " + Tables.EPISODES
+            + " WHEN old." + EpisodesColumns.WATCHED + " IS NOT new." + EpisodesColumns.WATCHED
+            + " OR old." + EpisodesColumns.SEASON + " IS NOT new." + EpisodesColumns.SEASON
+            + " BEGIN "
+            + "UPDATE " + Tables.SHOW_STATS + " SET "
+            + showStatsChange("old", "-")
+            + " WHERE " + ShowsColumns.REF_SHOW_ID + "=old." + ShowsColumns.REF_SHOW_ID + ";"
+            + "UPDATE " + Tables.SHOW_STATS + " SET "
+            + showStatsChange("new", "+")
+            + " WHERE " + ShowsColumns.REF_SHOW_ID + "=new." + ShowsColumns.REF_SHOW_ID + ";"
+            + " END;";
+
+    private static final String CREATE_SHOW_STATS_DELETE_TRIGGER = "CREATE TRIGGER IF NOT EXISTS "
+            + "show_stats_episode_delete AFTER DELETE ON " + Tables.EPISODES + " BEGIN "
+            + "UPDATE " + Tables.SHOW_STATS + " SET "
+            + ShowStatsColumns.EPISODES + "=" + ShowStatsColumns.EPISODES + "-1,"
+            + showStatsChange("old", "-")
+            + " WHERE " + ShowsColumns.REF_SHOW_ID + "=old." + ShowsColumns.REF_SHOW_ID + ";"
+            + " END;";
+
+    private static final String CREATE_SHOW_STATS_SHOW_DELETE_TRIGGER
+            = "CREATE TRIGGER IF NOT EXISTS "
+            + "show_stats_show_delete AFTER DELETE ON " + Tables.SHOWS + " BEGIN "
+            + "DELETE FROM " + Tables.SHOW_STATS + " WHERE " + ShowsColumns.REF_SHOW_ID
+            + "=old." + BaseColumns._ID + ";"
+            + " END;";
+
+    /**
+     * Temporary table, only exists for the connection that created it. Keyed by show, season and
+     * episode number so the flag update below can look up staged flags of an episode quickly.
+     */
+    private static final String CREATE_EPISODE_FLAGS_STAGING_TABLE
+            = "CREATE TEMP TABLE IF NOT EXISTS " + Tables.EPISODE_FLAGS_STAGING
+            + " ("
+            + ShowsColumns.REF_SHOW_ID + " INTEGER NOT NULL,"
+            + EpisodesColumns.SEASON + " INTEGER NOT NULL,"
+            + EpisodesColumns.NUMBER + " INTEGER NOT NULL,"
+            + EpisodesColumns.WATCHED + " INTEGER,"
+            + EpisodesColumns.COLLECTED + " INTEGER,"
+            + "PRIMARY KEY (" + ShowsColumns.REF_SHOW_ID + "," + EpisodesColumns.SEASON + ","
+            + EpisodesColumns.NUMBER + ")"
+            + ");";
+
+    private static final String STAGED_FLAGS_MATCH_EPISODE = "f." + ShowsColumns.REF_SHOW_ID
+            + "=" + Tables.EPISODES + "." + ShowsColumns.REF_SHOW_ID
+            + " AND f." + EpisodesColumns.SEASON + "=" + Tables.EPISODES + "."
+            + EpisodesColumns.SEASON
+            + " AND f." + EpisodesColumns.NUMBER + "=" + Tables.EPISODES + "."
+            + EpisodesColumns.NUMBER;
+
+    private static String stagedFlagOrCurrent(String column) {
+        return column + "=IFNULL((SELECT f." + column + " FROM " + Tables.EPISODE_FLAGS_STAGING
+                + " AS f WHERE " + STAGED_FLAGS_MATCH_EPISODE + ")," + column + ")";
+    }
+
+    /**
+     * Sets the staged flags on all matching episodes, keeps the current value if a flag is NULL.
+     * The CROSS JOIN makes SQLite loop over the (small) staging table and look up each episode
+     * using the show, season and number index instead of scanning all episodes.
+     */
+    private static final String UPDATE_EPISODES_FROM_STAGED_FLAGS = "UPDATE " + Tables.EPISODES
+            + " SET " + stagedFlagOrCurrent(EpisodesColumns.WATCHED) + ","
+            + stagedFlagOrCurrent(EpisodesColumns.COLLECTED)
+            + " WHERE " + BaseColumns._ID + " IN (SELECT e." + BaseColumns._ID + " FROM "
+            + Tables.EPISODE_FLAGS_STAGING + " AS f CROSS JOIN " + Tables.EPISODES + " AS e ON "
+            + "e." + ShowsColumns.REF_SHOW_ID + "=f." + ShowsColumns.REF_SHOW_ID
+            + " AND e." + EpisodesColumns.SEASON + "=f." + EpisodesColumns.SEASON
+            + " AND e." + EpisodesColumns.NUMBER + "=f." + EpisodesColumns.NUMBER + ")";
+
+    /**
+     * Episode columns written with TVDb data, bound in this order by {@link
+     * #insertOrUpdateEpisodesImpl}, followed by the episode id.
+     */
+    private static final String[] EPISODE_DETAILS_COLUMNS = {
+            EpisodesColumns.TITLE,
+            EpisodesColumns.OVERVIEW,
+            EpisodesColumns.NUMBER,
+            EpisodesColumns.SEASON,
+            EpisodesColumns.DVDNUMBER,
+            EpisodesColumns.FIRSTAIRED,
+            SeasonsColumns.REF_SEASON_ID,
+            ShowsColumns.REF_SHOW_ID,
+            EpisodesColumns.DIRECTORS,
+            EpisodesColumns.GUESTSTARS,
+            EpisodesColumns.WRITERS,
+            EpisodesColumns.IMAGE,
+            EpisodesColumns.FIRSTAIREDMS,
+            EpisodesColumns.RATING,
+            EpisodesColumns.IMDBID,
+            EpisodesColumns.LAST_EDITED,
+            EpisodesColumns.ABSOLUTE_NUMBER
+    };
+
+    /**
+     * Values used on insert for {@link #EPISODE_DETAILS_COLUMNS} without a value, matching the
+     * defaults of {@link #CREATE_EPISODES_TABLE}. A missing title is stored as empty.
+     */
+    private static final String[] EPISODE_DETAILS_DEFAULTS = {
+            "''", "NULL", "0", "0", "NULL", "NULL", "NULL", "NULL", "''", "''", "''", "''", "-1",
+            "''", "''", "0", "NULL"
+    };
+
+    /**
+     * Changes only columns with a value, like an update with {@link ContentValues} only containing
+     * those columns would.
+     */
+    private static final String UPDATE_EPISODE_DETAILS = buildUpdateEpisodeDetails();
+
+    private static final String INSERT_EPISODE_DETAILS = buildInsertEpisodeDetails();
+
+    private static String buildUpdateEpisodeDetails() {
+        StringBuilder update = new StringBuilder("UPDATE " + Tables.EPISODES + " SET ");
+        for (String column : EPISODE_DETAILS_COLUMNS) {
+            update.append(column).append("=IFNULL(?,").append(column).append("),");
+        }
+        update.setLength(update.length() - 1);
+        return update.append(" WHERE " + BaseColumns._ID + "=?").toString();
+    }
+
+    private static String buildInsertEpisodeDetails() {
+        StringBuilder columns = new StringBuilder();
+        StringBuilder values = new StringBuilder();
+        for (int i = 0; i < EPISODE_DETAILS_COLUMNS.length; i++) {
+            columns.append(EPISODE_DETAILS_COLUMNS[i]).append(",");
+            values.append("IFNULL(?,").append(EPISODE_DETAILS_DEFAULTS[i]).append("),");
+        }
+        return "INSERT INTO " + Tables.EPISODES + " (" + columns + BaseColumns._ID
+                + ") VALUES (" + values + "?)";
+    }
+
     private static final String CREATE_LISTS_TABLE = "CREATE TABLE " + Tables.LISTS
             + " ("
 
@@ -383,6 +714,180 @@ public class SeriesGuideDatabase extends SQLiteOpenHelper {
 
             + ");";
 
+    /**
+     * Columns copied from shows, seasons or episodes have no type, so values are stored as they
+     * are selected, like from the previous UNION query.
+     */
+    private static final String CREATE_LIST_ITEMS_DETAILS_TABLE = "CREATE TABLE "
+            + Tables.LIST_ITEMS_WITH_DETAILS
+            + " ("
+
+            + BaseColumns._ID + " INTEGER PRIMARY KEY,"
+
+            + ListItemsColumns.LIST_ITEM_ID + " TEXT NOT NULL,"
+
+            + ListsColumns.LIST_ID + " TEXT,"
+
+            + ListItemsColumns.TYPE + " INTEGER NOT NULL,"
+
+            + ListItemsColumns.ITEM_REF_ID + " INTEGER,"
+
+            + ShowsColumns.REF_SHOW_ID + " INTEGER,"
+
+            + ShowsColumns.TITLE + ","
+
+            + ShowsColumns.POSTER + ","
+
+            + ShowsColumns.NETWORK + ","
+
+            + ShowsColumns.STATUS + ","
+
+            + ShowsColumns.AIRSDAYOFWEEK + ","
+
+            + ShowsColumns.FAVORITE + ","
+
+            + ShowsColumns.RELEASE_COUNTRY + ","
+
+            + ShowsColumns.OVERVIEW + ","
+
+            + ShowsColumns.AIRSTIME + ","
+
+            + ShowsColumns.NEXTTEXT + ","
+
+            + ShowsColumns.NEXTAIRDATEMS + ","
+
+            + "UNIQUE (" + ListItemsColumns.LIST_ITEM_ID + ")"
+
+            + ");";
+
+    private static final String LIST_ITEMS_DETAILS_COLUMNS = BaseColumns._ID + ","
+            + ListItemsColumns.LIST_ITEM_ID + ","
+            + ListsColumns.LIST_ID + ","
+            + ListItemsColumns.TYPE + ","
+            + ListItemsColumns.ITEM_REF_ID + ","
+            + ShowsColumns.REF_SHOW_ID + ","
+            + ShowsColumns.TITLE + ","
+            + ShowsColumns.POSTER + ","
+            + ShowsColumns.NETWORK + ","
+            + ShowsColumns.STATUS + ","
+            + ShowsColumns.AIRSDAYOFWEEK + ","
+            + ShowsColumns.FAVORITE + ","
+            + ShowsColumns.RELEASE_COUNTRY + ","
+            + ShowsColumns.OVERVIEW + ","
+            + ShowsColumns.AIRSTIME + ","
+            + ShowsColumns.NEXTTEXT + ","
+            + ShowsColumns.NEXTAIRDATEMS;
+
+    /**
+     * Items of a list, e.g. for the lists tabs.
+     */
+    private static final String CREATE_LIST_ITEMS_DETAILS_INDEX_LIST = "CREATE INDEX "
+            + "IF NOT EXISTS listitems_details_list ON " + Tables.LIST_ITEMS_WITH_DETAILS + " ("
+            + ListsColumns.LIST_ID
+            + ");";
+
+    /**
+     * Items of a show or its seasons and episodes, e.g. when the show changes.
+     */
+    private static final String CREATE_LIST_ITEMS_DETAILS_INDEX_SHOW = "CREATE INDEX "
+            + "IF NOT EXISTS listitems_details_show ON " + Tables.LIST_ITEMS_WITH_DETAILS + " ("
+            + ShowsColumns.REF_SHOW_ID
+            + ");";
+
+    /**
+     * Items referencing a show, season or episode, e.g. when the season or episode changes.
+     */
+    private static final String CREATE_LIST_ITEMS_DETAILS_INDEX_ITEM = "CREATE INDEX "
+            + "IF NOT EXISTS listitems_details_item ON " + Tables.LIST_ITEMS_WITH_DETAILS + " ("
+            + ListItemsColumns.TYPE + ","
+            + ListItemsColumns.ITEM_REF_ID
+            + ");";
+
+    /**
+     * Inserts or replaces the details of all list items of the given type matching the given
+     * condition on list items (alias li). Replacing by {@link ListItemsColumns#LIST_ITEM_ID} also
+     * removes details of a list item that was replaced by inserting one with the same id.
+     */
+    private static String insertListItemDetails(int type, String condition) {
+        String columns;
+        String join;
+        switch (type) {
+            case ListItemTypes.SHOW:
+                columns = Selections.SHOWS_COLUMNS;
+                join = Selections.LIST_ITEMS_JOIN_SHOWS;
+                break;
+            case ListItemTypes.SEASON:
+                columns = Selections.SEASONS_COLUMNS;
+                join = Selections.LIST_ITEMS_JOIN_SEASONS;
+                break;
+            default:
+                columns = Selections.EPISODES_COLUMNS;
+                join = Selections.LIST_ITEMS_JOIN_EPISODES;
+                break;
+        }
+        return "INSERT OR REPLACE INTO " + Tables.LIST_ITEMS_WITH_DETAILS
+                + " (" + LIST_ITEMS_DETAILS_COLUMNS + ")"
+                + " SELECT " + columns + " FROM " + join
+                + " WHERE li." + ListItemsColumns.TYPE + "=" + type
+                + " AND (" + condition + ");";
+    }
+
+    private static String insertListItemDetailsOfAllTypes(String condition) {
+        return insertListItemDetails(ListItemTypes.SHOW, condition)
+                + insertListItemDetails(ListItemTypes.SEASON, condition)
+                + insertListItemDetails(ListItemTypes.EPISODE, condition);
+    }
+
+    /**
+     * Condition matching list items of which the details rows match the given condition, so they
+     * can be looked up using the indices of {@link Tables#LIST_ITEMS_WITH_DETAILS}.
+     */
+    private static String listItemDetailsWhere(String detailsCondition) {
+        return "li." + BaseColumns._ID + " IN (SELECT " + BaseColumns._ID + " FROM "
+                + Tables.LIST_ITEMS_WITH_DETAILS + " WHERE " + detailsCondition + ")";
+    }
+
+    private static final String DELETE_OLD_LIST_ITEM_DETAILS = "DELETE FROM "
+            + Tables.LIST_ITEMS_WITH_DETAILS + " WHERE " + BaseColumns._ID
+            + "=old." + BaseColumns._ID + ";";
+
+    private static final String CREATE_LIST_ITEMS_DETAILS_INSERT_TRIGGER
+            = "CREATE TRIGGER IF NOT EXISTS "
+            + "listitems_details_insert AFTER INSERT ON " + Tables.LIST_ITEMS + " BEGIN "
+            + insertListItemDetailsOfAllTypes("li." + BaseColumns._ID + "=new." + BaseColumns._ID)
+            + " END;";
+
+    private static final String CREATE_LIST_ITEMS_DETAILS_UPDATE_TRIGGER
+            = "CREATE TRIGGER IF NOT EXISTS "
+            + "listitems_details_update AFTER UPDATE ON " + Tables.LIST_ITEMS + " BEGIN "
+            + DELETE_OLD_LIST_ITEM_DETAILS
+            + insertListItemDetailsOfAllTypes("li." + BaseColumns._ID + "=new." + BaseColumns._ID)
+            + " END;";
+
+    private static final String CREATE_LIST_ITEMS_DETAILS_DELETE_TRIGGER
+            = "CREATE TRIGGER IF NOT EXISTS "
+            + "listitems_details_delete AFTER DELETE ON " + Tables.LIST_ITEMS + " BEGIN "
+            + DELETE_OLD_LIST_ITEM_DETAILS
+            + " END;";
+
+    /**
+     * Show, season and episode items all display show details.
+     */
+    private static String updateListItemDetailsOfShow(String row) {
+        return insertListItemDetailsOfAllTypes(listItemDetailsWhere(
+                ShowsColumns.REF_SHOW_ID + "=" + row + "." + BaseColumns._ID
+                        + " OR (" + ListItemsColumns.TYPE + "=" + ListItemTypes.SHOW
+                        + " AND " + ListItemsColumns.ITEM_REF_ID + "=" + row + "."
+                        + BaseColumns._ID + ")"));
+    }
+
+    private static String updateListItemDetailsOfItem(int type, String row) {
+        return insertListItemDetails(type, listItemDetailsWhere(
+                ListItemsColumns.TYPE + "=" + type
+                        + " AND " + ListItemsColumns.ITEM_REF_ID + "=" + row + "."
+                        + BaseColumns._ID));
+    }
+
     private static final String CREATE_MOVIES_TABLE = "CREATE TABLE " + Tables.MOVIES
             + " ("
 
@@ -463,17 +968,26 @@ public class SeriesGuideDatabase extends SQLiteOpenHelper {
     @Override
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(CREATE_SHOWS_TABLE);
+        db.execSQL(CREATE_SHOWS_INDEX_NEXT_UPDATE);
 
         db.execSQL(CREATE_SEASONS_TABLE);
 
         db.execSQL(CREATE_EPISODES_TABLE);
+        createEpisodesIndices(db);
 
         db.execSQL(CREATE_SEARCH_TABLE);
+        createSearchTriggers(db);
+
+        db.execSQL(CREATE_SHOW_STATS_TABLE);
+        createShowStatsTriggers(db);
 
         db.execSQL(CREATE_LISTS_TABLE);
 
         db.execSQL(CREATE_LIST_ITEMS_TABLE);
 
+        db.execSQL(CREATE_LIST_ITEMS_DETAILS_TABLE);
+        createListItemsDetailsIndicesAndTriggers(db);
+
         db.execSQL(CREATE_MOVIES_TABLE);
     }
 
@@ -534,7 +1048,17 @@ public class SeriesGuideDatabase extends SQLiteOpenHelper {
                 upgradeToThirtyTwo(db);
             case DBVER_32_MOVIES:
                 upgradeToThirtyThree(db);
-                version = DBVER_33_IGNORE_ARTICLE_SORT;
+            case DBVER_33_IGNORE_ARTICLE_SORT:
+                upgradeToThirtyFour(db);
+            case DBVER_34_EPISODE_INDICES:
+                upgradeToThirtyFive(db);
+            case DBVER_35_SEARCH_TRIGGERS:
+                upgradeToThirtySix(db);
+            case DBVER_36_SHOW_STATS:
+                upgradeToThirtySeven(db);
+            case DBVER_37_SHOW_NEXT_UPDATE:
+                upgradeToThirtyEight(db);
+                version = DBVER_38_LIST_ITEMS_DETAILS;
         }
 
         // drop all tables if version is not right
@@ -557,10 +1081,165 @@ public class SeriesGuideDatabase extends SQLiteOpenHelper {
         db.execSQL("DROP TABLE IF EXISTS " + Tables.MOVIES);
 
         db.execSQL("DROP TABLE IF EXISTS " + Tables.EPISODES_SEARCH);
+        db.execSQL("DROP TABLE IF EXISTS " + Tables.SHOW_STATS);
+        db.execSQL("DROP TABLE IF EXISTS " + Tables.LIST_ITEMS_WITH_DETAILS);
 
         onCreate(db);
     }
 
+    private static void createSearchTriggers(SQLiteDatabase db) {
+        db.execSQL(CREATE_SEARCH_INSERT_TRIGGER);
+        db.execSQL(CREATE_SEARCH_UPDATE_TRIGGER);
+        db.execSQL(CREATE_SEARCH_DELETE_TRIGGER);
+    }
+
+    /**
+     * Add triggers to update {@link Tables#EPISODES_SEARCH} when episodes are inserted, changed or
+     * removed, so it does not need to be re-built after each sync. Re-build it once to start from a
+     * consistent state.
+     */
+    private static void upgradeToThirtyFive(SQLiteDatabase db) {
+        createSearchTriggers(db);
+        rebuildFtsTableImpl(db);
+    }
+
+    private static void createShowStatsTriggers(SQLiteDatabase db) {
+        db.execSQL(CREATE_SHOW_STATS_INSERT_TRIGGER);
+        db.execSQL(CREATE_SHOW_STATS_UPDATE_TRIGGER);
+        db.execSQL(CREATE_SHOW_STATS_DELETE_TRIGGER);
+        db.execSQL(CREATE_SHOW_STATS_SHOW_DELETE_TRIGGER);
+    }
+
+    /**
+     * Add {@link Tables#SHOW_STATS} and triggers to update it when episodes are inserted, flagged
+     * or removed. Calculate the initial stats from existing episodes.
+     */
+    private static void upgradeToThirtySix(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            db.execSQL("DROP TABLE IF EXISTS " + Tables.SHOW_STATS);
+            db.execSQL(CREATE_SHOW_STATS_TABLE);
+            createShowStatsTriggers(db);
+            rebuildShowStatsImpl(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Add {@link Shows#NEXT_UPDATE} with an index. Spread out the first updates by scheduling shows
+     * a week after their last update, like before.
+     */
+    private static void upgradeToThirtySeven(SQLiteDatabase db) {
+        if (isTableColumnMissing(db, Tables.SHOWS, Shows.NEXT_UPDATE)) {
+            db.execSQL("ALTER TABLE " + Tables.SHOWS + " ADD COLUMN " + Shows.NEXT_UPDATE
+                    + " INTEGER DEFAULT 0;");
+        }
+        db.execSQL("UPDATE " + Tables.SHOWS + " SET " + Shows.NEXT_UPDATE + "="
+                + Shows.LASTUPDATED + "+" + DateUtils.WEEK_IN_MILLIS);
+        db.execSQL(CREATE_SHOWS_INDEX_NEXT_UPDATE);
+    }
+
+    private static void createListItemsDetailsIndicesAndTriggers(SQLiteDatabase db) {
+        db.execSQL(CREATE_LIST_ITEMS_DETAILS_INDEX_LIST);
+        db.execSQL(CREATE_LIST_ITEMS_DETAILS_INDEX_SHOW);
+        db.execSQL(CREATE_LIST_ITEMS_DETAILS_INDEX_ITEM);
+
+        db.execSQL(CREATE_LIST_ITEMS_DETAILS_INSERT_TRIGGER);
+        db.execSQL(CREATE_LIST_ITEMS_DETAILS_UPDATE_TRIGGER);
+        db.execSQL(CREATE_LIST_ITEMS_DETAILS_DELETE_TRIGGER);
+
+        createListItemsDetailsTriggers(db, "show", Tables.SHOWS, new String[] {
+                Shows.TITLE, Shows.POSTER, Shows.NETWORK, Shows.STATUS, Shows.AIRSDAYOFWEEK,
+                Shows.FAVORITE, Shows.RELEASE_COUNTRY, Shows.OVERVIEW, Shows.AIRSTIME,
+                Shows.NEXTTEXT, Shows.NEXTAIRDATEMS
+        }, updateListItemDetailsOfShow("new"), updateListItemDetailsOfShow("old"));
+        createListItemsDetailsTriggers(db, "season", Tables.SEASONS, new String[] {
+                Seasons.COMBINED, Shows.REF_SHOW_ID
+        }, updateListItemDetailsOfItem(ListItemTypes.SEASON, "new"),
+                updateListItemDetailsOfItem(ListItemTypes.SEASON, "old"));
+        createListItemsDetailsTriggers(db, "episode", Tables.EPISODES, new String[] {
+                Episodes.TITLE, Episodes.FIRSTAIREDMS, Episodes.SEASON, Episodes.NUMBER,
+                Shows.REF_SHOW_ID
+        }, updateListItemDetailsOfItem(ListItemTypes.EPISODE, "new"),
+                updateListItemDetailsOfItem(ListItemTypes.EPISODE, "old"));
+    }
+
+    /**
+     * Adds triggers to update the details of list items if the referenced row of the given table
+     * is inserted, removed or the value of any of the given columns changes. Updates that only
+     * set the same values again, like when re-writing a show from TVDb, do not run the trigger.
+     */
+    private static void createListItemsDetailsTriggers(SQLiteDatabase db, String name,
+            String table, String[] columns, String updateNew, String updateOld) {
+        final String trigger = "CREATE TRIGGER IF NOT EXISTS listitems_details_" + name;
+        StringBuilder changedColumns = new StringBuilder();
+        for (String column : columns) {
+            if (changedColumns.length() > 0) {
+                changedColumns.append(" OR ");
+            }
+            changedColumns.append("old.").append(column).append(" IS NOT new.").append(column);
+        }
+        db.execSQL(trigger + "_insert AFTER INSERT ON " + table
+                + " BEGIN " + updateNew + " END;");
+        db.execSQL(trigger + "_update AFTER UPDATE OF " + TextUtils.join(",", columns)
+                + " ON " + table + " WHEN " + changedColumns
+                + " BEGIN " + updateNew + " END;");
+        db.execSQL(trigger + "_delete AFTER DELETE ON " + table
+                + " BEGIN " + updateOld + " END;");
+    }
+
+    /**
+     * Add {@link Tables#LIST_ITEMS_WITH_DETAILS} and triggers to update it when list items or the
+     * shows, seasons or episodes they reference change. Copy the details of existing list items.
+     */
+    private static void upgradeToThirtyEight(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            db.execSQL("DROP TABLE IF EXISTS " + Tables.LIST_ITEMS_WITH_DETAILS);
+            db.execSQL(CREATE_LIST_ITEMS_DETAILS_TABLE);
+            createListItemsDetailsIndicesAndTriggers(db);
+            db.execSQL(insertListItemDetails(ListItemTypes.SHOW, "1"));
+            db.execSQL(insertListItemDetails(ListItemTypes.SEASON, "1"));
+            db.execSQL(insertListItemDetails(ListItemTypes.EPISODE, "1"));
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static void createEpisodesIndices(SQLiteDatabase db) {
+        db.execSQL(CREATE_EPISODES_INDEX_SHOW_SEASON_NUMBER);
+        db.execSQL(CREATE_EPISODES_INDEX_SHOW_RELEASE);
+        db.execSQL(CREATE_EPISODES_INDEX_SHOW_WATCHED_RELEASE);
+        db.execSQL(CREATE_EPISODES_INDEX_SEASON);
+    }
+
+    /**
+     * Re-create {@link Tables#EPISODES} to store show and season references as INTEGER instead of
+     * TEXT, then add indices for per-show and per-season episode queries.
+     */
+    private static void upgradeToThirtyFour(SQLiteDatabase db) {
+        final String oldTable = Tables.EPISODES + "_old";
+
+        db.beginTransaction();
+        try {
+            db.execSQL("DROP TABLE IF EXISTS " + oldTable);
+            db.execSQL("ALTER TABLE " + Tables.EPISODES + " RENAME TO " + oldTable);
+            db.execSQL(CREATE_EPISODES_TABLE);
+            // column affinity of the new table converts the references to integers
+            db.execSQL("INSERT INTO " + Tables.EPISODES + "(" + EPISODES_COLUMNS + ")"
+                    + " SELECT " + EPISODES_COLUMNS + " FROM " + oldTable + ";");
+            db.execSQL("DROP TABLE " + oldTable);
+            createEpisodesIndices(db);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
     /**
      * Add shows and movies title column without articles.
      */
@@ -886,7 +1565,7 @@ public class SeriesGuideDatabase extends SQLiteOpenHelper {
 
     /**
      * Drops the current {@link Tables#EPISODES_SEARCH} table and re-creates it with current data
-     * from {@link Tables#EPISODES}.
+     * from {@link Tables#EPISODES}. Usually not necessary as triggers keep it up to date.
      */
     public static void rebuildFtsTableImpl(SQLiteDatabase db) {
         db.beginTransaction();
@@ -902,6 +1581,285 @@ public class SeriesGuideDatabase extends SQLiteOpenHelper {
         }
     }
 
+    /**
+     * Re-calculates {@link Tables#SHOW_STATS} from {@link Tables#EPISODES} with one aggregate
+     * query. Usually not necessary as triggers keep it up to date.
+     */
+    public static void rebuildShowStatsImpl(SQLiteDatabase db) {
+        rebuildShowStatsImpl(db, null);
+    }
+
+    /**
+     * Like {@link #rebuildShowStatsImpl(SQLiteDatabase)}, but if {@code showIds} is not null only
+     * re-calculates the stats of the shows in this comma separated list of show TVDb ids.
+     */
+    private static void rebuildShowStatsImpl(SQLiteDatabase db, String showIds) {
+        final String showSelection = showIds == null ? ""
+                : " WHERE " + Shows.REF_SHOW_ID + " IN (" + showIds + ")";
+        db.beginTransaction();
+        try {
+            db.execSQL("DELETE FROM " + Tables.SHOW_STATS + showSelection);
+            db.execSQL("INSERT INTO " + Tables.SHOW_STATS + " (" + Shows.REF_SHOW_ID + ","
+                    + ShowStatsColumns.EPISODES + "," + ShowStatsColumns.SPECIALS + ","
+                    + ShowStatsColumns.WATCHED + "," + ShowStatsColumns.WATCHED_SPECIALS + ")"
+                    + " SELECT " + Shows.REF_SHOW_ID + ",COUNT(*),"
+                    + "SUM(" + Episodes.SEASON + " IS 0),"
+                    + "SUM(" + Episodes.WATCHED + " IS " + EpisodeFlags.WATCHED + "),"
+                    + "SUM(" + Episodes.SEASON + " IS 0 AND " + Episodes.WATCHED + " IS "
+                    + EpisodeFlags.WATCHED + ")"
+                    + " FROM " + Tables.EPISODES + showSelection
+                    + " GROUP BY " + Shows.REF_SHOW_ID);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Compares the total episode and watched episode counts of {@link Tables#SHOW_STATS} with
+     * {@link Tables#EPISODES}, re-builds the stats if they differ.
+     *
+     * @param showTvdbIds If not null, only checks and re-builds the stats of these shows.
+     * @return Whether the stats were re-built.
+     */
+    public static boolean checkShowStatsImpl(SQLiteDatabase db, String[] showTvdbIds) {
+        String showIds = null;
+        if (showTvdbIds != null) {
+            if (showTvdbIds.length == 0) {
+                return false;
+            }
+            // ids are numbers, inline them instead of binding to not hit the variable limit
+            StringBuilder ids = new StringBuilder();
+            for (String showTvdbId : showTvdbIds) {
+                if (ids.length() > 0) {
+                    ids.append(",");
+                }
+                ids.append(Integer.parseInt(showTvdbId));
+            }
+            showIds = ids.toString();
+        }
+        final String showSelection = showIds == null ? ""
+                : " WHERE " + Shows.REF_SHOW_ID + " IN (" + showIds + ")";
+        final String query = "SELECT"
+                + " (SELECT COUNT(*) FROM " + Tables.EPISODES + showSelection + "),"
+                + " (SELECT COUNT(*) FROM " + Tables.EPISODES
+                + (showIds == null ? " WHERE " : showSelection + " AND ")
+                + Episodes.WATCHED + "=" + EpisodeFlags.WATCHED + "),"
+                + " (SELECT TOTAL(" + ShowStatsColumns.EPISODES + ") FROM " + Tables.SHOW_STATS
+                + showSelection + "),"
+                + " (SELECT TOTAL(" + ShowStatsColumns.WATCHED + ") FROM " + Tables.SHOW_STATS
+                + showSelection + ")";
+        final Cursor counts = db.rawQuery(query, null);
+        boolean isConsistent = true;
+        if (counts != null) {
+            if (counts.moveToFirst()) {
+                isConsistent = counts.getLong(0) == counts.getLong(2)
+                        && counts.getLong(1) == counts.getLong(3);
+            }
+            counts.close();
+        }
+        if (isConsistent) {
+            return false;
+        }
+
+        Timber.w("Show stats out of sync, re-building");
+        rebuildShowStatsImpl(db, showIds);
+        return true;
+    }
+
+    /**
+     * Stages the given episode flags in a temporary table, then applies all of them to {@link
+     * Tables#EPISODES} with a single UPDATE. Values without {@link Shows#REF_SHOW_ID}, {@link
+     * Episodes#SEASON} or {@link Episodes#NUMBER} are skipped. {@link Episodes#WATCHED} or {@link
+     * Episodes#COLLECTED} are only changed if contained.
+     *
+     * @return The number of updated episodes.
+     */
+    public static int applyEpisodeFlagsImpl(SQLiteDatabase db, ContentValues[] flags) {
+        SQLiteStatement insert = null;
+        SQLiteStatement update = null;
+        db.beginTransaction();
+        try {
+            db.execSQL(CREATE_EPISODE_FLAGS_STAGING_TABLE);
+            db.execSQL("DELETE FROM " + Tables.EPISODE_FLAGS_STAGING);
+
+            // if the same episode is contained multiple times, the last flags win
+            insert = db.compileStatement("INSERT OR REPLACE INTO "
+                    + Tables.EPISODE_FLAGS_STAGING + " (" + Shows.REF_SHOW_ID + ","
+                    + Episodes.SEASON + "," + Episodes.NUMBER + "," + Episodes.WATCHED + ","
+                    + Episodes.COLLECTED + ") VALUES (?,?,?,?,?)");
+            for (ContentValues values : flags) {
+                Long showTvdbId = values.getAsLong(Shows.REF_SHOW_ID);
+                Long season = values.getAsLong(Episodes.SEASON);
+                Long number = values.getAsLong(Episodes.NUMBER);
+                if (showTvdbId == null || season == null || number == null) {
+                    // can not identify episode
+                    continue;
+                }
+                insert.clearBindings();
+                insert.bindLong(1, showTvdbId);
+                insert.bindLong(2, season);
+                insert.bindLong(3, number);
+                Long watched = values.getAsLong(Episodes.WATCHED);
+                if (watched != null) {
+                    insert.bindLong(4, watched);
+                }
+                Long collected = values.getAsLong(Episodes.COLLECTED);
+                if (collected != null) {
+                    insert.bindLong(5, collected);
+                }
+                insert.executeInsert();
+            }
+
+            update = db.compileStatement(UPDATE_EPISODES_FROM_STAGED_FLAGS);
+            int updated = update.executeUpdateDelete();
+
+            db.execSQL("DELETE FROM " + Tables.EPISODE_FLAGS_STAGING);
+            db.setTransactionSuccessful();
+            return updated;
+        } finally {
+            db.endTransaction();
+            if (insert != null) {
+                insert.close();
+            }
+            if (update != null) {
+                update.close();
+            }
+        }
+    }
+
+    /**
+     * Updates the episodes of the given values, or inserts them if they do not exist, using one
+     * compiled UPDATE and INSERT statement for all of them. Only columns contained in the values
+     * are changed on update, see {@link #EPISODE_DETAILS_COLUMNS}. Values without {@link
+     * Episodes#_ID} are skipped.
+     *
+     * @return The number of inserted or updated episodes.
+     */
+    public static int insertOrUpdateEpisodesImpl(SQLiteDatabase db, ContentValues[] episodes) {
+        SQLiteStatement update = null;
+        SQLiteStatement insert = null;
+        db.beginTransaction();
+        try {
+            update = db.compileStatement(UPDATE_EPISODE_DETAILS);
+            insert = db.compileStatement(INSERT_EPISODE_DETAILS);
+
+            int changed = 0;
+            for (ContentValues values : episodes) {
+                if (values.get(Episodes._ID) == null) {
+                    // can not identify episode
+                    continue;
+                }
+                bindEpisodeDetails(update, values);
+                if (update.executeUpdateDelete() > 0) {
+                    changed++;
+                } else {
+                    bindEpisodeDetails(insert, values);
+                    try {
+                        insert.executeInsert();
+                        changed++;
+                    } catch (SQLException e) {
+                        Timber.e(e, "Failed to insert episode " + values.get(Episodes._ID));
+                    }
+                }
+                db.yieldIfContendedSafely();
+            }
+
+            db.setTransactionSuccessful();
+            return changed;
+        } finally {
+            db.endTransaction();
+            if (update != null) {
+                update.close();
+            }
+            if (insert != null) {
+                insert.close();
+            }
+        }
+    }
+
+    private static void bindEpisodeDetails(SQLiteStatement statement, ContentValues values) {
+        for (int i = 0; i < EPISODE_DETAILS_COLUMNS.length; i++) {
+            DatabaseUtils.bindObjectToProgram(statement, i + 1,
+                    values.get(EPISODE_DETAILS_COLUMNS[i]));
+        }
+        DatabaseUtils.bindObjectToProgram(statement, EPISODE_DETAILS_COLUMNS.length + 1,
+                values.get(Episodes._ID));
+    }
+
+    private interface SeasonCountsQuery {
+
+        String TABLE = Tables.SEASONS + " LEFT OUTER JOIN " + Tables.EPISODES
+                + " ON " + Qualified.EPISODES_SEASON_ID + "=" + Qualified.SEASONS_ID;
+
+        int SEASON_ID = 0;
+        int TOTAL = 1;
+        int UNWATCHED_RELEASED = 2;
+        int UNWATCHED_NOT_RELEASED = 3;
+        int UNWATCHED_NO_RELEASE = 4;
+        int SKIPPED = 5;
+    }
+
+    private static String countIf(String condition) {
+        return "IFNULL(SUM(CASE WHEN " + condition + " THEN 1 ELSE 0 END),0)";
+    }
+
+    /**
+     * Calculates the total, unwatched released, unwatched not yet released, unwatched without
+     * release date and skipped episode counts of matching {@link Tables#SEASONS} with one grouped
+     * query, then stores them in a single transaction.
+     *
+     * @param selection Restricts the seasons to update, e.g. {@link Qualified#SEASONS_SHOW_ID}.
+     * Pass null to update all seasons.
+     * @return The number of updated seasons.
+     */
+    public static int updateSeasonCountsImpl(SQLiteDatabase db, String selection,
+            String[] selectionArgs, long currentTime) {
+        final String unwatched = Episodes.WATCHED + "=" + EpisodeFlags.UNWATCHED;
+        final Cursor counts = db.query(SeasonCountsQuery.TABLE, new String[] {
+                Qualified.SEASONS_ID,
+                "COUNT(" + Qualified.EPISODES_ID + ")",
+                countIf(unwatched + " AND " + Episodes.FIRSTAIREDMS + "!=-1 AND "
+                        + Episodes.FIRSTAIREDMS + "<=" + currentTime),
+                countIf(unwatched + " AND " + Episodes.FIRSTAIREDMS + ">" + currentTime),
+                countIf(unwatched + " AND " + Episodes.FIRSTAIREDMS + "=-1"),
+                countIf(Episodes.WATCHED + "=" + EpisodeFlags.SKIPPED)
+        }, selection, selectionArgs, Qualified.SEASONS_ID, null, null);
+        if (counts == null) {
+            return 0;
+        }
+
+        int updated = 0;
+        final SQLiteStatement update = db.compileStatement("UPDATE " + Tables.SEASONS + " SET "
+                + Seasons.TOTALCOUNT + "=?,"
+                + Seasons.WATCHCOUNT + "=?,"
+                + Seasons.UNAIREDCOUNT + "=?,"
+                + Seasons.NOAIRDATECOUNT + "=?,"
+                + Seasons.TAGS + "=?"
+                + " WHERE " + Seasons._ID + "=?");
+        db.beginTransaction();
+        try {
+            while (counts.moveToNext()) {
+                update.bindLong(1, counts.getInt(SeasonCountsQuery.TOTAL));
+                update.bindLong(2, counts.getInt(SeasonCountsQuery.UNWATCHED_RELEASED));
+                update.bindLong(3, counts.getInt(SeasonCountsQuery.UNWATCHED_NOT_RELEASED));
+                update.bindLong(4, counts.getInt(SeasonCountsQuery.UNWATCHED_NO_RELEASE));
+                update.bindString(5, counts.getInt(SeasonCountsQuery.SKIPPED) > 0
+                        ? SeasonTags.SKIPPED : SeasonTags.NONE);
+                update.bindLong(6, counts.getInt(SeasonCountsQuery.SEASON_ID));
+                update.execute();
+                updated++;
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            update.close();
+            counts.close();
+        }
+
+        return updated;
+    }
+
     public static Cursor search(String selection, String[] selectionArgs, SQLiteDatabase db) {
         // select
         // _id,episodetitle,episodedescription,number,season,watched,seriestitle
@@ -37,12 +37,15 @@ import com.battlelancer.seriesguide.provider.SeriesGuideContract.ListItems;
 import com.battlelancer.seriesguide.provider.SeriesGuideContract.Lists;
 import com.battlelancer.seriesguide.provider.SeriesGuideContract.Movies;
 import com.battlelancer.seriesguide.provider.SeriesGuideContract.Seasons;
+import com.battlelancer.seriesguide.provider.SeriesGuideContract.ShowStats;
 import com.battlelancer.seriesguide.provider.SeriesGuideContract.Shows;
 import com.battlelancer.seriesguide.provider.SeriesGuideDatabase.Tables;
 import com.battlelancer.seriesguide.ui.SeriesGuidePreferences;
 import com.battlelancer.seriesguide.util.SelectionBuilder;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import timber.log.Timber;
 
 public class SeriesGuideProvider extends ContentProvider {
@@ -105,6 +108,20 @@ public class SeriesGuideProvider extends ContentProvider {
 
     private static final int RENEW_FTSTABLE = 900;
 
+    private static final int UPDATE_SEASON_COUNTS = 901;
+
+    private static final int UPDATE_SEASON_COUNTS_OFSHOW = 902;
+
+    private static final int UPDATE_SEASON_COUNTS_ID = 903;
+
+    private static final int CHECK_SHOW_STATS = 904;
+
+    private static final int EPISODE_FLAGS = 905;
+
+    private static final int EPISODE_DETAILS = 906;
+
+    private static final int SHOW_STATS = 1000;
+
     /**
      * Build and return a {@link UriMatcher} that catches all {@link Uri} variations supported by
      * this {@link ContentProvider}.
@@ -167,6 +184,9 @@ public class SeriesGuideProvider extends ContentProvider {
         matcher.addURI(authority, SeriesGuideContract.PATH_MOVIES, MOVIES);
         matcher.addURI(authority, SeriesGuideContract.PATH_MOVIES + "/*", MOVIES_ID);
 
+        // Show stats
+        matcher.addURI(authority, SeriesGuideContract.PATH_SHOW_STATS, SHOW_STATS);
+
         // Search
         matcher.addURI(authority, SeriesGuideContract.PATH_EPISODESEARCH + "/"
                 + SeriesGuideContract.PATH_SEARCH, EPISODESEARCH);
@@ -178,12 +198,27 @@ public class SeriesGuideProvider extends ContentProvider {
 
         // Ops
         matcher.addURI(authority, SeriesGuideContract.PATH_RENEWFTSTABLE, RENEW_FTSTABLE);
+        matcher.addURI(authority, SeriesGuideContract.PATH_UPDATE_SEASON_COUNTS,
+                UPDATE_SEASON_COUNTS);
+        matcher.addURI(authority,
+                SeriesGuideContract.PATH_UPDATE_SEASON_COUNTS + "/"
+                        + SeriesGuideContract.PATH_OFSHOW + "/*", UPDATE_SEASON_COUNTS_OFSHOW);
+        matcher.addURI(authority, SeriesGuideContract.PATH_UPDATE_SEASON_COUNTS + "/*",
+                UPDATE_SEASON_COUNTS_ID);
+        matcher.addURI(authority, SeriesGuideContract.PATH_CHECK_SHOW_STATS, CHECK_SHOW_STATS);
+        matcher.addURI(authority, SeriesGuideContract.PATH_EPISODE_FLAGS, EPISODE_FLAGS);
+        matcher.addURI(authority, SeriesGuideContract.PATH_EPISODE_DETAILS, EPISODE_DETAILS);
 
         return matcher;
     }
 
     private final ThreadLocal<Boolean> mApplyingBatch = new ThreadLocal<Boolean>();
 
+    /**
+     * Content URIs to notify once the batch currently applied on this thread is committed.
+     */
+    private final ThreadLocal<HashSet<Uri>> mBatchNotifyUris = new ThreadLocal<>();
+
     private SeriesGuideDatabase mDbHelper;
 
     protected SQLiteDatabase mDb;
@@ -245,6 +280,23 @@ public class SeriesGuideProvider extends ContentProvider {
                 SeriesGuideDatabase.rebuildFtsTableImpl(db);
                 return null;
             }
+            case CHECK_SHOW_STATS: {
+                if (SeriesGuideDatabase.checkShowStatsImpl(mDbHelper.getWritableDatabase(),
+                        selectionArgs)) {
+                    ChangeNotifier.getInstance(getContext()).notifyChange(ShowStats.CONTENT_URI);
+                }
+                return null;
+            }
+            case UPDATE_SEASON_COUNTS:
+            case UPDATE_SEASON_COUNTS_OFSHOW:
+            case UPDATE_SEASON_COUNTS_ID: {
+                if (selectionArgs == null) {
+                    throw new IllegalArgumentException(
+                            "selectionArgs must be provided for the Uri: " + uri);
+                }
+                updateSeasonCounts(uri, match, Long.parseLong(selectionArgs[0]));
+                return null;
+            }
             case EPISODESEARCH: {
                 if (selectionArgs == null) {
                     throw new IllegalArgumentException(
@@ -316,6 +368,16 @@ public class SeriesGuideProvider extends ContentProvider {
                 return SearchManager.SUGGEST_MIME_TYPE;
             case RENEW_FTSTABLE:
                 return Episodes.CONTENT_TYPE; // however there is nothing returned
+            case UPDATE_SEASON_COUNTS:
+            case UPDATE_SEASON_COUNTS_OFSHOW:
+            case UPDATE_SEASON_COUNTS_ID:
+                return Seasons.CONTENT_TYPE; // however there is nothing returned
+            case SHOW_STATS:
+            case CHECK_SHOW_STATS:
+                return ShowStats.CONTENT_TYPE;
+            case EPISODE_FLAGS:
+            case EPISODE_DETAILS:
+                return Episodes.CONTENT_TYPE; // however there is nothing returned
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -339,7 +401,7 @@ public class SeriesGuideProvider extends ContentProvider {
         }
 
         if (newItemUri != null) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
 
         return newItemUri;
@@ -351,6 +413,23 @@ public class SeriesGuideProvider extends ContentProvider {
         boolean notifyChange = false;
 
         final SQLiteDatabase db = mDbHelper.getWritableDatabase();
+
+        final int match = sUriMatcher.match(uri);
+        if (match == EPISODE_FLAGS) {
+            int updated = SeriesGuideDatabase.applyEpisodeFlagsImpl(db, values);
+            if (updated > 0) {
+                ChangeNotifier.getInstance(getContext()).notifyChange(Episodes.CONTENT_URI);
+            }
+            return updated;
+        }
+        if (match == EPISODE_DETAILS) {
+            int changed = SeriesGuideDatabase.insertOrUpdateEpisodesImpl(db, values);
+            if (changed > 0) {
+                ChangeNotifier.getInstance(getContext()).notifyChange(Episodes.CONTENT_URI);
+            }
+            return changed;
+        }
+
         db.beginTransaction();
         try {
             for (int i = 0; i < numValues; i++) {
@@ -366,7 +445,7 @@ public class SeriesGuideProvider extends ContentProvider {
         }
 
         if (notifyChange) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            ChangeNotifier.getInstance(getContext()).notifyChange(uri);
         }
 
         return numValues;
@@ -465,7 +544,7 @@ public class SeriesGuideProvider extends ContentProvider {
         }
 
         if (count > 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
 
         return count;
@@ -500,7 +579,7 @@ public class SeriesGuideProvider extends ContentProvider {
         }
 
         if (count > 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
 
         return count;
@@ -518,11 +597,13 @@ public class SeriesGuideProvider extends ContentProvider {
             return new ContentProviderResult[0];
         }
 
+        final HashSet<Uri> notifyUris = new HashSet<>();
+        final ContentProviderResult[] results = new ContentProviderResult[numOperations];
         mDb = mDbHelper.getWritableDatabase();
         mDb.beginTransaction();
         try {
             mApplyingBatch.set(true);
-            final ContentProviderResult[] results = new ContentProviderResult[numOperations];
+            mBatchNotifyUris.set(notifyUris);
             for (int i = 0; i < numOperations; i++) {
                 final ContentProviderOperation operation = operations.get(i);
                 if (i > 0 && operation.isYieldAllowed()) {
@@ -531,17 +612,70 @@ public class SeriesGuideProvider extends ContentProvider {
                 results[i] = operation.apply(this, results, i);
             }
             mDb.setTransactionSuccessful();
-            return results;
         } finally {
             mApplyingBatch.set(false);
+            mBatchNotifyUris.set(null);
             mDb.endTransaction();
         }
+
+        // notify once for each changed table, not for each operation
+        for (Uri uri : notifyUris) {
+            ChangeNotifier.getInstance(getContext()).notifyChange(uri);
+        }
+
+        return results;
+    }
+
+    /**
+     * Re-calculates the episode counts of all seasons, the seasons of a show or a single season,
+     * depending on the given {@link Uri}.
+     */
+    private void updateSeasonCounts(Uri uri, int match, long currentTime) {
+        String selection = null;
+        String[] selectionArgs = null;
+        if (match == UPDATE_SEASON_COUNTS_OFSHOW) {
+            selection = SeriesGuideDatabase.Qualified.SEASONS_SHOW_ID + "=?";
+            selectionArgs = new String[] {
+                    uri.getPathSegments().get(2)
+            };
+        } else if (match == UPDATE_SEASON_COUNTS_ID) {
+            selection = SeriesGuideDatabase.Qualified.SEASONS_ID + "=?";
+            selectionArgs = new String[] {
+                    uri.getLastPathSegment()
+            };
+        }
+
+        int count = SeriesGuideDatabase.updateSeasonCountsImpl(mDbHelper.getWritableDatabase(),
+                selection, selectionArgs, currentTime);
+
+        if (count > 0) {
+            // also notifies observers of seasons of a show
+            ChangeNotifier.getInstance(getContext()).notifyChange(Seasons.CONTENT_URI);
+        }
     }
 
     private boolean applyingBatch() {
         return mApplyingBatch.get() != null && mApplyingBatch.get();
     }
 
+    /**
+     * Notifies observers of the given content URI through the {@link ChangeNotifier}. While
+     * applying a batch, instead collects the base URI of the changed table to notify after the
+     * batch was committed.
+     */
+    private void notifyChange(Uri uri) {
+        if (applyingBatch()) {
+            List<String> pathSegments = uri.getPathSegments();
+            if (pathSegments.size() > 1) {
+                // observers of items of a table are notified by a change of the table, too
+                uri = uri.buildUpon().path(pathSegments.get(0)).build();
+            }
+            mBatchNotifyUris.get().add(uri);
+        } else {
+            ChangeNotifier.getInstance(getContext()).notifyChange(uri);
+        }
+    }
+
     /**
      * Builds selection using a {@link SelectionBuilder} to match the requested {@link Uri}.
      */
@@ -655,6 +789,9 @@ public class SeriesGuideProvider extends ContentProvider {
                 final String movieId = Movies.getId(uri);
                 return builder.table(Tables.MOVIES).where(Movies.TMDB_ID + "=?", movieId);
             }
+            case SHOW_STATS: {
+                return builder.table(Tables.SHOW_STATS_JOIN_SHOWS);
+            }
             default: {
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
             }
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2014 Uwe Trottmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.battlelancer.seriesguide.service;
+
+import android.app.IntentService;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.BatteryManager;
+import android.text.TextUtils;
+import android.text.format.DateUtils;
+import com.battlelancer.seriesguide.provider.SeriesGuideContract.Episodes;
+import com.battlelancer.seriesguide.provider.SeriesGuideContract.Shows;
+import com.battlelancer.seriesguide.thetvdbapi.TheTVDB;
+import com.battlelancer.seriesguide.util.LocalOnlyOkHttpDownloader;
+import com.battlelancer.seriesguide.util.ServiceUtils;
+import com.battlelancer.seriesguide.util.Utils;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import timber.log.Timber;
+
+/**
+ * Downloads posters and episode images into the image disk cache, so they can be displayed while
+ * offline or on a metered connection (where {@link LocalOnlyOkHttpDownloader} only loads from the
+ * cache). Only runs if large data may be downloaded and the battery is not low.
+ *
+ * <p> Images are downloaded in order of priority: posters of shows with episodes released around
+ * now, then all other posters (favorites first), then images of episodes released around now.
+ * Stops once the download budget is used up, so the most important images are not evicted from
+ * the cache by less important ones.
+ */
+public class ImagePrefetchService extends IntentService {
+
+    /**
+     * Episodes released this long before or after now are likely to be looked at.
+     */
+    private static final long EPISODE_WINDOW_MS = 7 * DateUtils.DAY_IN_MILLIS;
+
+    private static final int MAX_IMAGES = 300;
+
+    private static final long MAX_BYTES = 10 * 1024 * 1024; // 10MB
+
+    /**
+     * Only use this part of the cache, so prefetched images do not evict each other.
+     */
+    private static final int CACHE_SIZE_DIVISOR = 4;
+
+    private static final int MIN_BATTERY_PERCENT = 30;
+
+    interface EpisodesQuery {
+
+        String[] PROJECTION = new String[] {
+                Shows.POSTER, Episodes.IMAGE
+        };
+
+        String SELECTION = Episodes.FIRSTAIREDMS + ">=? AND " + Episodes.FIRSTAIREDMS + "<=? AND "
+                + Shows.SELECTION_NO_HIDDEN;
+
+        int POSTER = 0;
+        int IMAGE = 1;
+    }
+
+    interface ShowsQuery {
+
+        String[] PROJECTION = new String[] {
+                Shows.POSTER
+        };
+
+        String SORT_ORDER = Shows.FAVORITE + " DESC," + Shows.NEXTAIRDATEMS + " ASC";
+
+        int POSTER = 0;
+    }
+
+    public ImagePrefetchService() {
+        super("ImagePrefetchService");
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        if (!isAllowedToPrefetch()) {
+            Timber.d("Prefetching images...SKIP");
+            return;
+        }
+
+        LinkedHashSet<String> urls = buildPrefetchUrls(System.currentTimeMillis());
+
+        LocalOnlyOkHttpDownloader downloader = ServiceUtils.getPicassoDownloader(this);
+        long byteBudget = Math.min(MAX_BYTES,
+                downloader.getMaxCacheSize() / CACHE_SIZE_DIVISOR);
+        long bytes = 0;
+        int downloaded = 0;
+        int checked = 0;
+        for (String url : urls) {
+            if (checked == MAX_IMAGES || bytes >= byteBudget || !isAllowedToPrefetch()) {
+                break;
+            }
+            checked++;
+            try {
+                long imageBytes = downloader.warmCache(Uri.parse(url));
+                if (imageBytes > 0) {
+                    bytes += imageBytes;
+                    downloaded++;
+                }
+            } catch (IOException e) {
+                // try the others
+                Timber.w(e, "Prefetching image failed");
+            }
+        }
+
+        Timber.d("Prefetching images...DONE checked " + checked + " of " + urls.size()
+                + ", downloaded " + downloaded + " (" + bytes / 1024 + " KB)");
+    }
+
+    /**
+     * Returns image URLs in order of priority, without duplicates.
+     */
+    private LinkedHashSet<String> buildPrefetchUrls(long currentTime) {
+        LinkedHashSet<String> posterUrls = new LinkedHashSet<>();
+        LinkedHashSet<String> episodeImageUrls = new LinkedHashSet<>();
+
+        // episodes released around now, closest first
+        Cursor episodes = getContentResolver().query(Episodes.CONTENT_URI_WITHSHOW,
+                EpisodesQuery.PROJECTION, EpisodesQuery.SELECTION, new String[] {
+                        String.valueOf(currentTime - EPISODE_WINDOW_MS),
+                        String.valueOf(currentTime + EPISODE_WINDOW_MS)
+                }, "ABS(" + Episodes.FIRSTAIREDMS + "-" + currentTime + ") ASC");
+        if (episodes != null) {
+            while (episodes.moveToNext()) {
+                String poster = episodes.getString(EpisodesQuery.POSTER);
+                if (!TextUtils.isEmpty(poster)) {
+                    posterUrls.add(TheTVDB.buildPosterUrl(poster));
+                }
+                String image = episodes.getString(EpisodesQuery.IMAGE);
+                if (!TextUtils.isEmpty(image)) {
+                    episodeImageUrls.add(TheTVDB.buildScreenshotUrl(image));
+                }
+            }
+            episodes.close();
+        }
+
+        // all other posters
+        Cursor shows = getContentResolver().query(Shows.CONTENT_URI, ShowsQuery.PROJECTION,
+                Shows.SELECTION_NO_HIDDEN, null, ShowsQuery.SORT_ORDER);
+        if (shows != null) {
+            while (shows.moveToNext()) {
+                String poster = shows.getString(ShowsQuery.POSTER);
+                if (!TextUtils.isEmpty(poster)) {
+                    posterUrls.add(TheTVDB.buildPosterUrl(poster));
+                }
+            }
+            shows.close();
+        }
+
+        posterUrls.addAll(episodeImageUrls);
+        return posterUrls;
+    }
+
+    private boolean isAllowedToPrefetch() {
+        if (!Utils.isAllowedLargeDataConnection(this, false)) {
+            return false;
+        }
+
+        Intent battery = registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery == null) {
+            return true;
+        }
+        boolean isCharging = battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+        int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        return isCharging || level < 0 || scale <= 0
+                || level * 100 / scale >= MIN_BATTERY_PERCENT;
+    }
+}
@@ -35,16 +35,23 @@ import com.battlelancer.seriesguide.util.FlagTapedTask.Callback;
 import com.battlelancer.seriesguide.util.ServiceUtils;
 import com.jakewharton.trakt.Trakt;
 import com.jakewharton.trakt.services.ShowService;
+import java.util.List;
 import timber.log.Timber;
 
 public class TraktFlagService extends Service implements Callback {
 
     private static final long MAX_RETRY_INTERVAL = 15 * DateUtils.MINUTE_IN_MILLIS;
 
+    /** Maximum number of queued entries sent with a single trakt request. */
+    private static final int MAX_MERGED_ENTRIES = 50;
+
     private FlagTapeEntryQueue mQueue;
 
     private boolean running;
 
+    /** Number of queued entries sent with the currently running task. */
+    private int mEntryCount;
+
     @Override
     public void onCreate() {
         super.onCreate();
@@ -63,10 +70,19 @@ public class TraktFlagService extends Service implements Callback {
             return;
         }
 
-        FlagTapeEntry entry = mQueue.peek();
-        if (entry != null) {
+        List<FlagTapeEntry> entries = mQueue.peek(MAX_MERGED_ENTRIES);
+        if (!entries.isEmpty()) {
             running = true;
 
+            // merge consecutive entries for the same show and action into one request
+            FlagTapeEntry entry = entries.get(0);
+            mEntryCount = 1;
+            while (mEntryCount < entries.size()
+                    && entry.canMergeWith(entries.get(mEntryCount))) {
+                entry = entry.mergeWith(entries.get(mEntryCount));
+                mEntryCount++;
+            }
+
             // build a new FlagTapedTask and execute it
             Trakt manager = ServiceUtils.getTraktWithAuth(
                     getApplicationContext());
@@ -92,9 +108,7 @@ public class TraktFlagService extends Service implements Callback {
     @Override
     public void onSuccess() {
         running = false;
-        if (mQueue.size() > 0) {
-            mQueue.remove();
-        }
+        mQueue.remove(mEntryCount);
         executeNext();
     }
 
@@ -104,9 +118,7 @@ public class TraktFlagService extends Service implements Callback {
         // The user has disconnected from trakt in the meanwhile
         if (!TraktCredentials.get(getApplicationContext()).hasCredentials()) {
             // clear all remaining tasks
-            while (mQueue.size() > 0) {
-                mQueue.remove();
-            }
+            mQueue.clear();
         }
 
         /*
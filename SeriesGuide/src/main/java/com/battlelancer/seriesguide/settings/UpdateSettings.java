@@ -31,6 +31,12 @@ public class UpdateSettings {
 
     public static final String KEY_FAILED_COUNTER = "com.battlelancer.seriesguide.failedcounter";
 
+    public static final String KEY_LAST_TVDB_UPDATES_CHECK
+            = "com.battlelancer.seriesguide.lasttvdbupdatescheck";
+
+    public static final String KEY_LAST_EPISODE_COUNTS_UPDATE
+            = "com.battlelancer.seriesguide.lastepisodecountsupdate";
+
     /**
      * Whether the user wants us to download larger chunks of data (e.g. images) only over a Wi-Fi
      * connection.
@@ -60,4 +66,22 @@ public class UpdateSettings {
         return PreferenceManager.getDefaultSharedPreferences(context).getInt(KEY_FAILED_COUNTER, 0);
     }
 
+    /**
+     * Time of the last sync which successfully updated all shows changed on TVDb, or 0 if there
+     * was none, yet.
+     */
+    public static long getLastTvdbUpdatesCheck(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context)
+                .getLong(KEY_LAST_TVDB_UPDATES_CHECK, 0);
+    }
+
+    /**
+     * Time (including the user offset) up to which a sync updated the season episode counts of
+     * shows with released episodes, or 0 if there was none, yet.
+     */
+    public static long getLastEpisodeCountsUpdate(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context)
+                .getLong(KEY_LAST_EPISODE_COUNTS_UPDATE, 0);
+    }
+
 }
@@ -29,6 +29,7 @@ import android.content.SharedPreferences;
 import android.content.SyncResult;
 import android.database.Cursor;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.text.TextUtils;
 import android.text.format.DateUtils;
@@ -38,6 +39,7 @@ import com.battlelancer.seriesguide.SeriesGuideApplication;
 import com.battlelancer.seriesguide.backend.HexagonTools;
 import com.battlelancer.seriesguide.enums.EpisodeFlags;
 import com.battlelancer.seriesguide.items.SearchResult;
+import com.battlelancer.seriesguide.provider.ChangeNotifier;
 import com.battlelancer.seriesguide.provider.SeriesGuideContract.Episodes;
 import com.battlelancer.seriesguide.provider.SeriesGuideContract.Shows;
 import com.battlelancer.seriesguide.settings.TmdbSettings;
@@ -47,10 +49,12 @@ import com.battlelancer.seriesguide.settings.UpdateSettings;
 import com.battlelancer.seriesguide.thetvdbapi.TheTVDB;
 import com.battlelancer.seriesguide.thetvdbapi.TvdbException;
 import com.battlelancer.seriesguide.util.DBUtils;
+import com.battlelancer.seriesguide.util.HttpHosts;
 import com.battlelancer.seriesguide.util.MovieTools;
 import com.battlelancer.seriesguide.util.ServiceUtils;
 import com.battlelancer.seriesguide.util.ShowTools;
 import com.battlelancer.seriesguide.util.TaskManager;
+import com.battlelancer.seriesguide.util.TimeTools;
 import com.battlelancer.seriesguide.util.TraktTools;
 import com.battlelancer.seriesguide.util.Utils;
 import com.jakewharton.trakt.Trakt;
@@ -67,6 +71,12 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 import retrofit.RetrofitError;
 import timber.log.Timber;
@@ -113,6 +123,10 @@ public class SgSyncAdapter extends AbstractThreadedSyncAdapter {
 
     private static final int DEFAULT_SYNC_INTERVAL_MINUTES = 20;
 
+    private static final int TVDB_PARALLEL_DOWNLOADS = 3;
+
+    private static final int TVDB_MAX_PENDING_DOWNLOADS = 2 * TVDB_PARALLEL_DOWNLOADS;
+
     /**
      * Calls {@link ContentResolver} {@code .requestSyncIfConnected()} if there is no pending sync
      * already.
@@ -267,7 +281,8 @@ public class SgSyncAdapter extends AbstractThreadedSyncAdapter {
         }
 
         // build a list of shows to update
-        int[] showsToUpdate;
+        int[] showsToUpdate = null;
+        boolean isChangedShowsOnly = false;
         if (syncType == SyncType.SINGLE) {
             int showTvdbId = extras.getInt(SyncInitBundle.SYNC_SHOW_TVDB_ID, 0);
             if (showTvdbId == 0) {
@@ -278,37 +293,46 @@ public class SgSyncAdapter extends AbstractThreadedSyncAdapter {
                     showTvdbId
             };
         } else {
-            showsToUpdate = getShowsToUpdate(syncType, currentTime);
+            // prefer to only update shows that have changed on TVDb
+            if (syncType == SyncType.DELTA) {
+                showsToUpdate = TheTVDB.getChangedShows(getContext(), currentTime,
+                        UpdateSettings.getLastTvdbUpdatesCheck(getContext()));
+                isChangedShowsOnly = showsToUpdate != null;
+            }
+            if (showsToUpdate == null) {
+                showsToUpdate = getShowsToUpdate(syncType, currentTime);
+            }
         }
 
-        // from here on we need more sophisticated abort handling, so keep track of errors
-        UpdateResult resultCode = UpdateResult.SUCCESS;
+        // record duration, bytes and errors of each phase
+        final SyncReport report = new SyncReport(syncType);
+        report.attachToThread();
 
-        // loop through shows and download latest data from TVDb
+        // download latest data from TVDb
+        // from here on we need more sophisticated abort handling, so keep track of errors
         Timber.d("Syncing...TVDb");
         final AtomicInteger updateCount = new AtomicInteger();
-        final ContentResolver resolver = getContext().getContentResolver();
-        for (int i = updateCount.get(); i < showsToUpdate.length; i++) {
-            int id = showsToUpdate[i];
-
-            // stop sync if connectivity is lost
-            if (!AndroidUtils.isNetworkConnected(getContext())) {
-                resultCode = UpdateResult.INCOMPLETE;
-                break;
-            }
-
-            try {
-                TheTVDB.updateShow(getContext(), id);
-
-                // make sure other loaders (activity, overview, details) are notified
-                resolver.notifyChange(Episodes.CONTENT_URI_WITHSHOW, null);
-            } catch (TvdbException e) {
-                // failed, continue with other shows
-                resultCode = UpdateResult.INCOMPLETE;
-                Timber.e(e, "Updating show failed");
-            }
+        // shows whose episodes changed, their episode counts need to be updated
+        final HashSet<Integer> changedShows = new HashSet<>();
+        SyncReport.Phase phase = report.beginPhase(SyncReport.PHASE_TVDB);
+        UpdateResult resultCode = updateShows(showsToUpdate, updateCount, changedShows, report,
+                phase);
+        phase.addItems(updateCount.get());
+        phase.end();
+
+        // next delta sync only needs to look for shows changed on TVDb after this one
+        if (resultCode == UpdateResult.SUCCESS
+                && (isChangedShowsOnly || syncType == SyncType.FULL)) {
+            PreferenceManager.getDefaultSharedPreferences(getContext()).edit()
+                    .putLong(UpdateSettings.KEY_LAST_TVDB_UPDATES_CHECK, currentTime).commit();
+        }
 
-            updateCount.incrementAndGet();
+        if (syncType == SyncType.SINGLE && updateCount.get() > 0) {
+            // update episode counts of all seasons of the show with a single query
+            phase = report.beginPhase(SyncReport.PHASE_COUNTS);
+            DBUtils.updateUnwatchedCountsOfShow(getContext(), String.valueOf(showsToUpdate[0]));
+            phase.addItems(1);
+            phase.end();
         }
 
         // do some more things if this is not a quick update
@@ -318,7 +342,11 @@ public class SgSyncAdapter extends AbstractThreadedSyncAdapter {
 
             // get latest TMDb configuration
             Timber.d("Syncing...TMDb config");
-            getTmdbConfiguration(getContext(), prefs);
+            phase = report.beginPhase(SyncReport.PHASE_TMDB_CONFIG);
+            if (!getTmdbConfiguration(getContext(), prefs)) {
+                phase.addError();
+            }
+            phase.end();
 
             // sync with Hexagon or trakt
             final HashSet<Integer> showsExisting = ShowTools.getShowTvdbIdsAsSet(getContext());
@@ -326,18 +354,33 @@ public class SgSyncAdapter extends AbstractThreadedSyncAdapter {
             if (showsExisting == null) {
                 resultCode = UpdateResult.INCOMPLETE;
             } else {
+                Utils.trackCustomEvent(getContext(), "Statistics", "Shows",
+                        String.valueOf(showsExisting.size()));
+
                 if (HexagonTools.isSignedIn(getContext())) {
                     // sync with hexagon...
+                    phase = report.beginPhase(SyncReport.PHASE_HEXAGON);
                     boolean success = HexagonTools.syncWithHexagon(getContext(), showsExisting,
-                            showsNew);
+                            showsNew, changedShows);
+                    phase.addItems(showsExisting.size());
+                    if (!success) {
+                        phase.addError();
+                    }
+                    phase.end();
                     // don't overwrite failure
                     if (resultCode == UpdateResult.SUCCESS) {
                         resultCode = success ? UpdateResult.SUCCESS : UpdateResult.INCOMPLETE;
                     }
                 } else {
                     // ...OR sync with trakt
+                    phase = report.beginPhase(SyncReport.PHASE_TRAKT);
                     UpdateResult resultTrakt = performTraktSync(getContext(), showsExisting,
-                            showsNew, syncImmediately, currentTime);
+                            showsNew, changedShows, syncImmediately, currentTime);
+                    phase.addItems(showsExisting.size());
+                    if (resultTrakt != UpdateResult.SUCCESS) {
+                        phase.addError();
+                    }
+                    phase.end();
                     // don't overwrite failure
                     if (resultCode == UpdateResult.SUCCESS) {
                         resultCode = resultTrakt;
@@ -352,13 +395,17 @@ public class SgSyncAdapter extends AbstractThreadedSyncAdapter {
                 }
 
                 // make sure other loaders (activity, overview, details) are notified of changes
-                resolver.notifyChange(Episodes.CONTENT_URI_WITHSHOW, null);
+                ChangeNotifier.getInstance(getContext())
+                        .notifyChange(Episodes.CONTENT_URI_WITHSHOW);
             }
 
-            // renew search table if shows were updated and it will not be renewed by add task
-            if (updateCount.get() > 0 && showsToUpdate.length > 0 && showsNew.size() == 0) {
-                DBUtils.rebuildFtsTable(getContext());
-            }
+            // update episode counts of seasons of changed shows
+            phase = report.beginPhase(SyncReport.PHASE_COUNTS);
+            updateEpisodeCounts(getContext(), changedShows, phase);
+
+            // make sure episode counts for stats of changed shows match after larger changes
+            DBUtils.checkShowStats(getContext(), changedShows);
+            phase.end();
 
             // update next episodes for all shows
             TaskManager.getInstance(getContext()).tryNextEpisodeUpdateTask();
@@ -396,7 +443,104 @@ public class SgSyncAdapter extends AbstractThreadedSyncAdapter {
         // There could have been new episodes added after an update
         Utils.runNotificationService(getContext());
 
-        Timber.i("Syncing..." + resultCode.toString());
+        // download images of new or updated shows and episodes for offline use
+        if (syncType != SyncType.SINGLE) {
+            Utils.runImagePrefetchService(getContext());
+        }
+
+        // deliver changes still held back right away
+        ChangeNotifier notifier = ChangeNotifier.getInstance(getContext());
+        notifier.flush();
+        Timber.d("Syncing...notifications: " + notifier.getDeliveredCount() + " delivered, "
+                + notifier.getSuppressedCount() + " suppressed");
+        HttpHosts.logAndReset();
+
+        report.end(resultCode);
+        SyncHistory.add(getContext(), report);
+
+        Timber.i("Syncing..." + resultCode.toString() + " in " + report.durationMs + " ms");
+    }
+
+    /**
+     * Downloads and parses up to {@link #TVDB_PARALLEL_DOWNLOADS} shows from TVDb at the same time.
+     * Downloaded shows are written to the database on the calling thread only, one after another.
+     * Increments {@code updateCount} for each processed show and adds updated shows to {@code
+     * changedShows}. Records download and write durations of each show to the given report and
+     * failed shows as errors of the given phase.
+     */
+    private UpdateResult updateShows(int[] showsToUpdate, AtomicInteger updateCount,
+            HashSet<Integer> changedShows, final SyncReport report, SyncReport.Phase phase) {
+        final Context context = getContext();
+        final ExecutorService executor = Executors.newFixedThreadPool(TVDB_PARALLEL_DOWNLOADS);
+        final CompletionService<TheTVDB.ShowUpdate> downloads
+                = new ExecutorCompletionService<>(executor);
+
+        UpdateResult resultCode = UpdateResult.SUCCESS;
+        int submitted = 0;
+        int pending = 0;
+        try {
+            while (updateCount.get() < showsToUpdate.length) {
+                // only keep a few downloaded shows in memory until they are written
+                while (pending < TVDB_MAX_PENDING_DOWNLOADS && submitted < showsToUpdate.length) {
+                    // stop sync if connectivity is lost
+                    if (!AndroidUtils.isNetworkConnected(context)) {
+                        return UpdateResult.INCOMPLETE;
+                    }
+
+                    final int showTvdbId = showsToUpdate[submitted++];
+                    downloads.submit(new Callable<TheTVDB.ShowUpdate>() {
+                        @Override
+                        public TheTVDB.ShowUpdate call() throws TvdbException {
+                            // count downloads of this pool thread for the sync
+                            report.attachToThread();
+                            long startTime = SystemClock.elapsedRealtime();
+                            boolean failed = true;
+                            try {
+                                TheTVDB.ShowUpdate update = TheTVDB.fetchShowUpdate(context,
+                                        showTvdbId);
+                                failed = false;
+                                return update;
+                            } finally {
+                                report.recordShowDownload(showTvdbId,
+                                        SystemClock.elapsedRealtime() - startTime, failed);
+                                SyncReport.detachFromThread();
+                            }
+                        }
+                    });
+                    pending++;
+                }
+
+                try {
+                    TheTVDB.ShowUpdate update = downloads.take().get();
+                    long startTime = SystemClock.elapsedRealtime();
+                    TheTVDB.applyShowUpdate(context, update);
+                    changedShows.add(update.getShowTvdbId());
+                    report.recordShowWrite(update.getShowTvdbId(),
+                            SystemClock.elapsedRealtime() - startTime);
+
+                    // make sure other loaders (activity, overview, details) are notified
+                    ChangeNotifier.getInstance(context)
+                            .notifyChange(Episodes.CONTENT_URI_WITHSHOW);
+                } catch (ExecutionException | TvdbException e) {
+                    // failed, continue with other shows
+                    resultCode = UpdateResult.INCOMPLETE;
+                    phase.addError();
+                    Timber.e(e instanceof ExecutionException ? e.getCause() : e,
+                            "Updating show failed");
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return UpdateResult.INCOMPLETE;
+                }
+
+                pending--;
+                updateCount.incrementAndGet();
+            }
+        } finally {
+            // cancels downloads still running if the sync was stopped early
+            executor.shutdownNow();
+        }
+
+        return resultCode;
     }
 
     /**
@@ -429,10 +573,41 @@ public class SgSyncAdapter extends AbstractThreadedSyncAdapter {
         }
     }
 
+    /**
+     * Updates the season episode counts of the given changed shows and of shows with episodes
+     * released since the last sync did so. Updates all shows if no sync did so, yet.
+     */
+    private static void updateEpisodeCounts(Context context, HashSet<Integer> changedShows,
+            SyncReport.Phase phase) {
+        final long currentTime = TimeTools.getCurrentTime(context);
+        final long lastCountsUpdate = UpdateSettings.getLastEpisodeCountsUpdate(context);
+
+        HashSet<Integer> releasedShows = null;
+        if (lastCountsUpdate != 0) {
+            releasedShows = DBUtils.getShowsWithReleasesBetween(context, lastCountsUpdate,
+                    currentTime);
+        }
+        if (releasedShows == null) {
+            DBUtils.updateUnwatchedCountsOfAllShows(context);
+        } else {
+            releasedShows.addAll(changedShows);
+            for (int showTvdbId : releasedShows) {
+                DBUtils.updateUnwatchedCountsOfShow(context, String.valueOf(showTvdbId));
+            }
+            phase.addItems(releasedShows.size());
+        }
+
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putLong(UpdateSettings.KEY_LAST_EPISODE_COUNTS_UPDATE, currentTime)
+                .commit();
+    }
+
     /**
      * Downloads and stores the latest image url configuration from themoviedb.org.
+     *
+     * @return False if the download failed.
      */
-    private static void getTmdbConfiguration(Context context, SharedPreferences prefs) {
+    private static boolean getTmdbConfiguration(Context context, SharedPreferences prefs) {
         try {
             Configuration config = ServiceUtils.getTmdb(context)
                     .configurationService().configuration();
@@ -442,13 +617,16 @@ public class SgSyncAdapter extends AbstractThreadedSyncAdapter {
                         .putString(TmdbSettings.KEY_TMDB_BASE_URL, config.images.secure_base_url)
                         .apply();
             }
+            return true;
         } catch (RetrofitError e) {
             Timber.e(e, "Downloading TMDb config failed");
+            return false;
         }
     }
 
     private static UpdateResult performTraktSync(Context context, HashSet<Integer> existingShows,
-            HashMap<Integer, SearchResult> newShows, boolean forceSync, long currentTime) {
+            HashMap<Integer, SearchResult> newShows, HashSet<Integer> changedShows,
+            boolean forceSync, long currentTime) {
         Timber.d("Syncing...trakt auth check");
         TraktCredentials.get(context).validateCredentials();
         Trakt trakt = ServiceUtils.getTraktWithAuth(context);
@@ -467,7 +645,7 @@ public class SgSyncAdapter extends AbstractThreadedSyncAdapter {
 
             Timber.d("Syncing...trakt episodes (full)...");
             UpdateResult fullSyncResult = performTraktEpisodeSync(context, trakt, existingShows,
-                    currentTime);
+                    changedShows, currentTime);
             Timber.d("Syncing...trakt episodes (full)..."
                     + (fullSyncResult == UpdateResult.SUCCESS ? "SUCCESS" : "INCOMPLETE"));
 
@@ -481,7 +659,7 @@ public class SgSyncAdapter extends AbstractThreadedSyncAdapter {
         // episode activity
         Timber.d("Syncing...trakt episodes (activity)...");
         UpdateResult activityResult = performTraktEpisodeActivityDownload(context, trakt,
-                existingShows, newShows);
+                existingShows, newShows, changedShows);
         Timber.d("Syncing...trakt episodes (activity)..." + activityResult.toString());
 
         // don't overwrite failure
@@ -508,14 +686,14 @@ public class SgSyncAdapter extends AbstractThreadedSyncAdapter {
 
     @SuppressLint("CommitPrefEdits")
     private static UpdateResult performTraktEpisodeSync(Context context, Trakt trakt,
-            HashSet<Integer> existingShows, long currentTime) {
+            HashSet<Integer> existingShows, HashSet<Integer> changedShows, long currentTime) {
         // do we need to merge data instead of overwriting with data from trakt?
         boolean isInitialSync = !TraktSettings.hasMergedEpisodes(context);
 
         // download
         Timber.d("Syncing...trakt episodes (full)...downloading");
         int resultCode = TraktTools.syncToSeriesGuide(context, trakt, existingShows,
-                !isInitialSync);
+                changedShows, !isInitialSync);
 
         if (resultCode < 0 || !AndroidUtils.isNetworkConnected(context)) {
             return UpdateResult.INCOMPLETE;
@@ -550,9 +728,11 @@ public class SgSyncAdapter extends AbstractThreadedSyncAdapter {
      * resulting episode flag changes (watched, collected) to the database for the given {@code
      * existingShows}.<br/>If {@link TraktSettings#isAutoAddingShows(android.content.Context)} is
      * enabled, detects new shows based on {@code existingShows} and adds them to {@code newShows}.
+     * Adds existing shows with activity to {@code changedShows}.
      */
     private static UpdateResult performTraktEpisodeActivityDownload(Context context, Trakt trakt,
-            HashSet<Integer> existingShows, HashMap<Integer, SearchResult> newShows) {
+            HashSet<Integer> existingShows, HashMap<Integer, SearchResult> newShows,
+            HashSet<Integer> changedShows) {
         // get cut-off for activity stream
         final long startTimeTrakt = TraktSettings.getLastActivityDownloadTime(context) / 1000;
 
@@ -590,6 +770,7 @@ public class SgSyncAdapter extends AbstractThreadedSyncAdapter {
             if (existingShows.contains(activity.show.tvdb_id)) {
                 // show exists locally, get episode flag changes
                 buildActionBatch(batch, activity);
+                changedShows.add(activity.show.tvdb_id);
             } else if (isAutoAddingShows && !newShows.containsKey(activity.show.tvdb_id)) {
                 // new show, remember to add to local database later
                 SearchResult show = new SearchResult();
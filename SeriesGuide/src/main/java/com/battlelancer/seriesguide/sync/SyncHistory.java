@@ -0,0 +1,125 @@
+/*
+ * Copyright 2014 Uwe Trottmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.battlelancer.seriesguide.sync;
+
+import android.content.Context;
+import android.support.v4.util.AtomicFile;
+import com.google.myjson.Gson;
+import com.google.myjson.JsonParseException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import timber.log.Timber;
+
+/**
+ * Keeps the {@link SyncReport}s of the last {@link #MAX_SYNCS} syncs in a JSON file in the
+ * private app storage.
+ */
+public final class SyncHistory {
+
+    static final int MAX_SYNCS = 20;
+
+    private static final String FILE_NAME = "sync_history.json";
+
+    private static History sHistory;
+
+    private static class History {
+        List<SyncReport> syncs = new ArrayList<>();
+    }
+
+    /* This class is never initialized */
+    private SyncHistory() {
+    }
+
+    /**
+     * Adds the report as the latest sync, drops the oldest if there are more than {@link
+     * #MAX_SYNCS}.
+     */
+    public static synchronized void add(Context context, SyncReport report) {
+        History history = load(context);
+        history.syncs.add(0, report);
+        while (history.syncs.size() > MAX_SYNCS) {
+            history.syncs.remove(history.syncs.size() - 1);
+        }
+
+        AtomicFile file = getFile(context);
+        FileOutputStream out = null;
+        try {
+            out = file.startWrite();
+            Writer writer = new OutputStreamWriter(out, "UTF-8");
+            new Gson().toJson(history, writer);
+            writer.flush();
+            file.finishWrite(out);
+        } catch (IOException e) {
+            Timber.e(e, "Writing sync history failed");
+            if (out != null) {
+                file.failWrite(out);
+            }
+        }
+    }
+
+    /**
+     * Returns the reports of the last syncs, latest first.
+     */
+    public static synchronized List<SyncReport> get(Context context) {
+        return new ArrayList<>(load(context).syncs);
+    }
+
+    /**
+     * Returns the reports of the last syncs, latest first, as JSON.
+     */
+    public static synchronized String toJson(Context context) {
+        return new Gson().toJson(load(context));
+    }
+
+    private static History load(Context context) {
+        if (sHistory != null) {
+            return sHistory;
+        }
+
+        History history = null;
+        AtomicFile file = getFile(context);
+        try {
+            FileInputStream in = file.openRead();
+            try {
+                history = new Gson().fromJson(new InputStreamReader(in, "UTF-8"), History.class);
+            } finally {
+                in.close();
+            }
+        } catch (IOException ignored) {
+            // no history, yet
+        } catch (JsonParseException e) {
+            Timber.e(e, "Reading sync history failed, starting over");
+        }
+        if (history == null || history.syncs == null) {
+            history = new History();
+        }
+
+        sHistory = history;
+        return sHistory;
+    }
+
+    private static AtomicFile getFile(Context context) {
+        return new AtomicFile(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+    }
+}
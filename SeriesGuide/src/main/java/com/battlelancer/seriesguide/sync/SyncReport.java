@@ -0,0 +1,186 @@
+/*
+ * Copyright 2014 Uwe Trottmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.battlelancer.seriesguide.sync;
+
+import android.os.SystemClock;
+import com.battlelancer.seriesguide.util.HttpHosts;
+import com.google.myjson.annotations.SerializedName;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import timber.log.Timber;
+
+/**
+ * Records duration, processed items, downloaded bytes and errors of each phase of a sync, as
+ * well as download and write durations of each updated show. Finished reports are kept by {@link
+ * SyncHistory}.
+ *
+ * <p> Phases are recorded one after another on the sync thread, shows may be recorded from any
+ * thread. Only bytes of requests begun on threads attached with {@link #attachToThread()} are
+ * counted, so other downloads running at the same time, like images, are left out.
+ */
+public class SyncReport {
+
+    public static final String PHASE_TVDB = "tvdb";
+    public static final String PHASE_TMDB_CONFIG = "tmdb_config";
+    public static final String PHASE_HEXAGON = "hexagon";
+    public static final String PHASE_TRAKT = "trakt";
+    public static final String PHASE_COUNTS = "episode_counts";
+
+    @SerializedName("started_at")
+    public long startedAt;
+
+    public String type;
+
+    public String result;
+
+    @SerializedName("duration_ms")
+    public long durationMs;
+
+    public List<Phase> phases = new ArrayList<>();
+
+    public List<Show> shows = new ArrayList<>();
+
+    private transient long startTime;
+
+    private transient HashMap<Integer, Show> showsById;
+
+    private final transient AtomicLong bytesReceived = new AtomicLong();
+
+    public static class Phase {
+        public String name;
+
+        @SerializedName("duration_ms")
+        public long durationMs;
+
+        public int items;
+
+        public long bytes;
+
+        public int errors;
+
+        private transient long startTime;
+        private transient AtomicLong bytesReceived;
+        private transient long startBytes;
+
+        /**
+         * Adds to the number of items (e.g. shows, episodes) processed in this phase.
+         */
+        public void addItems(int count) {
+            items += count;
+        }
+
+        public void addError() {
+            errors++;
+        }
+
+        /**
+         * Stops the clock for this phase.
+         */
+        public void end() {
+            durationMs = SystemClock.elapsedRealtime() - startTime;
+            bytes = bytesReceived.get() - startBytes;
+            Timber.d("Syncing..." + name + " took " + durationMs + " ms, " + items + " items, "
+                    + bytes / 1024 + " KB, " + errors + " errors");
+        }
+    }
+
+    public static class Show {
+        @SerializedName("tvdb_id")
+        public int tvdbId;
+
+        @SerializedName("download_ms")
+        public long downloadMs;
+
+        @SerializedName("write_ms")
+        public long writeMs;
+
+        public boolean failed;
+    }
+
+    /* Used by Gson */
+    private SyncReport() {
+    }
+
+    public SyncReport(SgSyncAdapter.SyncType type) {
+        this.startedAt = System.currentTimeMillis();
+        this.startTime = SystemClock.elapsedRealtime();
+        this.type = type.toString();
+    }
+
+    /**
+     * Starts a new phase, call {@link Phase#end()} once it is done.
+     */
+    public Phase beginPhase(String name) {
+        Phase phase = new Phase();
+        phase.name = name;
+        phase.startTime = SystemClock.elapsedRealtime();
+        phase.bytesReceived = bytesReceived;
+        phase.startBytes = bytesReceived.get();
+        phases.add(phase);
+        return phase;
+    }
+
+    /**
+     * Counts the bytes received by requests begun on the calling thread for this sync, until
+     * {@link #detachFromThread()} is called.
+     */
+    public void attachToThread() {
+        HttpHosts.setByteCounter(bytesReceived);
+    }
+
+    /**
+     * Stops counting bytes received on the calling thread for any sync.
+     */
+    public static void detachFromThread() {
+        HttpHosts.setByteCounter(null);
+    }
+
+    public synchronized void recordShowDownload(int showTvdbId, long durationMs, boolean failed) {
+        Show show = getShow(showTvdbId);
+        show.downloadMs = durationMs;
+        show.failed |= failed;
+    }
+
+    public synchronized void recordShowWrite(int showTvdbId, long durationMs) {
+        getShow(showTvdbId).writeMs = durationMs;
+    }
+
+    private Show getShow(int showTvdbId) {
+        if (showsById == null) {
+            showsById = new HashMap<>();
+        }
+        Show show = showsById.get(showTvdbId);
+        if (show == null) {
+            show = new Show();
+            show.tvdbId = showTvdbId;
+            showsById.put(showTvdbId, show);
+            shows.add(show);
+        }
+        return show;
+    }
+
+    /**
+     * Stops the clock for the whole sync and stops counting bytes received on the calling thread.
+     */
+    public void end(SgSyncAdapter.UpdateResult result) {
+        this.result = result.toString();
+        this.durationMs = SystemClock.elapsedRealtime() - startTime;
+        detachFromThread();
+    }
+}
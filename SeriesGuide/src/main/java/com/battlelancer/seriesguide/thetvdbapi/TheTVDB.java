@@ -25,7 +25,9 @@ import android.sax.Element;
 import android.sax.EndElementListener;
 import android.sax.EndTextElementListener;
 import android.sax.RootElement;
+import android.text.TextUtils;
 import android.text.format.DateUtils;
+import android.util.SparseBooleanArray;
 import android.util.Xml;
 import com.battlelancer.seriesguide.BuildConfig;
 import com.battlelancer.seriesguide.backend.HexagonTools;
@@ -40,6 +42,7 @@ import com.battlelancer.seriesguide.util.DBUtils;
 import com.battlelancer.seriesguide.util.EpisodeTools;
 import com.battlelancer.seriesguide.util.ServiceUtils;
 import com.battlelancer.seriesguide.util.ShowTools;
+import com.battlelancer.seriesguide.util.ShowUpdateScheduler;
 import com.battlelancer.seriesguide.util.TimeTools;
 import com.battlelancer.seriesguide.util.TraktTools;
 import com.battlelancer.seriesguide.util.Utils;
@@ -84,6 +87,9 @@ public class TheTVDB {
     private static final String TVDB_API_SERIES = TVDB_API_URL + BuildConfig.TVDB_API_KEY
             + "/series/";
 
+    private static final String TVDB_API_UPDATES = TVDB_API_URL + BuildConfig.TVDB_API_KEY
+            + "/updates/updates_";
+
     private static final String TVDB_PATH_ALL = "all/";
     private static final String TVDB_PARAM_LANGUAGE = "&language=";
     private static final String TVDB_EXTENSION_UNCOMPRESSED = ".xml";
@@ -141,9 +147,23 @@ public class TheTVDB {
      */
     public static boolean addShow(Context context, int showTvdbId, List<TvShow> seenTraktShows,
             List<TvShow> collectedTraktShows) throws TvdbException {
+        ShowUpdate newShow = fetchNewShow(context, showTvdbId);
+        return newShow != null
+                && applyNewShow(context, newShow, seenTraktShows, collectedTraktShows);
+    }
+
+    /**
+     * Downloads a show and its episodes from TVDb and, if signed in, show properties from
+     * Hexagon. Does not write to the database, so may be called for multiple shows in parallel.
+     * Add the result with {@link #applyNewShow(android.content.Context, ShowUpdate, java.util.List,
+     * java.util.List)}.
+     *
+     * @return Null, if the show already exists.
+     */
+    public static ShowUpdate fetchNewShow(Context context, int showTvdbId) throws TvdbException {
         boolean isShowExists = DBUtils.isShowExists(context, showTvdbId);
         if (isShowExists) {
-            return false;
+            return null;
         }
 
         // get show info from TVDb and trakt
@@ -159,10 +179,29 @@ public class TheTVDB {
             }
         }
 
-        // get episodes from TVDb and do database update
+        // get episodes from TVDb
         final ArrayList<ContentProviderOperation> batch = new ArrayList<>();
         batch.add(DBUtils.buildShowOp(show, true));
-        getEpisodesAndUpdateDatabase(context, show, language, batch);
+        ArrayList<ContentValues> episodesValues = fetchEpisodes(batch, show, language, context);
+
+        return new ShowUpdate(show.tvdbId, batch, episodesValues);
+    }
+
+    /**
+     * Adds a show downloaded with {@link #fetchNewShow(android.content.Context, int)} to the
+     * database, then gets its episode flags from Hexagon or trakt.
+     *
+     * @return True, if the show and its episodes were added to the database. False, if the show
+     * was added in the meantime.
+     */
+    public static boolean applyNewShow(Context context, ShowUpdate newShow,
+            List<TvShow> seenTraktShows, List<TvShow> collectedTraktShows) throws TvdbException {
+        int showTvdbId = newShow.showTvdbId;
+        if (DBUtils.isShowExists(context, showTvdbId)) {
+            return false;
+        }
+
+        applyShowUpdate(context, newShow);
 
         // download episode flags...
         if (HexagonTools.isSignedIn(context)) {
@@ -185,6 +224,9 @@ public class TheTVDB {
             storeTraktFlags(showTvdbId, collectedTraktShows, context, false);
         }
 
+        // calculate season episode counts
+        DBUtils.updateUnwatchedCountsOfShow(context, String.valueOf(showTvdbId));
+
         // calculate next episode
         DBUtils.updateLatestEpisode(context, showTvdbId);
 
@@ -192,17 +234,69 @@ public class TheTVDB {
     }
 
     /**
-     * Updates show. Adds new, updates changed and removes orphaned episodes.
+     * Show and episode changes downloaded from TVDb, but not yet written to the database. See
+     * {@link #fetchShowUpdate(android.content.Context, int)}.
      */
+    public static class ShowUpdate {
+
+        private final int showTvdbId;
+        private final ArrayList<ContentProviderOperation> batch;
+        private final ArrayList<ContentValues> episodesValues;
+
+        private ShowUpdate(int showTvdbId, ArrayList<ContentProviderOperation> batch,
+                ArrayList<ContentValues> episodesValues) {
+            this.showTvdbId = showTvdbId;
+            this.batch = batch;
+            this.episodesValues = episodesValues;
+        }
 
+        public int getShowTvdbId() {
+            return showTvdbId;
+        }
+    }
+
+    /**
+     * Updates show. Adds new, updates changed and removes orphaned episodes.
+     */
     public static void updateShow(Context context, int showTvdbId) throws TvdbException {
+        applyShowUpdate(context, fetchShowUpdate(context, showTvdbId));
+    }
+
+    /**
+     * Downloads show details and episodes from TVDb and builds the ops required to update the
+     * database with them. Does not write to the database, so may be called for multiple shows in
+     * parallel. Apply the result with {@link #applyShowUpdate(android.content.Context,
+     * ShowUpdate)}.
+     */
+    public static ShowUpdate fetchShowUpdate(Context context, int showTvdbId)
+            throws TvdbException {
         String language = DisplaySettings.getContentLanguage(context);
         final ArrayList<ContentProviderOperation> batch = new ArrayList<>();
 
         Show show = fetchShow(context, showTvdbId, language);
         batch.add(DBUtils.buildShowOp(show, false));
 
-        getEpisodesAndUpdateDatabase(context, show, language, batch);
+        ArrayList<ContentValues> episodesValues = fetchEpisodes(batch, show, language, context);
+        return new ShowUpdate(show.tvdbId, batch, episodesValues);
+    }
+
+    /**
+     * Writes a show update downloaded with {@link #fetchShowUpdate(android.content.Context, int)}
+     * to the database.
+     */
+    public static void applyShowUpdate(Context context, ShowUpdate update)
+            throws TvdbException {
+        try {
+            DBUtils.applyInSmallBatches(context, update.batch);
+        } catch (OperationApplicationException e) {
+            throw new TvdbException("Problem applying batch operation for " + update.showTvdbId,
+                    e);
+        }
+
+        // insert new and update changed episodes in bulk
+        ContentValues[] episodesValues = new ContentValues[update.episodesValues.size()];
+        episodesValues = update.episodesValues.toArray(episodesValues);
+        context.getContentResolver().bulkInsert(Episodes.CONTENT_URI_DETAILS, episodesValues);
     }
 
     /**
@@ -266,73 +360,203 @@ public class TheTVDB {
         return series;
     }
 
-    // Values based on the assumption that sync runs about every 24 hours
-    private static final long UPDATE_THRESHOLD_WEEKLYS_MS = 6 * DateUtils.DAY_IN_MILLIS +
-            12 * DateUtils.HOUR_IN_MILLIS;
-    private static final long UPDATE_THRESHOLD_DAILYS_MS = 1 * DateUtils.DAY_IN_MILLIS
-            + 12 * DateUtils.HOUR_IN_MILLIS;
-
     /**
-     * Return list of show TVDb ids hitting a x-day limit.
+     * Return list of show TVDb ids due for an update, see {@link ShowUpdateScheduler}. Uses a
+     * single range query on the indexed {@link Shows#NEXT_UPDATE} column.
      */
     public static int[] deltaUpdateShows(long currentTime, Context context) {
-        final List<Integer> updatableShowIds = new ArrayList<>();
+        final Cursor shows = context.getContentResolver().query(Shows.CONTENT_URI, new String[] {
+                Shows._ID
+        }, Shows.NEXT_UPDATE + "<=?", new String[] {
+                String.valueOf(currentTime)
+        }, null);
+        if (shows == null) {
+            return new int[0];
+        }
+
+        int[] showTvdbIds = new int[shows.getCount()];
+        int i = 0;
+        while (shows.moveToNext()) {
+            showTvdbIds[i++] = shows.getInt(0);
+        }
+        shows.close();
+
+        Timber.d("deltaUpdateShows: " + showTvdbIds.length + " shows due for an update");
+        return showTvdbIds;
+    }
+
+    /**
+     * The TVDb updates files list shows changed within the last day, week or month.
+     */
+    private static final String[] UPDATES_PERIODS = {
+            "day", "week", "month"
+    };
+    private static final long[] UPDATES_PERIODS_MS = {
+            DateUtils.DAY_IN_MILLIS, DateUtils.WEEK_IN_MILLIS, 30 * DateUtils.DAY_IN_MILLIS
+    };
+
+    /**
+     * Compare TVDb change times with some leeway as they are based on server, not device time.
+     */
+    private static final long UPDATES_TIME_LEEWAY_MS = DateUtils.HOUR_IN_MILLIS;
+
+    /**
+     * Return list of show TVDb ids that changed on TVDb since they were last updated, or since
+     * {@code lastUpdatesCheck} if all changed shows were updated then. Downloads the smallest TVDb
+     * updates file covering that time. Shows due for an update according to {@link
+     * Shows#NEXT_UPDATE} are included even if unchanged on TVDb, e.g. to get new trakt
+     * information.
+     *
+     * @param lastUpdatesCheck Time of the last sync that updated all shows changed on TVDb, or 0.
+     * @return {@code null} if the updates file could not be downloaded.
+     */
+    public static int[] getChangedShows(Context context, long currentTime,
+            long lastUpdatesCheck) {
+        final HashSet<Integer> dueShowTvdbIds = new HashSet<>();
+        for (int showTvdbId : deltaUpdateShows(currentTime, context)) {
+            dueShowTvdbIds.add(showTvdbId);
+        }
 
-        // get existing show ids
         final Cursor shows = context.getContentResolver().query(Shows.CONTENT_URI, new String[] {
-                Shows._ID, Shows.LASTUPDATED, Shows.AIRSDAYOFWEEK
+                Shows._ID, Shows.LASTUPDATED
         }, null, null, null);
+        if (shows == null) {
+            return null;
+        }
 
-        if (shows != null) {
-            while (shows.moveToNext()) {
-                boolean isDailyShow = TimeTools.getDayOfWeek(shows.getString(2))
-                        == TimeTools.RELEASE_DAY_DAILY;
-                long lastUpdatedTime = shows.getLong(1);
-                // update daily shows more frequently than weekly shows
-                if (currentTime - lastUpdatedTime >
-                        (isDailyShow ? UPDATE_THRESHOLD_DAILYS_MS : UPDATE_THRESHOLD_WEEKLYS_MS)) {
-                    // add shows that are due for updating
-                    updatableShowIds.add(shows.getInt(0));
-                }
+        // shows are up to date as of their last update or the last updates check
+        final int[] showTvdbIds = new int[shows.getCount()];
+        final long[] upToDateTimes = new long[shows.getCount()];
+        long oldestUpToDateTime = currentTime;
+        int i = 0;
+        while (shows.moveToNext()) {
+            showTvdbIds[i] = shows.getInt(0);
+            if (dueShowTvdbIds.contains(showTvdbIds[i])) {
+                // due for an update anyhow
+                upToDateTimes[i] = 0;
+            } else {
+                upToDateTimes[i] = Math.max(shows.getLong(1), lastUpdatesCheck);
+                oldestUpToDateTime = Math.min(oldestUpToDateTime, upToDateTimes[i]);
             }
+            i++;
+        }
+        shows.close();
+
+        // pick the smallest updates file covering all up to date shows
+        long period = currentTime - oldestUpToDateTime + UPDATES_TIME_LEEWAY_MS;
+        int periodIndex = 0;
+        while (periodIndex < UPDATES_PERIODS.length - 1
+                && period > UPDATES_PERIODS_MS[periodIndex]) {
+            periodIndex++;
+        }
 
-            long showCount = (long) shows.getCount();
-            Utils.trackCustomEvent(context, "Statistics", "Shows", String.valueOf(showCount));
+        final HashMap<Integer, Long> changeTimes = new HashMap<>();
+        if (oldestUpToDateTime < currentTime) {
+            try {
+                getShowChangeTimes(context, UPDATES_PERIODS[periodIndex], changeTimes);
+            } catch (TvdbException e) {
+                Timber.e(e, "Downloading TVDb updates failed");
+                return null;
+            }
+        }
 
-            shows.close();
+        final List<Integer> updatableShowIds = new ArrayList<>();
+        for (i = 0; i < showTvdbIds.length; i++) {
+            if (upToDateTimes[i] == 0) {
+                updatableShowIds.add(showTvdbIds[i]);
+                continue;
+            }
+            Long changeTimeSeconds = changeTimes.get(showTvdbIds[i]);
+            if (changeTimeSeconds != null && changeTimeSeconds * DateUtils.SECOND_IN_MILLIS
+                    > upToDateTimes[i] - UPDATES_TIME_LEEWAY_MS) {
+                updatableShowIds.add(showTvdbIds[i]);
+            }
         }
+        Timber.d("getChangedShows: " + updatableShowIds.size() + " of " + showTvdbIds.length
+                + " shows changed, checked updates_" + UPDATES_PERIODS[periodIndex]);
 
         // copy to int array
-        int[] showTvdbIds = new int[updatableShowIds.size()];
-        for (int i = 0; i < updatableShowIds.size(); i++) {
-            showTvdbIds[i] = updatableShowIds.get(i);
+        int[] changedShowTvdbIds = new int[updatableShowIds.size()];
+        for (i = 0; i < updatableShowIds.size(); i++) {
+            changedShowTvdbIds[i] = updatableShowIds.get(i);
         }
-        return showTvdbIds;
+        return changedShowTvdbIds;
     }
 
     /**
-     * Fetches episodes for the given show from TVDb, adds database ops for them. Then adds all
-     * information to the database.
+     * Downloads the TVDb updates file for the given period ("day", "week" or "month") and puts
+     * the time (in seconds) a show or one of its episodes last changed for each listed show TVDb
+     * id into {@code changeTimes}. The caching HTTP client only downloads the file again if it has
+     * changed.
      */
-    private static boolean getEpisodesAndUpdateDatabase(Context context, Show show,
-            String language, final ArrayList<ContentProviderOperation> batch)
-            throws TvdbException {
-        // get ops for episodes of this show
-        ArrayList<ContentValues> importShowEpisodes = fetchEpisodes(batch, show, language,
-                context);
-        ContentValues[] newEpisodesValues = new ContentValues[importShowEpisodes.size()];
-        newEpisodesValues = importShowEpisodes.toArray(newEpisodesValues);
+    private static void getShowChangeTimes(Context context, String period,
+            final HashMap<Integer, Long> changeTimes) throws TvdbException {
+        RootElement root = new RootElement("Data");
 
-        try {
-            DBUtils.applyInSmallBatches(context, batch);
-        } catch (OperationApplicationException e) {
-            throw new TvdbException("Problem applying batch operation for " + show.tvdbId, e);
-        }
+        // show changes
+        Element series = root.getChild("Series");
+        final long[] seriesValues = new long[2];
+        series.setEndElementListener(new EndElementListener() {
+            @Override
+            public void end() {
+                putLatestChangeTime(changeTimes, (int) seriesValues[0], seriesValues[1]);
+                seriesValues[0] = 0;
+                seriesValues[1] = 0;
+            }
+        });
+        series.getChild("id").setEndTextElementListener(new EndTextElementListener() {
+            @Override
+            public void end(String body) {
+                seriesValues[0] = parseIntOrZero(body.trim());
+            }
+        });
+        series.getChild("time").setEndTextElementListener(new EndTextElementListener() {
+            @Override
+            public void end(String body) {
+                seriesValues[1] = parseLongOrZero(body.trim());
+            }
+        });
 
-        // insert all new episodes in bulk
-        context.getContentResolver().bulkInsert(Episodes.CONTENT_URI, newEpisodesValues);
+        // episode changes, count as a change of their show
+        Element episode = root.getChild("Episode");
+        final long[] episodeValues = new long[2];
+        episode.setEndElementListener(new EndElementListener() {
+            @Override
+            public void end() {
+                putLatestChangeTime(changeTimes, (int) episodeValues[0], episodeValues[1]);
+                episodeValues[0] = 0;
+                episodeValues[1] = 0;
+            }
+        });
+        episode.getChild("Series").setEndTextElementListener(new EndTextElementListener() {
+            @Override
+            public void end(String body) {
+                episodeValues[0] = parseIntOrZero(body.trim());
+            }
+        });
+        episode.getChild("time").setEndTextElementListener(new EndTextElementListener() {
+            @Override
+            public void end(String body) {
+                episodeValues[1] = parseLongOrZero(body.trim());
+            }
+        });
 
-        return true;
+        downloadAndParse(context, root.getContentHandler(),
+                TVDB_API_UPDATES + period + TVDB_EXTENSION_COMPRESSED, true);
+    }
+
+    /**
+     * Stores the given change time for the show, unless a later one is already stored.
+     */
+    private static void putLatestChangeTime(HashMap<Integer, Long> changeTimes, int showTvdbId,
+            long changeTime) {
+        if (showTvdbId <= 0) {
+            return;
+        }
+        Long existingChangeTime = changeTimes.get(showTvdbId);
+        if (existingChangeTime == null || existingChangeTime < changeTime) {
+            changeTimes.put(showTvdbId, changeTime);
+        }
     }
 
     private static void storeTraktFlags(int showTvdbId, List<TvShow> shows, Context context,
@@ -345,7 +569,7 @@ public class TheTVDB {
             }
 
             TraktTools.applyEpisodeFlagChanges(context, tvShow,
-                    isSeenFlags ? Episodes.WATCHED : Episodes.COLLECTED, false);
+                    isSeenFlags ? Episodes.WATCHED : Episodes.COLLECTED);
 
             // done, found the show we were looking for
             return;
@@ -513,20 +737,33 @@ public class TheTVDB {
         String url = TVDB_API_SERIES + show.tvdbId + "/" + TVDB_PATH_ALL
                 + (language != null ? language + TVDB_EXTENSION_COMPRESSED : TVDB_FILE_DEFAULT);
 
-        return parseEpisodes(batch, url, show, context);
+        return parseEpisodes(batch, url, null, show, context);
+    }
+
+    /**
+     * Like updating a show, parses its episodes from the given uncompressed XML instead of
+     * downloading them. Used to benchmark the parser.
+     */
+    public static ArrayList<ContentValues> parseEpisodes(Context context, Show show,
+            InputStream input, ArrayList<ContentProviderOperation> batch) throws TvdbException {
+        return parseEpisodes(batch, null, input, show, context);
     }
 
     /**
-     * Loads the given zipped XML and parses containing episodes to create an array of {@link
-     * ContentValues} for new episodes.<br> Adds update ops for updated episodes and delete ops for
-     * local orphaned episodes to the given {@link ContentProviderOperation} batch.
+     * Loads the given zipped XML, or parses the given uncompressed XML input if not null, to create
+     * an array of {@link ContentValues} for new and updated episodes.<br> Adds season ops and
+     * delete ops for local orphaned episodes to the given {@link ContentProviderOperation} batch.
      */
     private static ArrayList<ContentValues> parseEpisodes(
-            final ArrayList<ContentProviderOperation> batch, String url, final Show show,
-            Context context) throws TvdbException {
-        final ArrayList<ContentValues> newEpisodesValues = new ArrayList<>();
-        final long dateLastMonthEpoch = (System.currentTimeMillis()
-                - (DateUtils.DAY_IN_MILLIS * 30)) / 1000;
+            final ArrayList<ContentProviderOperation> batch, String url, InputStream input,
+            final Show show, Context context) throws TvdbException {
+        final ArrayList<ContentValues> episodesValues = new ArrayList<>();
+        final long currentTime = System.currentTimeMillis();
+        final long dateLastMonthEpoch = (currentTime - (DateUtils.DAY_IN_MILLIS * 30)) / 1000;
+        // release time of the next episode and latest edit time (in seconds) of all episodes
+        final long[] episodeTimes = new long[] {
+                Long.MAX_VALUE, show.lastEdited
+        };
 
         RootElement root = new RootElement("Data");
         Element episode = root.getChild("Episode");
@@ -537,148 +774,165 @@ public class TheTVDB {
                 localEpisodeIds); // just copy episodes list, then remove valid ones
         final HashSet<Integer> localSeasonIds = DBUtils.getSeasonIdsOfShow(context, show.tvdbId);
         // store updated seasons to avoid duplicate ops
-        final HashSet<Integer> seasonIdsToUpdate = new HashSet<>();
-        final ContentValues values = new ContentValues();
+        final SparseBooleanArray seasonIdsToUpdate = new SparseBooleanArray();
+        // re-used for all episodes, only copied to ContentValues if inserted or updated
+        final EpisodeRecord record = new EpisodeRecord();
 
         // set handlers for elements we want to react to
         episode.setEndElementListener(new EndElementListener() {
             public void end() {
-                Integer episodeId = values.getAsInteger(Episodes._ID);
-                if (episodeId == null || episodeId <= 0) {
+                int episodeId = parseIntOrZero(record.id);
+                if (episodeId <= 0) {
                     // invalid id, skip
+                    record.clear();
                     return;
                 }
 
                 // don't clean up this episode
                 removableEpisodeIds.remove(episodeId);
 
+                // remember when to update the show next
+                if (record.releaseDate != null && record.releaseTime > currentTime) {
+                    episodeTimes[0] = Math.min(episodeTimes[0], record.releaseTime);
+                }
+                if (record.hasLastEdited) {
+                    episodeTimes[1] = Math.max(episodeTimes[1], record.lastEdited);
+                }
+
                 // decide whether to insert or update
                 if (localEpisodeIds.containsKey(episodeId)) {
                     /*
-                     * Update uses provider ops which take a long time. Only
-                     * update if episode was edited on TVDb or is not older than
-                     * a month (ensures show air time changes get stored).
+                     * Only update if episode was edited on TVDb or is not older
+                     * than a month (ensures show air time changes get stored).
                      */
                     Long lastEditEpoch = localEpisodeIds.get(episodeId);
-                    Long lastEditEpochNew = values.getAsLong(Episodes.LAST_EDITED);
-                    if (lastEditEpoch != null && lastEditEpochNew != null
-                            && (lastEditEpoch < lastEditEpochNew
+                    if (lastEditEpoch != null && record.hasLastEdited
+                            && (lastEditEpoch < record.lastEdited
                             || dateLastMonthEpoch < lastEditEpoch)) {
-                        // complete update op for episode
-                        batch.add(DBUtils.buildEpisodeUpdateOp(values));
+                        // complete update of episode
+                        episodesValues.add(record.toContentValues());
                     }
                 } else {
                     // episode does not exist, yet
-                    newEpisodesValues.add(new ContentValues(values));
+                    episodesValues.add(record.toContentValues());
                 }
 
-                Integer seasonId = values.getAsInteger(Seasons.REF_SEASON_ID);
-                if (seasonId != null && !seasonIdsToUpdate.contains(seasonId)) {
+                int seasonId = parseIntOrZero(record.seasonId);
+                if (seasonId != 0 && !seasonIdsToUpdate.get(seasonId)) {
                     // add insert/update op for season
-                    batch.add(DBUtils.buildSeasonOp(values, !localSeasonIds.contains(seasonId)));
-                    seasonIdsToUpdate.add(values.getAsInteger(Seasons.REF_SEASON_ID));
+                    batch.add(DBUtils.buildSeasonOp(record.seasonId, record.season,
+                            record.showId, !localSeasonIds.contains(seasonId)));
+                    seasonIdsToUpdate.put(seasonId, true);
                 }
 
-                values.clear();
+                record.clear();
             }
         });
         episode.getChild("id").setEndTextElementListener(new EndTextElementListener() {
             public void end(String body) {
-                values.put(Episodes._ID, body.trim());
+                record.id = body.trim();
             }
         });
         episode.getChild("EpisodeNumber").setEndTextElementListener(new EndTextElementListener() {
             public void end(String body) {
-                values.put(Episodes.NUMBER, body.trim());
+                record.number = body.trim();
             }
         });
         episode.getChild("absolute_number").setEndTextElementListener(new EndTextElementListener() {
             public void end(String body) {
-                values.put(Episodes.ABSOLUTE_NUMBER, body.trim());
+                record.absoluteNumber = body.trim();
             }
         });
         episode.getChild("SeasonNumber").setEndTextElementListener(new EndTextElementListener() {
             public void end(String body) {
-                values.put(Episodes.SEASON, body.trim());
+                record.season = body.trim();
             }
         });
         episode.getChild("DVD_episodenumber").setEndTextElementListener(
                 new EndTextElementListener() {
                     public void end(String body) {
-                        values.put(Episodes.DVDNUMBER, body.trim());
+                        record.dvdNumber = body.trim();
                     }
                 }
         );
         episode.getChild("FirstAired").setEndTextElementListener(new EndTextElementListener() {
             public void end(String body) {
-                long episodeAirTime = TimeTools
+                record.releaseTime = TimeTools
                         .parseEpisodeReleaseTime(body, show.airtime, show.country);
-                values.put(Episodes.FIRSTAIREDMS, episodeAirTime);
-                values.put(Episodes.FIRSTAIRED, body.trim());
+                record.releaseDate = body.trim();
             }
         });
         episode.getChild("EpisodeName").setEndTextElementListener(new EndTextElementListener() {
             public void end(String body) {
-                values.put(Episodes.TITLE, body.trim());
+                record.title = body.trim();
             }
         });
         episode.getChild("Overview").setEndTextElementListener(new EndTextElementListener() {
             public void end(String body) {
-                values.put(Episodes.OVERVIEW, body.trim());
+                record.overview = body.trim();
             }
         });
         episode.getChild("seasonid").setEndTextElementListener(new EndTextElementListener() {
             public void end(String body) {
-                values.put(Seasons.REF_SEASON_ID, body.trim());
+                record.seasonId = body.trim();
             }
         });
         episode.getChild("seriesid").setEndTextElementListener(new EndTextElementListener() {
             public void end(String body) {
-                values.put(Shows.REF_SHOW_ID, body.trim());
+                record.showId = body.trim();
             }
         });
         episode.getChild("Director").setEndTextElementListener(new EndTextElementListener() {
             public void end(String body) {
-                values.put(Episodes.DIRECTORS, body.trim());
+                record.directors = body.trim();
             }
         });
         episode.getChild("GuestStars").setEndTextElementListener(new EndTextElementListener() {
             public void end(String body) {
-                values.put(Episodes.GUESTSTARS, body.trim());
+                record.guestStars = body.trim();
             }
         });
         episode.getChild("Writer").setEndTextElementListener(new EndTextElementListener() {
             public void end(String body) {
-                values.put(Episodes.WRITERS, body.trim());
+                record.writers = body.trim();
             }
         });
         episode.getChild("Rating").setEndTextElementListener(new EndTextElementListener() {
             public void end(String body) {
-                values.put(Episodes.RATING, body.trim());
+                record.rating = body.trim();
             }
         });
         episode.getChild("filename").setEndTextElementListener(new EndTextElementListener() {
             public void end(String body) {
-                values.put(Episodes.IMAGE, body.trim());
+                record.image = body.trim();
             }
         });
         episode.getChild("IMDB_ID").setEndTextElementListener(new EndTextElementListener() {
             public void end(String body) {
-                values.put(Episodes.IMDBID, body.trim());
+                record.imdbId = body.trim();
             }
         });
         episode.getChild("lastupdated").setEndTextElementListener(new EndTextElementListener() {
             public void end(String body) {
                 // system populated field, trimming not necessary
                 try {
-                    values.put(Episodes.LAST_EDITED, Long.valueOf(body));
+                    record.lastEdited = Long.parseLong(body);
                 } catch (NumberFormatException e) {
-                    values.put(Episodes.LAST_EDITED, 0);
+                    record.lastEdited = 0;
                 }
+                record.hasLastEdited = true;
             }
         });
 
-        downloadAndParse(context, root.getContentHandler(), url, true);
+        if (input != null) {
+            try {
+                parse(input, root.getContentHandler(), false);
+            } catch (IOException | SAXException e) {
+                throw new TvdbException("Problem parsing episodes of " + show.tvdbId, e);
+            }
+        } else {
+            downloadAndParse(context, root.getContentHandler(), url, true);
+        }
 
         // add delete ops for leftover episodeIds in our db
         for (Integer episodeId : removableEpisodeIds.keySet()) {
@@ -686,7 +940,124 @@ public class TheTVDB {
                     .build());
         }
 
-        return newEpisodesValues;
+        // schedule the next update based on status, upcoming episodes and edit activity
+        long nextReleaseTime = episodeTimes[0] == Long.MAX_VALUE ? 0 : episodeTimes[0];
+        batch.add(DBUtils.buildShowNextUpdateOp(show.tvdbId,
+                ShowUpdateScheduler.getNextUpdateTime(currentTime, DBUtils.getShowStatus(show),
+                        nextReleaseTime, episodeTimes[1] * DateUtils.SECOND_IN_MILLIS)));
+
+        return episodesValues;
+    }
+
+    /**
+     * Values of an episode parsed from TVDb XML. Values of elements missing in the XML stay {@code
+     * null}, so they are not written to the database.
+     */
+    private static class EpisodeRecord {
+
+        String id;
+        String number;
+        String absoluteNumber;
+        String season;
+        String dvdNumber;
+        String releaseDate;
+        long releaseTime;
+        String title;
+        String overview;
+        String seasonId;
+        String showId;
+        String directors;
+        String guestStars;
+        String writers;
+        String rating;
+        String image;
+        String imdbId;
+        long lastEdited;
+        boolean hasLastEdited;
+
+        ContentValues toContentValues() {
+            ContentValues values = new ContentValues(20);
+            putIfPresent(values, Episodes._ID, id);
+            putIfPresent(values, Episodes.NUMBER, number);
+            putIfPresent(values, Episodes.ABSOLUTE_NUMBER, absoluteNumber);
+            putIfPresent(values, Episodes.SEASON, season);
+            putIfPresent(values, Episodes.DVDNUMBER, dvdNumber);
+            if (releaseDate != null) {
+                values.put(Episodes.FIRSTAIREDMS, releaseTime);
+                values.put(Episodes.FIRSTAIRED, releaseDate);
+            }
+            putIfPresent(values, Episodes.TITLE, title);
+            putIfPresent(values, Episodes.OVERVIEW, overview);
+            putIfPresent(values, Seasons.REF_SEASON_ID, seasonId);
+            putIfPresent(values, Shows.REF_SHOW_ID, showId);
+            putIfPresent(values, Episodes.DIRECTORS, directors);
+            putIfPresent(values, Episodes.GUESTSTARS, guestStars);
+            putIfPresent(values, Episodes.WRITERS, writers);
+            putIfPresent(values, Episodes.RATING, rating);
+            putIfPresent(values, Episodes.IMAGE, image);
+            putIfPresent(values, Episodes.IMDBID, imdbId);
+            if (hasLastEdited) {
+                values.put(Episodes.LAST_EDITED, lastEdited);
+            }
+            return values;
+        }
+
+        void clear() {
+            id = null;
+            number = null;
+            absoluteNumber = null;
+            season = null;
+            dvdNumber = null;
+            releaseDate = null;
+            releaseTime = 0;
+            title = null;
+            overview = null;
+            seasonId = null;
+            showId = null;
+            directors = null;
+            guestStars = null;
+            writers = null;
+            rating = null;
+            image = null;
+            imdbId = null;
+            lastEdited = 0;
+            hasLastEdited = false;
+        }
+
+        private static void putIfPresent(ContentValues values, String key, String value) {
+            if (value != null) {
+                values.put(key, value);
+            }
+        }
+    }
+
+    /**
+     * Returns the integer value of the given string or 0 if it is {@code null} or not a valid
+     * integer.
+     */
+    private static int parseIntOrZero(String value) {
+        if (TextUtils.isEmpty(value)) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the long value of the given string or 0 if it is {@code null} or not a valid long.
+     */
+    private static long parseLongOrZero(String value) {
+        if (TextUtils.isEmpty(value)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
     }
 
     /**
@@ -698,27 +1069,7 @@ public class TheTVDB {
             boolean isZipFile) throws TvdbException {
         try {
             final InputStream input = Utils.downloadAndCacheUrl(context, urlString);
-
-            if (isZipFile) {
-                // We downloaded the compressed file from TheTVDB
-                final ZipInputStream zipin = new ZipInputStream(input);
-                zipin.getNextEntry();
-                try {
-                    Xml.parse(zipin, Xml.Encoding.UTF_8, handler);
-                } finally {
-                    if (zipin != null) {
-                        zipin.close();
-                    }
-                }
-            } else {
-                try {
-                    Xml.parse(input, Xml.Encoding.UTF_8, handler);
-                } finally {
-                    if (input != null) {
-                        input.close();
-                    }
-                }
-            }
+            parse(input, handler, isZipFile);
         } catch (SAXException e) {
             throw new TvdbException("Problem parsing " + urlString, e);
         } catch (IOException e) {
@@ -730,4 +1081,28 @@ public class TheTVDB {
             throw new TvdbException("Problem downloading and parsing " + urlString, e);
         }
     }
+
+    private static void parse(InputStream input, ContentHandler handler, boolean isZipFile)
+            throws IOException, SAXException {
+        if (isZipFile) {
+            // We downloaded the compressed file from TheTVDB
+            final ZipInputStream zipin = new ZipInputStream(input);
+            try {
+                zipin.getNextEntry();
+                Xml.parse(zipin, Xml.Encoding.UTF_8, handler);
+            } finally {
+                if (zipin != null) {
+                    zipin.close();
+                }
+            }
+        } else {
+            try {
+                Xml.parse(input, Xml.Encoding.UTF_8, handler);
+            } finally {
+                if (input != null) {
+                    input.close();
+                }
+            }
+        }
+    }
 }
@@ -17,10 +17,10 @@
 package com.battlelancer.seriesguide.tmdbapi;
 
 import android.content.Context;
+import com.battlelancer.seriesguide.util.HostLimitedOkClient;
 import com.battlelancer.seriesguide.util.ServiceUtils;
 import com.uwetrottmann.tmdb.Tmdb;
 import retrofit.RestAdapter;
-import retrofit.client.OkClient;
 
 public class SgTmdb extends Tmdb {
 
@@ -33,6 +33,6 @@ public class SgTmdb extends Tmdb {
     @Override
     protected RestAdapter.Builder newRestAdapterBuilder() {
         return new RestAdapter.Builder().setClient(
-                new OkClient(ServiceUtils.getCachingOkHttpClient(context)));
+                new HostLimitedOkClient(ServiceUtils.getCachingOkHttpClient(context)));
     }
 }
@@ -17,10 +17,10 @@
 package com.battlelancer.seriesguide.traktapi;
 
 import android.content.Context;
+import com.battlelancer.seriesguide.util.HostLimitedOkClient;
 import com.battlelancer.seriesguide.util.ServiceUtils;
 import com.jakewharton.trakt.Trakt;
 import retrofit.RestAdapter;
-import retrofit.client.OkClient;
 
 public class SgTrakt extends Trakt {
 
@@ -33,6 +33,6 @@ public class SgTrakt extends Trakt {
     @Override
     protected RestAdapter.Builder newRestAdapterBuilder() {
         return new RestAdapter.Builder().setClient(
-                new OkClient(ServiceUtils.getCachingOkHttpClient(context)));
+                new HostLimitedOkClient(ServiceUtils.getCachingOkHttpClient(context)));
     }
 }
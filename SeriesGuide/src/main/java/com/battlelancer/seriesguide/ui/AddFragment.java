@@ -31,9 +31,11 @@ import android.widget.TextView;
 import com.battlelancer.seriesguide.R;
 import com.battlelancer.seriesguide.items.SearchResult;
 import com.battlelancer.seriesguide.ui.dialogs.AddShowDialogFragment;
+import com.battlelancer.seriesguide.util.AddShowTask;
 import com.battlelancer.seriesguide.util.ServiceUtils;
 import com.battlelancer.seriesguide.util.TaskManager;
 import com.uwetrottmann.androidutils.AndroidUtils;
+import de.greenrobot.event.EventBus;
 import java.util.List;
 
 /**
@@ -73,6 +75,35 @@ public abstract class AddFragment extends Fragment {
         }
     }
 
+    @Override
+    public void onStart() {
+        super.onStart();
+        EventBus.getDefault().register(this);
+    }
+
+    @Override
+    public void onStop() {
+        super.onStop();
+        EventBus.getDefault().unregister(this);
+    }
+
+    /**
+     * Shows the add button again for a show that could not be added.
+     */
+    public void onEvent(AddShowTask.OnShowAddProgressEvent event) {
+        if (!event.isFailed || mAdapter == null) {
+            return;
+        }
+        for (int i = 0; i < mAdapter.getCount(); i++) {
+            SearchResult show = mAdapter.getItem(i);
+            if (show.tvdbid == event.showTvdbId) {
+                show.isAdded = false;
+                mAdapter.notifyDataSetChanged();
+                return;
+            }
+        }
+    }
+
     /**
      * Changes the empty message.
      */
@@ -41,10 +41,9 @@ import com.battlelancer.seriesguide.provider.SeriesGuideContract.ListItems;
 import com.battlelancer.seriesguide.provider.SeriesGuideContract.Lists;
 import com.battlelancer.seriesguide.provider.SeriesGuideContract.Shows;
 import com.battlelancer.seriesguide.ui.dialogs.ManageListsDialogFragment;
+import com.battlelancer.seriesguide.util.ReleaseTimeFormatter;
 import com.battlelancer.seriesguide.util.SeasonTools;
-import com.battlelancer.seriesguide.util.TimeTools;
 import com.battlelancer.seriesguide.util.Utils;
-import java.util.Date;
 
 /**
  * Displays one user created list which includes a mixture of shows, seasons and episodes.
@@ -212,8 +211,9 @@ public class ListsFragment extends Fragment implements
                         viewHolder.episode.setText("");
                     } else {
                         viewHolder.episode.setText(fieldValue);
-                        fieldValue = cursor.getString(ListItemsQuery.SHOW_NEXTAIRDATETEXT);
-                        viewHolder.episodeTime.setText(fieldValue);
+                        viewHolder.episodeTime.setText(ReleaseTimeFormatter.get(context)
+                                .formatRelativeTimeAndDay(
+                                        cursor.getLong(ListItemsQuery.SHOW_NEXTAIRDATEMS)));
                     }
                     break;
                 case 2:
@@ -228,15 +228,13 @@ public class ListsFragment extends Fragment implements
                     viewHolder.timeAndNetwork.setText(R.string.episode);
                     viewHolder.episode.setText(Utils.getNextEpisodeString(context,
                             cursor.getInt(ListItemsQuery.SHOW_NEXTTEXT),
-                            cursor.getInt(ListItemsQuery.SHOW_NEXTAIRDATETEXT),
+                            cursor.getInt(ListItemsQuery.SHOW_NEXTAIRDATEMS),
                             cursor.getString(ListItemsQuery.ITEM_TITLE)));
                     long releaseTime = cursor.getLong(ListItemsQuery.SHOW_OR_EPISODE_RELEASE_TIME);
                     if (releaseTime != -1) {
                         // "in 15 mins (Fri)"
-                        Date actualRelease = TimeTools.getEpisodeReleaseTime(context, releaseTime);
-                        viewHolder.episodeTime.setText(getString(R.string.release_date_and_day,
-                                TimeTools.formatToRelativeLocalReleaseTime(context, actualRelease),
-                                TimeTools.formatToLocalReleaseDay(actualRelease)));
+                        viewHolder.episodeTime.setText(ReleaseTimeFormatter.get(context)
+                                .formatRelativeTimeAndDay(releaseTime));
                     }
                     break;
             }
@@ -312,7 +310,7 @@ public class ListsFragment extends Fragment implements
                 ListItems._ID, ListItems.LIST_ITEM_ID, ListItems.ITEM_REF_ID, ListItems.TYPE,
                 Shows.REF_SHOW_ID, Shows.TITLE, Shows.OVERVIEW, Shows.POSTER, Shows.NETWORK,
                 Shows.AIRSTIME, Shows.AIRSDAYOFWEEK, Shows.STATUS, Shows.NEXTTEXT,
-                Shows.NEXTAIRDATETEXT, Shows.FAVORITE, Shows.RELEASE_COUNTRY
+                Shows.NEXTAIRDATEMS, Shows.FAVORITE, Shows.RELEASE_COUNTRY
         };
 
         String SORTING = Shows.TITLE + " COLLATE NOCASE ASC, " + ListItems.TYPE + " ASC";
@@ -341,7 +339,8 @@ public class ListsFragment extends Fragment implements
 
         int SHOW_NEXTTEXT = 12;
 
-        int SHOW_NEXTAIRDATETEXT = 13;
+        /** Next release time for shows, episode number for episodes. */
+        int SHOW_NEXTAIRDATEMS = 13;
 
         int SHOW_FAVORITE = 14;
 
@@ -427,30 +427,9 @@ public class SeasonsFragment extends ListFragment implements
                 // update one season
                 DBUtils.updateUnwatchedCount(context, mSeasonId);
             } else {
-                // update all seasons of this show, start with the most recent
-                // one
-                final Cursor seasons = context.getContentResolver().query(
-                        Seasons.buildSeasonsOfShowUri(mShowId), new String[] {
-                                Seasons._ID
-                        }, null, null, Seasons.COMBINED + " DESC"
-                );
-                if (seasons == null) {
-                    return;
-                }
-                while (seasons.moveToNext()) {
-                    String seasonId = seasons.getString(0);
-                    DBUtils.updateUnwatchedCount(context, seasonId);
-
-                    notifyContentProvider(context);
-                }
-                seasons.close();
+                // update all seasons of this show
+                DBUtils.updateUnwatchedCountsOfShow(context, mShowId);
             }
-
-            notifyContentProvider(context);
-        }
-
-        private void notifyContentProvider(final FragmentActivity context) {
-            context.getContentResolver().notifyChange(Seasons.buildSeasonsOfShowUri(mShowId), null);
         }
     }
 
@@ -27,6 +27,7 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.preference.CheckBoxPreference;
@@ -38,6 +39,7 @@ import android.preference.PreferenceActivity;
 import android.preference.PreferenceFragment;
 import android.preference.PreferenceManager;
 import android.support.v4.app.TaskStackBuilder;
+import android.text.format.DateUtils;
 import android.view.MenuItem;
 import com.battlelancer.seriesguide.R;
 import com.battlelancer.seriesguide.backend.HexagonTools;
@@ -52,6 +54,8 @@ import com.battlelancer.seriesguide.settings.NotificationSettings;
 import com.battlelancer.seriesguide.settings.TraktSettings;
 import com.battlelancer.seriesguide.settings.UpdateSettings;
 import com.battlelancer.seriesguide.sync.SgSyncAdapter;
+import com.battlelancer.seriesguide.sync.SyncHistory;
+import com.battlelancer.seriesguide.sync.SyncReport;
 import com.battlelancer.seriesguide.util.Utils;
 import com.google.android.gms.analytics.GoogleAnalytics;
 import com.uwetrottmann.androidutils.AndroidUtils;
@@ -81,6 +85,8 @@ public class SeriesGuidePreferences extends PreferenceActivity implements
     // Preference keys
     private static final String KEY_CLEAR_CACHE = "clearCache";
 
+    private static final String KEY_SYNC_HISTORY = "syncHistory";
+
     private static final String KEY_GETGLUE_DISCONNECT = "clearGetGlueCredentials";
 
     public static final String KEY_OFFSET = "com.battlelancer.seriesguide.timeoffset";
@@ -154,7 +160,8 @@ public class SeriesGuidePreferences extends PreferenceActivity implements
                     findPreference(AdvancedSettings.KEY_UPCOMING_LIMIT),
                     findPreference(KEY_OFFSET),
                     findPreference(AppSettings.KEY_GOOGLEANALYTICS),
-                    findPreference(KEY_CLEAR_CACHE)
+                    findPreference(KEY_CLEAR_CACHE),
+                    findPreference(KEY_SYNC_HISTORY)
             );
         } else if (action != null && action.equals(ACTION_PREFS_ABOUT)) {
             addPreferencesFromResource(R.xml.settings_about);
@@ -309,7 +316,7 @@ public class SeriesGuidePreferences extends PreferenceActivity implements
 
     protected static void setupAdvancedSettings(final Context context,
             Preference upcomingPref, Preference offsetPref, Preference analyticsPref,
-            Preference clearCachePref) {
+            Preference clearCachePref, final Preference syncHistoryPref) {
 
         // Clear image cache
         clearCachePref.setOnPreferenceClickListener(new OnPreferenceClickListener() {
@@ -334,6 +341,39 @@ public class SeriesGuidePreferences extends PreferenceActivity implements
             }
         });
 
+        // Sync history: show last sync, share all recorded syncs as JSON
+        // the history is read from disk, so load it in the background
+        AndroidUtils.executeOnPool(new AsyncTask<Void, Void, List<SyncReport>>() {
+            @Override
+            protected List<SyncReport> doInBackground(Void... params) {
+                return SyncHistory.get(context);
+            }
+
+            @Override
+            protected void onPostExecute(List<SyncReport> syncs) {
+                if (syncs.isEmpty()) {
+                    return;
+                }
+                SyncReport lastSync = syncs.get(0);
+                syncHistoryPref.setSummary(context.getString(R.string.sync_history_summary,
+                        DateUtils.getRelativeTimeSpanString(lastSync.startedAt,
+                                System.currentTimeMillis(), DateUtils.MINUTE_IN_MILLIS),
+                        lastSync.durationMs / DateUtils.SECOND_IN_MILLIS, lastSync.result));
+            }
+        });
+        syncHistoryPref.setOnPreferenceClickListener(new OnPreferenceClickListener() {
+            @Override
+            public boolean onPreferenceClick(Preference preference) {
+                Intent intent = new Intent(Intent.ACTION_SEND);
+                intent.setType("application/json");
+                intent.putExtra(Intent.EXTRA_SUBJECT, "SeriesGuide sync history");
+                intent.putExtra(Intent.EXTRA_TEXT, SyncHistory.toJson(context));
+                context.startActivity(Intent.createChooser(intent,
+                        context.getString(R.string.sync_history)));
+                return true;
+            }
+        });
+
         // GA opt-out
         analyticsPref.setOnPreferenceChangeListener(new OnPreferenceChangeListener() {
             @Override
@@ -527,7 +567,8 @@ public class SeriesGuidePreferences extends PreferenceActivity implements
                             findPreference(AdvancedSettings.KEY_UPCOMING_LIMIT),
                             findPreference(KEY_OFFSET),
                             findPreference(AppSettings.KEY_GOOGLEANALYTICS),
-                            findPreference(KEY_CLEAR_CACHE)
+                            findPreference(KEY_CLEAR_CACHE),
+                            findPreference(KEY_SYNC_HISTORY)
                     );
                     break;
                 case "about":
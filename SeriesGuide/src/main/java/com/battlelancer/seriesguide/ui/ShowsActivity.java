@@ -549,6 +549,7 @@ public class ShowsActivity extends BaseTopActivity implements
         // force update of all shows
         ContentValues values = new ContentValues();
         values.put(Shows.LASTUPDATED, 0);
+        values.put(Shows.NEXT_UPDATE, 0);
         getContentResolver().update(Shows.CONTENT_URI, values, null, null);
     }
 
@@ -59,6 +59,7 @@ import com.battlelancer.seriesguide.ui.dialogs.ManageListsDialogFragment;
 import com.battlelancer.seriesguide.util.DBUtils;
 import com.battlelancer.seriesguide.util.EpisodeTools;
 import com.battlelancer.seriesguide.util.LatestEpisodeUpdateTask;
+import com.battlelancer.seriesguide.util.ReleaseTimeFormatter;
 import com.battlelancer.seriesguide.util.ShowTools;
 import com.battlelancer.seriesguide.util.Utils;
 import com.uwetrottmann.androidutils.AndroidUtils;
@@ -205,6 +206,9 @@ public class ShowsFragment extends Fragment implements
             getLoaderManager().restartLoader(ShowsActivity.SHOWS_LOADER_ID, null, this);
         }
 
+        // keep relative release times up to date
+        mMinuteTicker.start();
+
         EventBus.getDefault().register(this);
     }
 
@@ -214,6 +218,7 @@ public class ShowsFragment extends Fragment implements
 
         // avoid CPU activity
         schedulePeriodicDataRefresh(false);
+        mMinuteTicker.stop();
         EventBus.getDefault().unregister(this);
     }
 
@@ -458,7 +463,7 @@ public class ShowsFragment extends Fragment implements
         selection.append(Shows.HIDDEN).append(isFilterHidden ? "=1" : "=0");
 
         // keep unwatched and upcoming shows from becoming stale
-        schedulePeriodicDataRefresh(true);
+        schedulePeriodicDataRefresh(isFilterUnwatched || isFilterUpcoming);
 
         return new CursorLoader(getActivity(), Shows.CONTENT_URI, ShowsQuery.PROJECTION,
                 selection.toString(), null,
@@ -495,6 +500,15 @@ public class ShowsFragment extends Fragment implements
         }
     }
 
+    private final ReleaseTimeFormatter.MinuteTicker mMinuteTicker
+            = new ReleaseTimeFormatter.MinuteTicker(new Runnable() {
+        @Override
+        public void run() {
+            // rebind views, no need to query again
+            mAdapter.notifyDataSetChanged();
+        }
+    });
+
     private Runnable mDataRefreshRunnable = new Runnable() {
         @Override
         public void run() {
@@ -555,8 +569,8 @@ public class ShowsFragment extends Fragment implements
                 viewHolder.episode.setText("");
             } else {
                 viewHolder.episode.setText(fieldValue);
-                fieldValue = cursor.getString(ShowsQuery.NEXTAIRDATETEXT);
-                viewHolder.episodeTime.setText(fieldValue);
+                viewHolder.episodeTime.setText(ReleaseTimeFormatter.get(context)
+                        .formatRelativeTimeAndDay(cursor.getLong(ShowsQuery.NEXTAIRDATEMS)));
             }
 
             // network, day and time
@@ -660,7 +674,7 @@ public class ShowsFragment extends Fragment implements
 
         String[] PROJECTION = {
                 BaseColumns._ID, Shows.TITLE, Shows.NEXTTEXT, Shows.AIRSTIME, Shows.NETWORK,
-                Shows.POSTER, Shows.AIRSDAYOFWEEK, Shows.STATUS, Shows.NEXTAIRDATETEXT,
+                Shows.POSTER, Shows.AIRSDAYOFWEEK, Shows.STATUS, Shows.NEXTAIRDATEMS,
                 Shows.FAVORITE, Shows.NEXTEPISODE, Shows.RELEASE_COUNTRY, Shows.HIDDEN
         };
 
@@ -680,7 +694,7 @@ public class ShowsFragment extends Fragment implements
 
         int STATUS = 7;
 
-        int NEXTAIRDATETEXT = 8;
+        int NEXTAIRDATEMS = 8;
 
         int FAVORITE = 9;
 
@@ -36,7 +36,7 @@ import butterknife.ButterKnife;
 import butterknife.InjectView;
 import com.battlelancer.seriesguide.R;
 import com.battlelancer.seriesguide.provider.SeriesGuideContract;
-import com.battlelancer.seriesguide.provider.SeriesGuideContract.Episodes;
+import com.battlelancer.seriesguide.provider.SeriesGuideContract.ShowStats;
 import com.battlelancer.seriesguide.provider.SeriesGuideContract.Shows;
 import com.battlelancer.seriesguide.settings.DisplaySettings;
 import com.battlelancer.seriesguide.util.ShareUtils;
@@ -379,7 +379,7 @@ public class StatsFragment extends Fragment {
             // ...all shows
             final Cursor shows = resolver.query(Shows.CONTENT_URI,
                     new String[] {
-                            Shows._ID, Shows.STATUS, Shows.NEXTEPISODE, Shows.RUNTIME
+                            Shows._ID, Shows.STATUS, Shows.NEXTEPISODE
                     }, null, null, null
             );
             if (shows != null) {
@@ -398,70 +398,42 @@ public class StatsFragment extends Fragment {
                 stats.shows(shows.getCount()).showsContinuing(continuing)
                         .showsWithNextEpisodes(withnext);
 
-                boolean includeSpecials = !DisplaySettings.isHidingSpecials(context);
-
-                // ...all episodes
-                final Cursor episodes = resolver.query(Episodes.CONTENT_URI,
-                        new String[] { Episodes._ID },
-                        includeSpecials ? null : Episodes.SELECTION_NO_SPECIALS,
-                        null, null);
-                if (episodes != null) {
-                    stats.episodes(episodes.getCount());
-                    episodes.close();
-                }
-
-                // ...watched episodes
-                final Cursor episodesWatched = resolver.query(Episodes.CONTENT_URI,
-                        new String[] { Episodes._ID },
-                        Episodes.SELECTION_WATCHED
-                                + (includeSpecials ? "" : " AND " + Episodes.SELECTION_NO_SPECIALS),
-                        null, null
-                );
-                if (episodesWatched != null) {
-                    stats.episodesWatched(episodesWatched.getCount());
-                    episodesWatched.close();
-                }
-
-                if (isCancelled()) {
-                    shows.close();
-                    return stats;
-                }
+                shows.close();
+            }
 
-                // report intermediate results before longer running op
-                publishProgress(stats);
+            if (isCancelled()) {
+                return stats;
+            }
 
-                // calculate runtime of watched episodes per show
-                shows.moveToPosition(-1);
-                long totalRuntime = 0;
-                int count = 0;
-                while (shows.moveToNext()) {
-                    final Cursor episodesWatchedOfShow = resolver.query(
-                            Episodes.buildEpisodesOfShowUri(shows.getString(0)),
-                            new String[] { Episodes._ID },
-                            Episodes.SELECTION_WATCHED
-                                    + (includeSpecials
-                                    ? "" : " AND " + Episodes.SELECTION_NO_SPECIALS),
-                            null, null
-                    );
-                    if (episodesWatchedOfShow == null) {
-                        continue;
-                    }
-                    long runtimeOfShow = shows.getInt(3) * DateUtils.MINUTE_IN_MILLIS;
-                    long runtimeOfEpisodes = episodesWatchedOfShow.getCount() * runtimeOfShow;
-                    totalRuntime += runtimeOfEpisodes;
-
-                    episodesWatchedOfShow.close();
-                    count++;
-                    // post regular update of minimum
-                    if (count == 25) {
-                        count = 0;
-                        stats.episodesWatchedRuntime(totalRuntime);
-                        publishProgress(stats);
+            // ...all and watched episodes, runtime of watched episodes
+            // from episode counts kept per show, so no need to scan all episodes
+            final Cursor episodes = resolver.query(ShowStats.CONTENT_URI,
+                    new String[] {
+                            "TOTAL(" + ShowStats.EPISODES + ")",
+                            "TOTAL(" + ShowStats.SPECIALS + ")",
+                            "TOTAL(" + ShowStats.WATCHED + ")",
+                            "TOTAL(" + ShowStats.WATCHED_SPECIALS + ")",
+                            "TOTAL(" + ShowStats.WATCHED + "*" + ShowStats.RUNTIME + ")",
+                            "TOTAL(" + ShowStats.WATCHED_SPECIALS + "*" + ShowStats.RUNTIME + ")"
+                    }, null, null, null
+            );
+            if (episodes != null) {
+                if (episodes.moveToFirst()) {
+                    boolean includeSpecials = !DisplaySettings.isHidingSpecials(context);
+                    long episodeCount = episodes.getLong(0);
+                    long watchedCount = episodes.getLong(2);
+                    long watchedRuntimeMin = episodes.getLong(4);
+                    if (!includeSpecials) {
+                        episodeCount -= episodes.getLong(1);
+                        watchedCount -= episodes.getLong(3);
+                        watchedRuntimeMin -= episodes.getLong(5);
                     }
+                    stats.episodes((int) episodeCount)
+                            .episodesWatched((int) watchedCount)
+                            .episodesWatchedRuntime(
+                                    watchedRuntimeMin * DateUtils.MINUTE_IN_MILLIS);
                 }
-                stats.episodesWatchedRuntime(totalRuntime);
-
-                shows.close();
+                episodes.close();
             }
 
             return stats;
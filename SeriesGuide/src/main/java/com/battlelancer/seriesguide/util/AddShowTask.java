@@ -35,14 +35,23 @@ import de.greenrobot.event.EventBus;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import retrofit.RetrofitError;
 import timber.log.Timber;
 
 /**
  * Adds shows to the local database, tries to get watched and collected episodes
  * if a trakt account is connected.
+ *
+ * <p> Downloads up to {@link #PARALLEL_DOWNLOADS} shows at the same time, but adds them to the
+ * database one after another on the task thread.
  */
-public class AddShowTask extends AsyncTask<Void, Integer, Void> {
+public class AddShowTask extends AsyncTask<Void, AddShowTask.Progress, Void> {
 
     public class OnShowAddedEvent {
         private String message;
@@ -58,6 +67,52 @@ public class AddShowTask extends AsyncTask<Void, Integer, Void> {
         }
     }
 
+    /**
+     * Posted after each show in the queue was processed, whether adding it succeeded or not.
+     * {@link #isFailed} is true if the show could not be added and is not in the database.
+     */
+    public static class OnShowAddProgressEvent {
+        public final int showTvdbId;
+        public final boolean isFailed;
+        public final int processedCount;
+        public final int totalCount;
+
+        public OnShowAddProgressEvent(int showTvdbId, boolean isFailed, int processedCount,
+                int totalCount) {
+            this.showTvdbId = showTvdbId;
+            this.isFailed = isFailed;
+            this.processedCount = processedCount;
+            this.totalCount = totalCount;
+        }
+    }
+
+    static class Progress {
+        final int result;
+        final SearchResult show;
+        final int processedCount;
+        final int totalCount;
+
+        Progress(int result, SearchResult show, int processedCount, int totalCount) {
+            this.result = result;
+            this.show = show;
+            this.processedCount = processedCount;
+            this.totalCount = totalCount;
+        }
+    }
+
+    /**
+     * A show downloaded by a worker thread, or the error that prevented it.
+     */
+    private static class DownloadedShow {
+        SearchResult show;
+        TheTVDB.ShowUpdate update;
+        TvdbException error;
+    }
+
+    private static final int PARALLEL_DOWNLOADS = 3;
+
+    private static final int MAX_PENDING_DOWNLOADS = 2 * PARALLEL_DOWNLOADS;
+
     private static final int ADD_ALREADYEXISTS = 0;
 
     private static final int ADD_SUCCESS = 1;
@@ -76,8 +131,6 @@ public class AddShowTask extends AsyncTask<Void, Integer, Void> {
 
     private boolean mIsMergingShows;
 
-    private String mCurrentShowName;
-
     public AddShowTask(Context context, List<SearchResult> shows, boolean isSilentMode,
             boolean isMergingShows) {
         // use an activity independent context
@@ -92,16 +145,19 @@ public class AddShowTask extends AsyncTask<Void, Integer, Void> {
      * added because the task is finishing up. Create a new one instead.
      */
     public boolean addShows(List<SearchResult> show, boolean isSilentMode, boolean isMergingShows) {
-        if (mIsFinishedAddingShows) {
-            Timber.d("addShows: failed, already finishing up.");
-            return false;
-        } else {
-            mIsSilentMode = isSilentMode;
-            // never reset mIsMergingShows once true, so merged flag is correctly set on completion
-            mIsMergingShows = mIsMergingShows || isMergingShows;
-            mAddQueue.addAll(show);
-            Timber.d("addShows: added shows to queue.");
-            return true;
+        synchronized (mAddQueue) {
+            if (mIsFinishedAddingShows) {
+                Timber.d("addShows: failed, already finishing up.");
+                return false;
+            } else {
+                mIsSilentMode = isSilentMode;
+                // never reset mIsMergingShows once true, so merged flag is correctly set on
+                // completion
+                mIsMergingShows = mIsMergingShows || isMergingShows;
+                mAddQueue.addAll(show);
+                Timber.d("addShows: added shows to queue.");
+                return true;
+            }
         }
     }
 
@@ -110,14 +166,16 @@ public class AddShowTask extends AsyncTask<Void, Integer, Void> {
         Timber.d("Starting to add shows...");
 
         // don't even get started
-        if (mAddQueue.isEmpty()) {
-            Timber.d("Finished. Queue was empty.");
-            return null;
+        synchronized (mAddQueue) {
+            if (mAddQueue.isEmpty()) {
+                Timber.d("Finished. Queue was empty.");
+                return null;
+            }
         }
 
         if (!AndroidUtils.isNetworkConnected(mContext)) {
             Timber.d("Finished. No internet connection.");
-            publishProgress(ADD_OFFLINE);
+            publishProgress(new Progress(ADD_OFFLINE, null, 0, 0));
             return null;
         }
 
@@ -145,54 +203,114 @@ public class AddShowTask extends AsyncTask<Void, Integer, Void> {
             }
         }
 
-        int result;
+        final ExecutorService executor = Executors.newFixedThreadPool(PARALLEL_DOWNLOADS);
+        final CompletionService<DownloadedShow> downloads
+                = new ExecutorCompletionService<>(executor);
+
         boolean modifiedDatabase = false;
         boolean failedToAddShow = false;
-        while (!mAddQueue.isEmpty()) {
-            Timber.d("Starting to add next show...");
-            if (isCancelled()) {
-                Timber.d("Finished. Cancelled.");
-                // only cancelled on config change, so don't rebuild fts
-                // table yet
-                return null;
-            }
+        int processed = 0;
+        int pending = 0;
+        try {
+            while (true) {
+                if (isCancelled()) {
+                    Timber.d("Finished. Cancelled.");
+                    return null;
+                }
 
-            if (!AndroidUtils.isNetworkConnected(mContext)) {
-                Timber.d("Finished. No connection.");
-                publishProgress(ADD_OFFLINE);
-                failedToAddShow = true;
-                break;
-            }
+                if (!AndroidUtils.isNetworkConnected(mContext)) {
+                    Timber.d("Finished. No connection.");
+                    publishProgress(new Progress(ADD_OFFLINE, null, processed, processed));
+                    failedToAddShow = true;
+                    break;
+                }
 
-            SearchResult nextShow = mAddQueue.removeFirst();
-
-            try {
-                boolean addedShow = TheTVDB.addShow(mContext, nextShow.tvdbid, watched, collection);
-                result = addedShow ? ADD_SUCCESS : ADD_ALREADYEXISTS;
-                modifiedDatabase = addedShow
-                        || modifiedDatabase; // do not overwrite previous success
-            } catch (TvdbException e) {
-                result = ADD_ERROR;
-                failedToAddShow = true;
-                Timber.e(e, "Adding show failed");
-            }
+                // only keep a few downloaded shows in memory until they are added
+                int queued;
+                synchronized (mAddQueue) {
+                    while (pending < MAX_PENDING_DOWNLOADS && !mAddQueue.isEmpty()) {
+                        final SearchResult nextShow = mAddQueue.removeFirst();
+                        downloads.submit(new Callable<DownloadedShow>() {
+                            @Override
+                            public DownloadedShow call() {
+                                DownloadedShow downloaded = new DownloadedShow();
+                                downloaded.show = nextShow;
+                                try {
+                                    downloaded.update = TheTVDB.fetchNewShow(mContext,
+                                            nextShow.tvdbid);
+                                } catch (TvdbException e) {
+                                    downloaded.error = e;
+                                }
+                                return downloaded;
+                            }
+                        });
+                        pending++;
+                    }
+                    if (pending == 0) {
+                        // queue is empty, do not accept any more shows
+                        mIsFinishedAddingShows = true;
+                        break;
+                    }
+                    queued = mAddQueue.size();
+                }
+
+                DownloadedShow downloaded;
+                try {
+                    downloaded = downloads.take().get();
+                } catch (InterruptedException e) {
+                    Timber.d("Finished. Interrupted.");
+                    Thread.currentThread().interrupt();
+                    return null;
+                } catch (ExecutionException e) {
+                    throw new RuntimeException(e.getCause());
+                }
+                pending--;
+
+                int result;
+                if (downloaded.error == null) {
+                    if (downloaded.update == null) {
+                        result = ADD_ALREADYEXISTS;
+                    } else {
+                        try {
+                            boolean addedShow = TheTVDB.applyNewShow(mContext, downloaded.update,
+                                    watched, collection);
+                            result = addedShow ? ADD_SUCCESS : ADD_ALREADYEXISTS;
+                            modifiedDatabase = addedShow
+                                    || modifiedDatabase; // do not overwrite previous success
+                        } catch (TvdbException e) {
+                            result = ADD_ERROR;
+                            failedToAddShow = true;
+                            Timber.e(e, "Adding show failed");
+                        }
+                    }
+                } else {
+                    result = ADD_ERROR;
+                    failedToAddShow = true;
+                    Timber.e(downloaded.error, "Downloading show failed");
+                }
 
-            mCurrentShowName = nextShow.title;
-            publishProgress(result);
-            Timber.d("Finished adding show. (Result code: " + result + ")");
+                processed++;
+                publishProgress(new Progress(result, downloaded.show, processed,
+                        processed + pending + queued));
+                Timber.d("Finished adding show. (Result code: " + result + ")");
+            }
+        } finally {
+            // cancels downloads still running if adding was stopped early
+            executor.shutdownNow();
         }
 
-        mIsFinishedAddingShows = true;
+        synchronized (mAddQueue) {
+            mIsFinishedAddingShows = true;
+        }
 
         // when merging shows down from Hexagon, set success flag
         if (mIsMergingShows && !failedToAddShow) {
             HexagonSettings.setHasMergedShows(mContext, true);
         }
 
-        // renew FTS3 table
+        // download posters of added shows for offline use
         if (modifiedDatabase) {
-            Timber.d("Renewing search table.");
-            DBUtils.rebuildFtsTable(mContext);
+            Utils.runImagePrefetchService(mContext);
         }
 
         Timber.d("Finished adding shows.");
@@ -200,26 +318,33 @@ public class AddShowTask extends AsyncTask<Void, Integer, Void> {
     }
 
     @Override
-    protected void onProgressUpdate(Integer... values) {
+    protected void onProgressUpdate(Progress... values) {
+        Progress progress = values[0];
+        if (progress.show != null) {
+            EventBus.getDefault().post(new OnShowAddProgressEvent(progress.show.tvdbid,
+                    progress.result == ADD_ERROR, progress.processedCount,
+                    progress.totalCount));
+        }
+
         if (mIsSilentMode) {
             Timber.d("SILENT MODE: do not show progress toast");
             return;
         }
 
         OnShowAddedEvent event = null;
-        switch (values[0]) {
+        switch (progress.result) {
             case ADD_SUCCESS:
                 // do nothing, user will see show added to show list
                 return;
             case ADD_ALREADYEXISTS:
                 event = new OnShowAddedEvent(
-                        mContext.getString(R.string.add_already_exists, mCurrentShowName),
+                        mContext.getString(R.string.add_already_exists, progress.show.title),
                         Toast.LENGTH_LONG
                 );
                 break;
             case ADD_ERROR:
                 event = new OnShowAddedEvent(
-                        mContext.getString(R.string.add_error, mCurrentShowName),
+                        mContext.getString(R.string.add_error, progress.show.title),
                         Toast.LENGTH_LONG);
                 break;
             case ADD_OFFLINE:
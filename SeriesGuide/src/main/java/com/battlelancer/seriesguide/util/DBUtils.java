@@ -16,37 +16,36 @@
 
 package com.battlelancer.seriesguide.util;
 
+import android.content.ContentProviderClient;
 import android.content.ContentProviderOperation;
-import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.text.format.DateUtils;
-import com.battlelancer.seriesguide.R;
+import android.util.SparseArray;
 import com.battlelancer.seriesguide.SeriesGuideApplication;
 import com.battlelancer.seriesguide.dataliberation.JsonExportTask.ShowStatusExport;
 import com.battlelancer.seriesguide.dataliberation.model.Show;
 import com.battlelancer.seriesguide.enums.EpisodeFlags;
-import com.battlelancer.seriesguide.enums.SeasonTags;
 import com.battlelancer.seriesguide.items.Series;
 import com.battlelancer.seriesguide.provider.SeriesGuideContract;
 import com.battlelancer.seriesguide.provider.SeriesGuideContract.Episodes;
 import com.battlelancer.seriesguide.provider.SeriesGuideContract.Seasons;
 import com.battlelancer.seriesguide.provider.SeriesGuideContract.Shows;
+import com.battlelancer.seriesguide.provider.SeriesGuideDatabase.Tables;
 import com.battlelancer.seriesguide.settings.ActivitySettings;
 import com.battlelancer.seriesguide.settings.DisplaySettings;
 import com.battlelancer.seriesguide.thetvdbapi.TheTVDB.ShowStatus;
 import com.battlelancer.seriesguide.ui.ActivityFragment;
 import com.battlelancer.seriesguide.ui.ActivityFragment.ActivityType;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
 import timber.log.Timber;
 
 import static com.battlelancer.seriesguide.provider.SeriesGuideDatabase.Qualified;
@@ -61,7 +60,11 @@ public class DBUtils {
      */
     public static final String UNKNOWN_NEXT_RELEASE_DATE = "9223372036854775807";
 
-    public static final int SMALL_BATCH_SIZE = 50;
+    /**
+     * Maximum number of operations applied in a single transaction by {@link
+     * #applyInSmallBatches(android.content.Context, java.util.ArrayList)}.
+     */
+    public static final int SMALL_BATCH_SIZE = 500;
 
     /**
      * Maps a {@link java.lang.Boolean} object to an int value to store in the database.
@@ -90,6 +93,24 @@ public class DBUtils {
                         null, null);
     }
 
+    /**
+     * Checks the episode counts kept per show for the stats screen and re-builds them if they do
+     * not match the episodes table. Only checks the given shows.
+     */
+    public static void checkShowStats(Context context, HashSet<Integer> showTvdbIds) {
+        if (showTvdbIds.isEmpty()) {
+            return;
+        }
+        String[] selectionArgs = new String[showTvdbIds.size()];
+        int i = 0;
+        for (int showTvdbId : showTvdbIds) {
+            selectionArgs[i++] = String.valueOf(showTvdbId);
+        }
+        context.getContentResolver()
+                .query(SeriesGuideContract.ShowStats.CONTENT_URI_CHECK, null, null, selectionArgs,
+                        null);
+    }
+
     interface UnwatchedQuery {
 
         static final String[] PROJECTION = new String[] {
@@ -98,84 +119,65 @@ public class DBUtils {
 
         static final String AIRED_SELECTION = Episodes.WATCHED + "=0 AND " + Episodes.FIRSTAIREDMS
                 + " !=-1 AND " + Episodes.FIRSTAIREDMS + "<=?";
-
-        static final String FUTURE_SELECTION = Episodes.WATCHED + "=0 AND " + Episodes.FIRSTAIREDMS
-                + ">?";
-
-        static final String NOAIRDATE_SELECTION = Episodes.WATCHED + "=0 AND "
-                + Episodes.FIRSTAIREDMS + "=-1";
-
-        static final String SKIPPED_SELECTION = Episodes.WATCHED + "=" + EpisodeFlags.SKIPPED;
     }
 
     /**
-     * Looks up the episodes of a given season and stores the count of already aired, but not
-     * watched ones in the seasons watchcount.
+     * Looks up the episodes of a given season and stores the count of all, already aired but not
+     * watched, not yet aired and without air date ones in the season. Tags it if it has skipped
+     * episodes.
      */
-    public static void updateUnwatchedCount(Context context, String seasonid) {
-        final ContentResolver resolver = context.getContentResolver();
-        final String customCurrentTime = String.valueOf(TimeTools.getCurrentTime(context));
-        final Uri episodesOfSeasonUri = Episodes.buildEpisodesOfSeasonUri(seasonid);
-
-        // all a seasons episodes
-        final Cursor total = resolver.query(episodesOfSeasonUri, new String[] {
-                Episodes._ID
-        }, null, null, null);
-        if (total == null) {
-            return;
-        }
-        final int totalCount = total.getCount();
-        total.close();
+    public static void updateUnwatchedCount(Context context, String seasonId) {
+        updateSeasonCounts(context, Seasons.buildUpdateCountsOfSeasonUri(seasonId));
+    }
 
-        // unwatched, aired episodes
-        final Cursor unwatched = resolver.query(episodesOfSeasonUri, UnwatchedQuery.PROJECTION,
-                UnwatchedQuery.AIRED_SELECTION, new String[] {
-                        customCurrentTime
-                }, null
-        );
-        if (unwatched == null) {
-            return;
-        }
-        final int count = unwatched.getCount();
-        unwatched.close();
+    /**
+     * Like {@link #updateUnwatchedCount(android.content.Context, String)}, but for all seasons of
+     * the given show using a single query.
+     */
+    public static void updateUnwatchedCountsOfShow(Context context, String showTvdbId) {
+        updateSeasonCounts(context, Seasons.buildUpdateCountsOfShowUri(showTvdbId));
+    }
 
-        // unwatched, aired in the future episodes
-        final Cursor unAired = resolver.query(episodesOfSeasonUri, UnwatchedQuery.PROJECTION,
-                UnwatchedQuery.FUTURE_SELECTION, new String[] {
-                        customCurrentTime
-                }, null
-        );
-        if (unAired == null) {
-            return;
-        }
-        final int unairedCount = unAired.getCount();
-        unAired.close();
+    /**
+     * Like {@link #updateUnwatchedCount(android.content.Context, String)}, but for all seasons of
+     * all shows using a single query.
+     */
+    public static void updateUnwatchedCountsOfAllShows(Context context) {
+        updateSeasonCounts(context, Seasons.CONTENT_URI_UPDATE_COUNTS);
+    }
 
-        // unwatched, no airdate
-        final Cursor noAirDate = resolver.query(episodesOfSeasonUri, UnwatchedQuery.PROJECTION,
-                UnwatchedQuery.NOAIRDATE_SELECTION, null, null);
-        if (noAirDate == null) {
-            return;
+    /**
+     * Returns the TVDb ids of shows with episodes released after {@code releasedAfter} until and
+     * including {@code releasedUntil}. Looks up the episodes of each show with the show and
+     * release time index instead of scanning all episodes.
+     *
+     * @return {@code null} if the query failed.
+     */
+    public static HashSet<Integer> getShowsWithReleasesBetween(Context context,
+            long releasedAfter, long releasedUntil) {
+        Cursor shows = context.getContentResolver().query(Shows.CONTENT_URI, new String[] {
+                Shows._ID
+        }, "EXISTS (SELECT 1 FROM " + Tables.EPISODES + " WHERE "
+                + Qualified.EPISODES_SHOW_ID + "=" + Qualified.SHOWS_ID + " AND "
+                + Tables.EPISODES + "." + Episodes.FIRSTAIREDMS + ">? AND "
+                + Tables.EPISODES + "." + Episodes.FIRSTAIREDMS + "<=?)", new String[] {
+                String.valueOf(releasedAfter), String.valueOf(releasedUntil)
+        }, null);
+        if (shows == null) {
+            return null;
         }
-        final int noAirDateCount = noAirDate.getCount();
-        noAirDate.close();
-
-        // any skipped episodes
-        final Cursor skipped = resolver.query(episodesOfSeasonUri, UnwatchedQuery.PROJECTION,
-                UnwatchedQuery.SKIPPED_SELECTION, null, null);
-        if (skipped == null) {
-            return;
+        HashSet<Integer> showTvdbIds = new HashSet<>(shows.getCount());
+        while (shows.moveToNext()) {
+            showTvdbIds.add(shows.getInt(0));
         }
-        boolean hasSkippedEpisodes = skipped.getCount() > 0;
-        skipped.close();
+        shows.close();
+        return showTvdbIds;
+    }
 
-        final ContentValues update = new ContentValues();
-        update.put(Seasons.WATCHCOUNT, count);
-        update.put(Seasons.UNAIREDCOUNT, unairedCount);
-        update.put(Seasons.NOAIRDATECOUNT, noAirDateCount);
-        update.put(Seasons.TAGS, hasSkippedEpisodes ? SeasonTags.SKIPPED : SeasonTags.NONE);
-        update.put(Seasons.TOTALCOUNT, totalCount);
-        resolver.update(Seasons.buildSeasonUri(seasonid), update, null, null);
+    private static void updateSeasonCounts(Context context, Uri updateCountsUri) {
+        context.getContentResolver().query(updateCountsUri, null, null, new String[] {
+                String.valueOf(TimeTools.getCurrentTime(context))
+        }, null);
     }
 
     /**
@@ -481,16 +483,31 @@ public class DBUtils {
         values.put(Shows.IMDBID, show.imdbId);
         values.put(Shows.LASTEDIT, show.lastEdited);
         values.put(Shows.LASTUPDATED, System.currentTimeMillis());
-        int status;
+        values.put(Shows.STATUS, getShowStatus(show));
+        return values;
+    }
+
+    /**
+     * Returns one of {@link com.battlelancer.seriesguide.thetvdbapi.TheTVDB.ShowStatus} for the
+     * status of the given show.
+     */
+    public static int getShowStatus(Show show) {
         if (ShowStatusExport.CONTINUING.equals(show.status)) {
-            status = ShowStatus.CONTINUING;
+            return ShowStatus.CONTINUING;
         } else if (ShowStatusExport.ENDED.equals(show.status)) {
-            status = ShowStatus.ENDED;
+            return ShowStatus.ENDED;
         } else {
-            status = ShowStatus.UNKNOWN;
+            return ShowStatus.UNKNOWN;
         }
-        values.put(Shows.STATUS, status);
-        return values;
+    }
+
+    /**
+     * Returns an update op setting the time after which the given show should be updated again.
+     */
+    public static ContentProviderOperation buildShowNextUpdateOp(int showTvdbId,
+            long nextUpdateTime) {
+        return ContentProviderOperation.newUpdate(Shows.buildShowUri(showTvdbId))
+                .withValue(Shows.NEXT_UPDATE, nextUpdateTime).build();
     }
 
     /**
@@ -537,80 +554,88 @@ public class DBUtils {
         return seasonIds;
     }
 
-    /**
-     * Creates an update {@link ContentProviderOperation} for the given episode values.
-     */
-    public static ContentProviderOperation buildEpisodeUpdateOp(ContentValues values) {
-        final String episodeId = values.getAsString(Episodes._ID);
-        return ContentProviderOperation
-                .newUpdate(Episodes.buildEpisodeUri(episodeId))
-                .withValues(values).build();
-    }
-
     /**
      * Creates a {@link ContentProviderOperation} for insert if isNew, or update instead for with
      * the given season values.
      */
-    public static ContentProviderOperation buildSeasonOp(ContentValues values, boolean isNew) {
+    public static ContentProviderOperation buildSeasonOp(String seasonTvdbId, String seasonNumber,
+            String showTvdbId, boolean isNew) {
         ContentProviderOperation op;
-        final String seasonId = values.getAsString(Seasons.REF_SEASON_ID);
         final ContentValues seasonValues = new ContentValues();
-        seasonValues.put(Seasons.COMBINED, values.getAsString(Episodes.SEASON));
+        seasonValues.put(Seasons.COMBINED, seasonNumber);
 
         if (isNew) {
-            seasonValues.put(Seasons._ID, seasonId);
-            seasonValues.put(Shows.REF_SHOW_ID, values.getAsString(Shows.REF_SHOW_ID));
+            seasonValues.put(Seasons._ID, seasonTvdbId);
+            seasonValues.put(Shows.REF_SHOW_ID, showTvdbId);
             op = ContentProviderOperation.newInsert(Seasons.CONTENT_URI).withValues(seasonValues)
                     .build();
         } else {
-            op = ContentProviderOperation.newUpdate(Seasons.buildSeasonUri(seasonId))
+            op = ContentProviderOperation.newUpdate(Seasons.buildSeasonUri(seasonTvdbId))
                     .withValues(seasonValues).build();
         }
         return op;
     }
 
-    private interface LastWatchedEpisodeQuery {
-        String[] PROJECTION = new String[] {
-                Qualified.SHOWS_ID,
-                Shows.LASTWATCHEDID,
-                Episodes.SEASON,
-                Episodes.NUMBER,
-                Episodes.FIRSTAIREDMS
-        };
+    private interface NextEpisodesQuery {
 
-        int SHOW_TVDB_ID = 0;
-        int LAST_EPISODE_TVDB_ID = 1;
-        int LAST_EPISODE_SEASON = 2;
-        int LAST_EPISODE_NUMBER = 3;
-        int LAST_EPISODE_FIRST_RELEASE_MS = 4;
-    }
+        /**
+         * Alias for the episodes table to look for the next episode, the last watched episode is
+         * joined as {@link Tables#EPISODES}.
+         */
+        String NEXT = "nextepisodes";
 
-    private interface NextEpisodesQuery {
-        String[] PROJECTION = new String[] {
-                Episodes._ID,
-                Episodes.SEASON,
-                Episodes.NUMBER,
-                Episodes.FIRSTAIREDMS,
-                Episodes.TITLE
-        };
+        String NEXT_ID = NEXT + "." + Episodes._ID;
+        String NEXT_SHOW_ID = NEXT + "." + Shows.REF_SHOW_ID;
+        String NEXT_SEASON = NEXT + "." + Episodes.SEASON;
+        String NEXT_NUMBER = NEXT + "." + Episodes.NUMBER;
+        String NEXT_RELEASE = NEXT + "." + Episodes.FIRSTAIREDMS;
+        String NEXT_WATCHED = NEXT + "." + Episodes.WATCHED;
+
+        /**
+         * Last watched episode values, by default (no watched episode) include all episodes
+         * starting with special 0.
+         */
+        String LAST_SEASON = "IFNULL(" + Tables.EPISODES + "." + Episodes.SEASON + ",-1)";
+        String LAST_NUMBER = "IFNULL(" + Tables.EPISODES + "." + Episodes.NUMBER + ",-1)";
+        String LAST_RELEASE = "IFNULL(" + Tables.EPISODES + "." + Episodes.FIRSTAIREDMS + ","
+                + Long.MIN_VALUE + ")";
 
         /**
          * Unwatched, airing later or has a different number or season if airing the same time.
          */
-        String SELECT_NEXT = Episodes.WATCHED + "=0 AND ("
-                + "(" + Episodes.FIRSTAIREDMS + "=? AND "
-                + "(" + Episodes.NUMBER + "!=? OR " + Episodes.SEASON + "!=?)) "
-                + "OR " + Episodes.FIRSTAIREDMS + ">?)";
+        String SELECT_NEXT = NEXT_SHOW_ID + "=" + Qualified.SHOWS_ID
+                + " AND " + NEXT_WATCHED + "=0 AND ("
+                + "(" + NEXT_RELEASE + "=" + LAST_RELEASE + " AND "
+                + "(" + NEXT_NUMBER + "!=" + LAST_NUMBER + " OR "
+                + NEXT_SEASON + "!=" + LAST_SEASON + ")) "
+                + "OR " + NEXT_RELEASE + ">" + LAST_RELEASE + ")";
+
+        String SELECT_NO_SPECIALS = " AND " + NEXT_SEASON + "!=0";
 
-        String SELECT_WITHAIRDATE = " AND " + Episodes.FIRSTAIREDMS + "!=-1";
+        String SELECT_WITHAIRDATE = " AND " + NEXT_RELEASE + "!=-1";
 
-        String SELECT_ONLYFUTURE = " AND " + Episodes.FIRSTAIREDMS + ">=?";
+        String SELECT_ONLYFUTURE = " AND " + NEXT_RELEASE + ">=";
 
         /**
          * Air time, then lowest season, or if identical lowest episode number.
          */
-        String SORTORDER = Episodes.FIRSTAIREDMS + " ASC," + Episodes.SEASON + " ASC,"
-                + Episodes.NUMBER + " ASC";
+        String SORTORDER = NEXT_RELEASE + " ASC," + NEXT_SEASON + " ASC," + NEXT_NUMBER + " ASC";
+
+        int SHOW_TVDB_ID = 0;
+        int NEXT_EPISODE_TVDB_ID = 1;
+        int CURRENT_NEXT_EPISODE = 2;
+        int CURRENT_NEXT_RELEASE_MS = 3;
+        int CURRENT_NEXT_TEXT = 4;
+    }
+
+    private interface NextEpisodeDetailsQuery {
+        String[] PROJECTION = new String[] {
+                Episodes._ID,
+                Episodes.SEASON,
+                Episodes.NUMBER,
+                Episodes.FIRSTAIREDMS,
+                Episodes.TITLE
+        };
 
         int ID = 0;
         int SEASON = 1;
@@ -623,12 +648,29 @@ public class DBUtils {
      * Update next episode field of the given show. If no show id is passed, will update next
      * episodes for all shows.
      *
+     * <p>The next episodes of all shows are found with a single query (one correlated sub-query
+     * per show), their details with a second one. Only shows where any of the next episode values
+     * changed are written.
+     *
      * @return If only one show was passed, the TVDb id of the new next episode. Otherwise -1.
      */
     public static long updateLatestEpisode(Context context, Integer showTvdbIdToUpdate) {
-        // get a list of shows and their last watched episodes
-        final Cursor shows = context.getContentResolver().query(Shows.CONTENT_URI_WITH_LAST_EPISODE,
-                LastWatchedEpisodeQuery.PROJECTION,
+        final long startTime = SystemClock.elapsedRealtime();
+
+        // STEP 1: get the next episode of each show, starting from its last watched episode
+        final String nextEpisodeQuery = buildNextEpisodeQuery(
+                DisplaySettings.isHidingSpecials(context),
+                DisplaySettings.isNoReleasedEpisodes(context),
+                TimeTools.getCurrentTime(context));
+        final Cursor shows = context.getContentResolver().query(
+                Shows.CONTENT_URI_WITH_LAST_EPISODE,
+                new String[] {
+                        Qualified.SHOWS_ID,
+                        nextEpisodeQuery,
+                        Shows.NEXTEPISODE,
+                        Shows.NEXTAIRDATEMS,
+                        Shows.NEXTTEXT
+                },
                 showTvdbIdToUpdate != null ?
                         Qualified.SHOWS_ID + "=" + showTvdbIdToUpdate : null,
                 null, null
@@ -638,108 +680,40 @@ public class DBUtils {
             Timber.e("Failed to update next episode values");
             return -1;
         }
-        final List<String[]> showsLastEpisodes = new ArrayList<>();
-        while (shows.moveToNext()) {
-            showsLastEpisodes.add(
-                    new String[] {
-                            shows.getString(LastWatchedEpisodeQuery.SHOW_TVDB_ID), // 0
-                            shows.getString(LastWatchedEpisodeQuery.LAST_EPISODE_TVDB_ID), // 1
-                            shows.getString(LastWatchedEpisodeQuery.LAST_EPISODE_SEASON), // 2
-                            shows.getString(LastWatchedEpisodeQuery.LAST_EPISODE_NUMBER), // 3
-                            shows.getString(LastWatchedEpisodeQuery.LAST_EPISODE_FIRST_RELEASE_MS)
-                            // 4
-                    }
-            );
-        }
-        shows.close();
 
-        // pre-build next episode selection
-        final boolean isNoReleasedEpisodes = DisplaySettings.isNoReleasedEpisodes(context);
-        final String nextEpisodeSelection = buildNextEpisodeSelection(
-                DisplaySettings.isHidingSpecials(context), isNoReleasedEpisodes);
+        // STEP 2: get details of all next episodes
+        final SparseArray<ContentValues> nextEpisodes = getNextEpisodeDetails(context, shows);
+        if (nextEpisodes == null) {
+            // abort completely on query failure
+            Timber.e("Failed to update next episode values");
+            shows.close();
+            return -1;
+        }
 
-        // build updated next episode values for each show
+        // STEP 3: build updated next episode values, skip shows where nothing changed
         int nextEpisodeTvdbId = -1;
-        final ContentValues newShowValues = new ContentValues();
         final ArrayList<ContentProviderOperation> batch = new ArrayList<>();
-        final String currentTime = String.valueOf(TimeTools.getCurrentTime(context));
-        for (String[] show : showsLastEpisodes) {
-            // STEP 1: get last watched episode details
-            final String showTvdbId = show[0];
-            final String lastEpisodeTvdbId = show[1];
-            String season = show[2];
-            String number = show[3];
-            String releaseTime = show[4];
-            if (TextUtils.isEmpty(lastEpisodeTvdbId)
-                    || season == null || number == null || releaseTime == null) {
-                // by default: no watched episodes, include all starting with special 0
-                season = "-1";
-                number = "-1";
-                releaseTime = String.valueOf(Long.MIN_VALUE);
-            }
-
-            // STEP 2: get episode released closest afterwards; or at the same time,
-            // but with a higher number
-            final String[] selectionArgs;
-            if (isNoReleasedEpisodes) {
-                // restrict to episodes with future release date
-                selectionArgs = new String[] {
-                        releaseTime, number, season, releaseTime, currentTime
-                };
-            } else {
-                // restrict to episodes with any valid air date
-                selectionArgs = new String[] {
-                        releaseTime, number, season, releaseTime
-                };
-            }
-            final Cursor next = context.getContentResolver()
-                    .query(Episodes.buildEpisodesOfShowUri(showTvdbId),
-                            NextEpisodesQuery.PROJECTION, nextEpisodeSelection, selectionArgs,
-                            NextEpisodesQuery.SORTORDER);
-            if (next == null) {
-                // abort completely on query failure
-                Timber.e("Failed to update next episode values");
-                return -1;
-            }
-
-            // STEP 3: build updated next episode values
-            if (next.moveToFirst()) {
-                // next episode text, e.g. '0x12 Episode Name'
-                final String nextEpisodeString = Utils.getNextEpisodeString(context,
-                        next.getInt(NextEpisodesQuery.SEASON),
-                        next.getInt(NextEpisodesQuery.NUMBER),
-                        next.getString(NextEpisodesQuery.TITLE));
-
-                // next release date text, e.g. "in 15 mins (Fri)"
-                long releaseTimeNext = next.getLong(NextEpisodesQuery.FIRST_RELEASE_MS);
-                Date actualRelease = TimeTools.getEpisodeReleaseTime(context, releaseTimeNext);
-                final String nextReleaseDateString = context.getString(
-                        R.string.release_date_and_day,
-                        TimeTools.formatToRelativeLocalReleaseTime(context, actualRelease),
-                        TimeTools.formatToLocalReleaseDay(actualRelease));
-
-                nextEpisodeTvdbId = next.getInt(NextEpisodesQuery.ID);
-                newShowValues.put(Shows.NEXTEPISODE, nextEpisodeTvdbId);
-                newShowValues.put(Shows.NEXTAIRDATEMS, releaseTimeNext);
-                newShowValues.put(Shows.NEXTTEXT, nextEpisodeString);
-                newShowValues.put(Shows.NEXTAIRDATETEXT, nextReleaseDateString);
-            } else {
-                // no next episode, set empty values
-                nextEpisodeTvdbId = 0;
-                newShowValues.put(Shows.NEXTEPISODE, "");
-                newShowValues.put(Shows.NEXTAIRDATEMS, UNKNOWN_NEXT_RELEASE_DATE);
-                newShowValues.put(Shows.NEXTTEXT, "");
-                newShowValues.put(Shows.NEXTAIRDATETEXT, "");
+        shows.moveToPosition(-1);
+        while (shows.moveToNext()) {
+            final ContentValues nextEpisode = nextEpisodes.get(
+                    shows.getInt(NextEpisodesQuery.NEXT_EPISODE_TVDB_ID));
+            nextEpisodeTvdbId = nextEpisode != null
+                    ? nextEpisode.getAsInteger(Episodes._ID) : 0;
+            final ContentValues newShowValues = buildNextEpisodeValues(context, nextEpisode);
+            if (isNextEpisodeUnchanged(shows, newShowValues)) {
+                continue;
             }
-            next.close();
 
             // update the show with the new next episode values
-            batch.add(ContentProviderOperation.newUpdate(Shows.buildShowUri(showTvdbId))
+            batch.add(ContentProviderOperation.newUpdate(
+                    Shows.buildShowUri(shows.getString(NextEpisodesQuery.SHOW_TVDB_ID)))
                     .withValues(newShowValues)
                     .build());
-            newShowValues.clear();
         }
+        final int showCount = shows.getCount();
+        shows.close();
 
+        final int changedCount = batch.size();
         try {
             DBUtils.applyInSmallBatches(context, batch);
         } catch (OperationApplicationException e) {
@@ -747,69 +721,159 @@ public class DBUtils {
             return -1;
         }
 
+        Timber.d("Updated next episode of " + changedCount + " of " + showCount + " shows in "
+                + (SystemClock.elapsedRealtime() - startTime) + " ms");
+
         return nextEpisodeTvdbId;
     }
 
-    private static String buildNextEpisodeSelection(boolean isHidingSpecials,
-            boolean isNoReleasedEpisodes) {
-        StringBuilder nextEpisodeSelectionBuilder = new StringBuilder(
-                NextEpisodesQuery.SELECT_NEXT);
+    /**
+     * Builds a correlated sub-query returning the TVDb id of the next episode of a show, or null
+     * if there is none.
+     */
+    private static String buildNextEpisodeQuery(boolean isHidingSpecials,
+            boolean isNoReleasedEpisodes, long currentTime) {
+        StringBuilder query = new StringBuilder("(SELECT ")
+                .append(NextEpisodesQuery.NEXT_ID)
+                .append(" FROM ").append(Tables.EPISODES).append(" AS ")
+                .append(NextEpisodesQuery.NEXT)
+                .append(" WHERE ").append(NextEpisodesQuery.SELECT_NEXT);
         if (isHidingSpecials) {
             // do not take specials into account
-            nextEpisodeSelectionBuilder.append(" AND ").append(Episodes.SELECTION_NO_SPECIALS);
+            query.append(NextEpisodesQuery.SELECT_NO_SPECIALS);
         }
         if (isNoReleasedEpisodes) {
             // restrict to episodes with future release date
-            nextEpisodeSelectionBuilder.append(NextEpisodesQuery.SELECT_ONLYFUTURE);
+            query.append(NextEpisodesQuery.SELECT_ONLYFUTURE).append(currentTime);
         } else {
             // restrict to episodes with any valid air date
-            nextEpisodeSelectionBuilder.append(NextEpisodesQuery.SELECT_WITHAIRDATE);
+            query.append(NextEpisodesQuery.SELECT_WITHAIRDATE);
         }
-        return nextEpisodeSelectionBuilder.toString();
+        query.append(" ORDER BY ").append(NextEpisodesQuery.SORTORDER).append(" LIMIT 1)");
+        return query.toString();
     }
 
     /**
-     * Applies a large {@link ContentProviderOperation} batch in smaller batches as not to overload
-     * the transaction cache.
+     * Queries the details of all next episodes found by {@link NextEpisodesQuery} with a single
+     * query.
+     *
+     * @return Episode values mapped by episode TVDb id, or null if the query failed.
      */
-    public static void applyInSmallBatches(Context context,
-            ArrayList<ContentProviderOperation> batch) throws OperationApplicationException {
-        // split into smaller batches to not overload transaction cache
-        // see http://developer.android.com/reference/android/os/TransactionTooLargeException.html
-
-        ArrayList<ContentProviderOperation> smallBatch = new ArrayList<>();
-
-        while (!batch.isEmpty()) {
-            if (batch.size() <= SMALL_BATCH_SIZE) {
-                // small enough already? apply right away
-                applyBatch(context, batch);
-                return;
+    private static SparseArray<ContentValues> getNextEpisodeDetails(Context context,
+            Cursor shows) {
+        final SparseArray<ContentValues> nextEpisodes = new SparseArray<>();
+        final StringBuilder nextEpisodeIds = new StringBuilder();
+        while (shows.moveToNext()) {
+            if (shows.isNull(NextEpisodesQuery.NEXT_EPISODE_TVDB_ID)) {
+                continue;
             }
-
-            // take up to 50 elements out of batch
-            for (int count = 0; count < SMALL_BATCH_SIZE; count++) {
-                if (batch.isEmpty()) {
-                    break;
-                }
-                smallBatch.add(batch.remove(0));
+            if (nextEpisodeIds.length() > 0) {
+                nextEpisodeIds.append(",");
             }
+            nextEpisodeIds.append(shows.getInt(NextEpisodesQuery.NEXT_EPISODE_TVDB_ID));
+        }
+        if (nextEpisodeIds.length() == 0) {
+            return nextEpisodes;
+        }
 
-            // apply small batch
-            applyBatch(context, smallBatch);
+        final Cursor episodes = context.getContentResolver().query(Episodes.CONTENT_URI,
+                NextEpisodeDetailsQuery.PROJECTION,
+                Episodes._ID + " IN (" + nextEpisodeIds + ")", null, null);
+        if (episodes == null) {
+            return null;
+        }
+        while (episodes.moveToNext()) {
+            int episodeTvdbId = episodes.getInt(NextEpisodeDetailsQuery.ID);
+            ContentValues values = new ContentValues();
+            values.put(Episodes._ID, episodeTvdbId);
+            values.put(Episodes.SEASON, episodes.getInt(NextEpisodeDetailsQuery.SEASON));
+            values.put(Episodes.NUMBER, episodes.getInt(NextEpisodeDetailsQuery.NUMBER));
+            values.put(Episodes.FIRSTAIREDMS,
+                    episodes.getLong(NextEpisodeDetailsQuery.FIRST_RELEASE_MS));
+            values.put(Episodes.TITLE, episodes.getString(NextEpisodeDetailsQuery.TITLE));
+            nextEpisodes.put(episodeTvdbId, values);
+        }
+        episodes.close();
+
+        return nextEpisodes;
+    }
 
-            // prepare for next small batch
-            smallBatch.clear();
+    /**
+     * Builds the {@link Shows} next episode values for the given next episode details.
+     *
+     * @param nextEpisode Next episode details, or null if there is no next episode.
+     */
+    private static ContentValues buildNextEpisodeValues(Context context,
+            ContentValues nextEpisode) {
+        final ContentValues newShowValues = new ContentValues();
+        if (nextEpisode != null) {
+            // next episode text, e.g. '0x12 Episode Name'
+            final String nextEpisodeString = Utils.getNextEpisodeString(context,
+                    nextEpisode.getAsInteger(Episodes.SEASON),
+                    nextEpisode.getAsInteger(Episodes.NUMBER),
+                    nextEpisode.getAsString(Episodes.TITLE));
+
+            // the relative release time is formatted when displayed, see ReleaseTimeFormatter
+            newShowValues.put(Shows.NEXTEPISODE, nextEpisode.getAsInteger(Episodes._ID));
+            newShowValues.put(Shows.NEXTAIRDATEMS, nextEpisode.getAsLong(Episodes.FIRSTAIREDMS));
+            newShowValues.put(Shows.NEXTTEXT, nextEpisodeString);
+        } else {
+            // no next episode, set empty values
+            newShowValues.put(Shows.NEXTEPISODE, "");
+            newShowValues.put(Shows.NEXTAIRDATEMS, UNKNOWN_NEXT_RELEASE_DATE);
+            newShowValues.put(Shows.NEXTTEXT, "");
         }
+        return newShowValues;
     }
 
-    private static void applyBatch(Context context, ArrayList<ContentProviderOperation> batch)
-            throws OperationApplicationException {
+    /**
+     * Returns true if the current next episode values of the show at the cursor position are
+     * identical to the given new values.
+     */
+    private static boolean isNextEpisodeUnchanged(Cursor show, ContentValues newShowValues) {
+        return TextUtils.equals(show.getString(NextEpisodesQuery.CURRENT_NEXT_EPISODE),
+                newShowValues.getAsString(Shows.NEXTEPISODE))
+                && TextUtils.equals(show.getString(NextEpisodesQuery.CURRENT_NEXT_RELEASE_MS),
+                newShowValues.getAsString(Shows.NEXTAIRDATEMS))
+                && TextUtils.equals(show.getString(NextEpisodesQuery.CURRENT_NEXT_TEXT),
+                newShowValues.getAsString(Shows.NEXTTEXT));
+    }
+
+    /**
+     * Applies a large {@link ContentProviderOperation} batch in smaller batches as not to block
+     * other database access for too long. Content changes are notified once per table for each
+     * small batch. The given batch is empty afterwards, even if applying it failed.
+     */
+    public static void applyInSmallBatches(Context context,
+            ArrayList<ContentProviderOperation> batch) throws OperationApplicationException {
+        // the provider runs in our process, so batches are not limited by the binder transaction
+        // buffer, see http://developer.android.com/reference/android/os/TransactionTooLargeException.html
+        ContentProviderClient client = context.getContentResolver()
+                .acquireContentProviderClient(SeriesGuideApplication.CONTENT_AUTHORITY);
+        if (client == null) {
+            batch.clear();
+            throw new OperationApplicationException("Content provider not available");
+        }
         try {
-            context.getContentResolver()
-                    .applyBatch(SeriesGuideApplication.CONTENT_AUTHORITY, batch);
+            if (batch.size() <= SMALL_BATCH_SIZE) {
+                // small enough already? apply right away
+                client.applyBatch(batch);
+            } else {
+                ArrayList<ContentProviderOperation> smallBatch = new ArrayList<>(
+                        SMALL_BATCH_SIZE);
+                for (int start = 0; start < batch.size(); start += SMALL_BATCH_SIZE) {
+                    smallBatch.addAll(batch.subList(start,
+                            Math.min(start + SMALL_BATCH_SIZE, batch.size())));
+                    client.applyBatch(smallBatch);
+                    smallBatch.clear();
+                }
+            }
         } catch (RemoteException e) {
             // not using a remote provider, so this should never happen. crash if it does.
             throw new RuntimeException("Problem applying batch operation", e);
+        } finally {
+            client.release();
+            batch.clear();
         }
     }
 
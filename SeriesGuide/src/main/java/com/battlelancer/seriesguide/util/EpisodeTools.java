@@ -16,17 +16,17 @@
 
 package com.battlelancer.seriesguide.util;
 
-import android.content.ContentProviderOperation;
 import android.content.ContentValues;
 import android.content.Context;
-import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.AsyncTask;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.text.TextUtils;
 import android.widget.Toast;
 import com.battlelancer.seriesguide.R;
+import com.battlelancer.seriesguide.backend.HexagonPagedUploader;
 import com.battlelancer.seriesguide.backend.HexagonTools;
 import com.battlelancer.seriesguide.backend.settings.HexagonSettings;
 import com.battlelancer.seriesguide.enums.EpisodeFlags;
@@ -40,6 +40,7 @@ import com.uwetrottmann.seriesguide.backend.episodes.model.EpisodeList;
 import de.greenrobot.event.EventBus;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import javax.annotation.Nonnull;
 import timber.log.Timber;
@@ -237,27 +238,16 @@ public class EpisodeTools {
         public abstract String getSelection();
 
         /**
-         * Builds a list of episodes ready to upload to hexagon. However, the show TVDb id is not
-         * set. It should be set in a wrapping {@link com.uwetrottmann.seriesguide.backend.episodes.model.EpisodeList}.
+         * Adds episodes to upload to hexagon to the given uploader, reading them from the database
+         * row by row. However, the show TVDb id is not set. It should be set in a wrapping {@link
+         * com.uwetrottmann.seriesguide.backend.episodes.model.EpisodeList}.
          */
-        public List<Episode> getEpisodesForHexagon() {
-            return buildEpisodeList();
-        }
-
-        public abstract List<FlagTapeEntry.Flag> getEpisodesForTrakt();
-
-        public int getShowTvdbId() {
-            return mShowTvdbId;
-        }
-
-        private List<Episode> buildEpisodeList() {
-            List<Episode> episodes = new ArrayList<>();
-
+        public void addEpisodesForHexagon(HexagonPagedUploader<Episode> uploader) {
             // determine uri
             Uri uri = getUri();
             String selection = getSelection();
 
-            // query and add episodes to list
+            // query and add episodes to uploader
             final Cursor episodeCursor = mContext.getContentResolver().query(
                     uri,
                     new String[] {
@@ -270,12 +260,18 @@ public class EpisodeTools {
                     setEpisodeProperties(episode);
                     episode.setSeasonNumber(episodeCursor.getInt(0));
                     episode.setEpisodeNumber(episodeCursor.getInt(1));
-                    episodes.add(episode);
+                    if (!uploader.add(episode)) {
+                        break;
+                    }
                 }
                 episodeCursor.close();
             }
+        }
 
-            return episodes;
+        public abstract List<FlagTapeEntry.Flag> getEpisodesForTrakt();
+
+        public int getShowTvdbId() {
+            return mShowTvdbId;
         }
 
         /**
@@ -409,16 +405,12 @@ public class EpisodeTools {
         }
 
         @Override
-        public List<Episode> getEpisodesForHexagon() {
-            List<Episode> episodes = new ArrayList<>();
-
+        public void addEpisodesForHexagon(HexagonPagedUploader<Episode> uploader) {
             Episode episode = new Episode();
             setEpisodeProperties(episode);
             episode.setSeasonNumber(mSeason);
             episode.setEpisodeNumber(mEpisode);
-            episodes.add(episode);
-
-            return episodes;
+            uploader.add(episode);
         }
 
         @Override
@@ -904,36 +896,10 @@ public class EpisodeTools {
         }
 
         private void uploadToHexagon() {
-            List<Episode> batch = mType.getEpisodesForHexagon();
-
-            EpisodeList uploadWrapper = new EpisodeList();
-            uploadWrapper.setShowTvdbId(mType.mShowTvdbId);
-
-            // upload in small batches
-            List<Episode> smallBatch = new ArrayList<>();
-            while (!batch.isEmpty()) {
-                // batch small enough? upload right away
-                if (batch.size() <= EPISODE_MAX_BATCH_SIZE) {
-                    uploadWrapper.setEpisodes(batch);
-                    Upload.flagsToHexagon(mContext, uploadWrapper);
-                    return;
-                }
-
-                // build smaller batch
-                for (int count = 0; count < EPISODE_MAX_BATCH_SIZE; count++) {
-                    if (batch.isEmpty()) {
-                        break;
-                    }
-                    smallBatch.add(batch.remove(0));
-                }
-
-                // upload small batch
-                uploadWrapper.setEpisodes(smallBatch);
-                Upload.flagsToHexagon(mContext, uploadWrapper);
-
-                // reset
-                smallBatch = new ArrayList<>();
-            }
+            Upload.FlagsUploader uploader = new Upload.FlagsUploader(mContext,
+                    mType.mShowTvdbId);
+            mType.addEpisodesForHexagon(uploader);
+            uploader.finish();
         }
 
         @Override
@@ -969,9 +935,10 @@ public class EpisodeTools {
 
         /**
          * Downloads all episodes changed since the last time this was called and applies changes
-         * to the database.
+         * to the database. Adds the TVDb ids of shows of changed episodes to {@code
+         * changedShows}.
          */
-        public static boolean flagsFromHexagon(Context context) {
+        public static boolean flagsFromHexagon(Context context, HashSet<Integer> changedShows) {
             List<Episode> episodes;
             boolean hasMoreEpisodes = true;
             String cursor = null;
@@ -1014,8 +981,8 @@ public class EpisodeTools {
                     break;
                 }
 
-                // build batch of episode flag updates
-                ArrayList<ContentProviderOperation> batch = new ArrayList<>();
+                // stage episode flag updates
+                ArrayList<ContentValues> flags = new ArrayList<>(episodes.size());
                 for (Episode episode : episodes) {
                     ContentValues values = new ContentValues();
                     if (episode.getWatchedFlag() != null) {
@@ -1023,30 +990,23 @@ public class EpisodeTools {
                     }
                     if (episode.getIsInCollection() != null) {
                         values.put(SeriesGuideContract.Episodes.COLLECTED,
-                                episode.getIsInCollection());
+                                episode.getIsInCollection() ? 1 : 0);
+                    }
+                    if (values.size() == 0) {
+                        continue;
                     }
 
-                    ContentProviderOperation op = ContentProviderOperation
-                            .newUpdate(SeriesGuideContract.Episodes.CONTENT_URI)
-                            .withSelection(SeriesGuideContract.Shows.REF_SHOW_ID + "="
-                                    + episode.getShowTvdbId() + " AND "
-                                    + SeriesGuideContract.Episodes.SEASON + "="
-                                    + episode.getSeasonNumber() + " AND "
-                                    + SeriesGuideContract.Episodes.NUMBER + "="
-                                    + episode.getEpisodeNumber(), null)
-                            .withValues(values)
-                            .build();
-
-                    batch.add(op);
+                    values.put(SeriesGuideContract.Shows.REF_SHOW_ID, episode.getShowTvdbId());
+                    values.put(SeriesGuideContract.Episodes.SEASON, episode.getSeasonNumber());
+                    values.put(SeriesGuideContract.Episodes.NUMBER, episode.getEpisodeNumber());
+                    flags.add(values);
+                    if (episode.getShowTvdbId() != null) {
+                        changedShows.add(episode.getShowTvdbId());
+                    }
                 }
 
                 // execute database update
-                try {
-                    DBUtils.applyInSmallBatches(context, batch);
-                } catch (OperationApplicationException e) {
-                    Timber.e(e, "flagsFromHexagon: failed to apply changed episode flag updates");
-                    return false;
-                }
+                applyFlags(context, flags);
             }
 
             // store new last sync time
@@ -1069,8 +1029,6 @@ public class EpisodeTools {
             boolean hasMoreEpisodes = true;
             String cursor = null;
 
-            Uri episodesOfShowUri = SeriesGuideContract.Episodes.buildEpisodesOfShowUri(showTvdbId);
-
             while (hasMoreEpisodes) {
                 // abort if connection is lost
                 if (!AndroidUtils.isNetworkConnected(context)) {
@@ -1112,8 +1070,8 @@ public class EpisodeTools {
                     break;
                 }
 
-                // build batch of episode flag updates
-                ArrayList<ContentProviderOperation> batch = new ArrayList<>();
+                // stage episode flag updates
+                ArrayList<ContentValues> flags = new ArrayList<>(episodes.size());
                 for (Episode episode : episodes) {
                     ContentValues values = new ContentValues();
                     if (episode.getWatchedFlag() != null
@@ -1122,8 +1080,7 @@ public class EpisodeTools {
                     }
                     if (episode.getIsInCollection() != null
                             && episode.getIsInCollection()) {
-                        values.put(SeriesGuideContract.Episodes.COLLECTED,
-                                episode.getIsInCollection());
+                        values.put(SeriesGuideContract.Episodes.COLLECTED, 1);
                     }
 
                     if (values.size() == 0) {
@@ -1131,34 +1088,66 @@ public class EpisodeTools {
                         continue;
                     }
 
-                    ContentProviderOperation op = ContentProviderOperation
-                            .newUpdate(episodesOfShowUri)
-                            .withSelection(SeriesGuideContract.Episodes.SEASON + "="
-                                    + episode.getSeasonNumber() + " AND "
-                                    + SeriesGuideContract.Episodes.NUMBER + "="
-                                    + episode.getEpisodeNumber(), null)
-                            .withValues(values)
-                            .build();
-
-                    batch.add(op);
+                    values.put(SeriesGuideContract.Shows.REF_SHOW_ID, showTvdbId);
+                    values.put(SeriesGuideContract.Episodes.SEASON, episode.getSeasonNumber());
+                    values.put(SeriesGuideContract.Episodes.NUMBER, episode.getEpisodeNumber());
+                    flags.add(values);
                 }
 
                 // execute database update
-                try {
-                    DBUtils.applyInSmallBatches(context, batch);
-                } catch (OperationApplicationException e) {
-                    Timber.e(e, "flagsFromHexagon: failed to apply episode flag updates for show "
-                            + showTvdbId);
-                    return false;
-                }
+                applyFlags(context, flags);
             }
 
             return true;
         }
+
+        /**
+         * Applies the given episode flags with a single bulk update, logs how fast they were
+         * applied.
+         */
+        private static void applyFlags(Context context, ArrayList<ContentValues> flags) {
+            if (flags.isEmpty()) {
+                return;
+            }
+
+            long startTime = SystemClock.elapsedRealtime();
+            int updated = context.getContentResolver().bulkInsert(
+                    SeriesGuideContract.Episodes.CONTENT_URI_FLAGS,
+                    flags.toArray(new ContentValues[flags.size()]));
+            long duration = Math.max(SystemClock.elapsedRealtime() - startTime, 1);
+            Timber.d("flagsFromHexagon: applied " + flags.size() + " flags to " + updated
+                    + " episodes in " + duration + " ms (" + flags.size() * 1000 / duration
+                    + " rows/s)");
+        }
     }
 
     public static class Upload {
 
+        /**
+         * Uploads episodes of a single show to Hexagon in pages of {@link
+         * #EPISODE_MAX_BATCH_SIZE}.
+         */
+        static class FlagsUploader extends HexagonPagedUploader<Episode> {
+
+            private final Context mContext;
+
+            private final int mShowTvdbId;
+
+            FlagsUploader(Context context, int showTvdbId) {
+                super("flagsToHexagon", EPISODE_MAX_BATCH_SIZE);
+                mContext = context;
+                mShowTvdbId = showTvdbId;
+            }
+
+            @Override
+            protected void uploadPage(List<Episode> page) throws IOException {
+                EpisodeList episodeList = new EpisodeList();
+                episodeList.setEpisodes(page);
+                episodeList.setShowTvdbId(mShowTvdbId);
+                HexagonTools.getEpisodesService(mContext).save(episodeList).execute();
+            }
+        }
+
         private interface FlaggedEpisodesQuery {
             String[] PROJECTION = new String[] {
                     SeriesGuideContract.Episodes._ID,
@@ -1201,8 +1190,8 @@ public class EpisodeTools {
                 return true;
             }
 
-            // build list of episodes to upload
-            List<Episode> episodes = new ArrayList<>();
+            // upload episodes page by page while reading them
+            FlagsUploader uploader = new FlagsUploader(context, showTvdbId);
             while (query.moveToNext()) {
                 Episode episode = new Episode();
                 episode.setSeasonNumber(query.getInt(FlaggedEpisodesQuery.SEASON));
@@ -1219,48 +1208,19 @@ public class EpisodeTools {
                     episode.setIsInCollection(true);
                 }
 
-                episodes.add(episode);
-
-                // upload a batch
-                if (episodes.size() == EPISODE_MAX_BATCH_SIZE || query.isLast()) {
-                    EpisodeList episodeList = new EpisodeList();
-                    episodeList.setEpisodes(episodes);
-                    episodeList.setShowTvdbId(showTvdbId);
-
-                    try {
-                        HexagonTools.getEpisodesService(context).save(episodeList).execute();
-                    } catch (IOException e) {
-                        // abort
-                        Timber.e(e, "flagsToHexagon: failed to upload episode flags for show "
-                                + showTvdbId);
-                        query.close();
-                        return false;
-                    }
-
-                    // clear array
-                    episodes = new ArrayList<>();
+                if (!uploader.add(episode)) {
+                    // abort
+                    break;
                 }
             }
 
             query.close();
 
-            return true;
-        }
-
-        /**
-         * Upload the given episodes to Hexagon. Assumes the given episode wrapper has valid
-         * values.
-         */
-        public static boolean flagsToHexagon(Context context, EpisodeList episodes) {
-            try {
-                HexagonTools.getEpisodesService(context).save(episodes).execute();
-            } catch (IOException e) {
-                Timber.e(e, "flagsToHexagon: failed to upload episodes for show "
-                        + episodes.getShowTvdbId());
-                return false;
+            boolean success = uploader.finish();
+            if (!success) {
+                Timber.e("flagsToHexagon: failed to upload episode flags for show " + showTvdbId);
             }
-
-            return true;
+            return success;
         }
     }
 }
@@ -18,11 +18,12 @@
 package com.battlelancer.seriesguide.util;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Stores everything needed for {@link FlagTapedTask} to execute a trakt action.
- * Is taped onto disk with {@link FlagTapeEntryQueue}.
+ * Is taped onto disk with {@link FlagTapeEntryQueue} using {@link FlagTapeEntryConverter}.
  */
 public class FlagTapeEntry implements Serializable {
     private static final long serialVersionUID = 1659483526310123582L;
@@ -49,4 +50,53 @@ public class FlagTapeEntry implements Serializable {
     public int showId;
     public List<FlagTapeEntry.Flag> flags;
     public boolean isFlag;
+
+    /**
+     * Returns whether this and the given entry are sent to trakt as a list of episodes of the same
+     * show with the same action, so they can be sent with a single request.
+     */
+    public boolean canMergeWith(FlagTapeEntry other) {
+        return showId == other.showId
+                && isFlag == other.isFlag
+                && isEpisodeList() && other.isEpisodeList()
+                && isCollectedAction() == other.isCollectedAction();
+    }
+
+    /**
+     * Returns a new entry with the episodes of this and the given entry. Check {@link
+     * #canMergeWith(FlagTapeEntry)} first.
+     */
+    public FlagTapeEntry mergeWith(FlagTapeEntry other) {
+        List<Flag> mergedFlags = new ArrayList<>(flags.size() + other.flags.size());
+        mergedFlags.addAll(flags);
+        mergedFlags.addAll(other.flags);
+
+        EpisodeTools.EpisodeAction mergedAction;
+        if (action == other.action) {
+            mergedAction = action;
+        } else {
+            mergedAction = isCollectedAction() ? EpisodeTools.EpisodeAction.EPISODE_COLLECTED
+                    : EpisodeTools.EpisodeAction.EPISODE_WATCHED;
+        }
+
+        return new FlagTapeEntry(mergedAction, showId, mergedFlags, isFlag);
+    }
+
+    private boolean isEpisodeList() {
+        switch (action) {
+            case EPISODE_WATCHED:
+            case EPISODE_COLLECTED:
+            case EPISODE_WATCHED_PREVIOUS:
+                return true;
+            default:
+                // removing flags of seasons or shows is sent as a list of episodes
+                return !isFlag;
+        }
+    }
+
+    private boolean isCollectedAction() {
+        return action == EpisodeTools.EpisodeAction.EPISODE_COLLECTED
+                || action == EpisodeTools.EpisodeAction.SEASON_COLLECTED
+                || action == EpisodeTools.EpisodeAction.SHOW_COLLECTED;
+    }
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014 Uwe Trottmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.battlelancer.seriesguide.util;
+
+import com.squareup.tape.FileObjectQueue;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Writes a {@link FlagTapeEntry} as a compact binary record followed by a CRC32 checksum of the
+ * record. {@link #from(byte[])} throws an {@link IOException} if the checksum does not match, so
+ * corrupt records can be dropped instead of being sent to trakt.
+ */
+public class FlagTapeEntryConverter implements FileObjectQueue.Converter<FlagTapeEntry> {
+
+    private static final int VERSION = 1;
+
+    @Override
+    public FlagTapeEntry from(byte[] bytes) throws IOException {
+        if (bytes == null || bytes.length < 8) {
+            throw new IOException("Record too short.");
+        }
+
+        int recordLength = bytes.length - 8;
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, recordLength);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        in.skipBytes(recordLength);
+        if (in.readLong() != crc.getValue()) {
+            throw new IOException("Record checksum does not match.");
+        }
+
+        in = new DataInputStream(new ByteArrayInputStream(bytes, 0, recordLength));
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unknown record version " + version);
+        }
+        EpisodeTools.EpisodeAction action;
+        try {
+            action = EpisodeTools.EpisodeAction.valueOf(in.readUTF());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown action.");
+        }
+        int showId = in.readInt();
+        boolean isFlag = in.readBoolean();
+        int count = in.readInt();
+        if (count < 0 || count * 8 > recordLength) {
+            throw new IOException("Invalid flag count " + count);
+        }
+        List<FlagTapeEntry.Flag> flags = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            flags.add(new FlagTapeEntry.Flag(in.readInt(), in.readInt()));
+        }
+
+        return new FlagTapeEntry(action, showId, flags, isFlag);
+    }
+
+    @Override
+    public void toStream(FlagTapeEntry entry, OutputStream bytes) throws IOException {
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(record);
+        out.writeByte(VERSION);
+        out.writeUTF(entry.action.name());
+        out.writeInt(entry.showId);
+        out.writeBoolean(entry.isFlag);
+        out.writeInt(entry.flags.size());
+        for (FlagTapeEntry.Flag flag : entry.flags) {
+            out.writeInt(flag.season);
+            out.writeInt(flag.episode);
+        }
+        out.flush();
+
+        byte[] recordBytes = record.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(recordBytes);
+        DataOutputStream checked = new DataOutputStream(bytes);
+        checked.write(recordBytes);
+        checked.writeLong(crc.getValue());
+        checked.flush();
+    }
+}
@@ -19,43 +19,47 @@ package com.battlelancer.seriesguide.util;
 import android.content.Context;
 import android.content.Intent;
 import com.battlelancer.seriesguide.service.TraktFlagService;
-import com.google.myjson.Gson;
-import com.squareup.tape.FileObjectQueue;
-import com.squareup.tape.FileObjectQueue.Converter;
-import com.squareup.tape.InMemoryObjectQueue;
 import com.squareup.tape.ObjectQueue;
+import com.squareup.tape.QueueFile;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
-
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import timber.log.Timber;
+
+/**
+ * Durable queue of trakt flag actions. Entries are stored in a Tape {@link QueueFile}, which
+ * survives process crashes, in the checksummed format of {@link FlagTapeEntryConverter}. Corrupt
+ * entries are dropped when they reach the head of the queue.
+ */
 public class FlagTapeEntryQueue implements ObjectQueue<FlagTapeEntry> {
 
-    private static final String FILENAME = "trakt_flag_queue";
+    private static final String FILENAME = "trakt_flags";
+
+    /** File of the previous JSON based queue, which was never enabled. */
+    private static final String FILENAME_LEGACY = "trakt_flag_queue";
 
     private static FlagTapeEntryQueue _instance;
 
-    private final ObjectQueue<FlagTapeEntry> mDelegate;
+    private final QueueFile mQueueFile;
+
+    private final FlagTapeEntryConverter mConverter = new FlagTapeEntryConverter();
 
     private Context mContext;
 
     public static synchronized FlagTapeEntryQueue getInstance(Context context) {
         if (_instance == null) {
             // Make sure to use the application context as this is a singleton
-            _instance = new FlagTapeEntryQueue(new InMemoryObjectQueue<FlagTapeEntry>(),
-                    context.getApplicationContext());
-
-            /*
-             * Causes problems (MalformedJsonException, EOFException) on various
-             * devices, including Google devices.
-             */
-            // _instance =
-            // FlagTapeEntryQueue.create(context.getApplicationContext(),
-            // new GsonBuilder().create());
+            _instance = create(context.getApplicationContext());
         }
         return _instance;
     }
 
-    private FlagTapeEntryQueue(ObjectQueue<FlagTapeEntry> delegate, Context context) {
-        mDelegate = delegate;
+    private FlagTapeEntryQueue(QueueFile queueFile, Context context) {
+        mQueueFile = queueFile;
         mContext = context;
 
         if (size() > 0) {
@@ -68,24 +72,107 @@ public class FlagTapeEntryQueue implements ObjectQueue<FlagTapeEntry> {
     }
 
     @Override
-    public void add(FlagTapeEntry entry) {
-        mDelegate.add(entry);
+    public synchronized void add(FlagTapeEntry entry) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            mConverter.toStream(entry, bytes);
+            mQueueFile.add(bytes.toByteArray());
+        } catch (IOException e) {
+            Timber.e(e, "Failed to add flag entry");
+            return;
+        }
         startService();
     }
 
     @Override
-    public FlagTapeEntry peek() {
-        return mDelegate.peek();
+    public synchronized FlagTapeEntry peek() {
+        List<FlagTapeEntry> entries = peek(1);
+        return entries.isEmpty() ? null : entries.get(0);
+    }
+
+    /**
+     * Returns up to {@code max} entries from the head of the queue without removing them. Corrupt
+     * entries at the head of the queue are removed, the returned list ends before any other corrupt
+     * entry.
+     */
+    public synchronized List<FlagTapeEntry> peek(final int max) {
+        List<FlagTapeEntry> entries = new ArrayList<>();
+        try {
+            removeCorruptHead();
+
+            final List<byte[]> records = new ArrayList<>();
+            mQueueFile.forEach(new QueueFile.ElementReader() {
+                @Override
+                public void read(InputStream in, int length) throws IOException {
+                    if (records.size() < max) {
+                        byte[] record = new byte[length];
+                        new DataInputStream(in).readFully(record);
+                        records.add(record);
+                    }
+                }
+            });
+
+            for (byte[] record : records) {
+                try {
+                    entries.add(mConverter.from(record));
+                } catch (IOException e) {
+                    // will be removed once it reaches the head
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            Timber.e(e, "Failed to read flag queue, clearing it");
+            clear();
+        }
+        return entries;
+    }
+
+    private void removeCorruptHead() throws IOException {
+        byte[] head;
+        while ((head = mQueueFile.peek()) != null) {
+            try {
+                mConverter.from(head);
+                return;
+            } catch (IOException e) {
+                Timber.w(e, "Dropping corrupt flag entry");
+                mQueueFile.remove();
+            }
+        }
     }
 
     @Override
-    public int size() {
-        return mDelegate.size();
+    public synchronized int size() {
+        return mQueueFile.size();
     }
 
     @Override
-    public void remove() {
-        mDelegate.remove();
+    public synchronized void remove() {
+        remove(1);
+    }
+
+    /**
+     * Removes up to {@code count} entries from the head of the queue.
+     */
+    public synchronized void remove(int count) {
+        try {
+            for (int i = 0; i < count && !mQueueFile.isEmpty(); i++) {
+                mQueueFile.remove();
+            }
+        } catch (IOException e) {
+            Timber.e(e, "Failed to remove flag entry, clearing queue");
+            clear();
+        }
+    }
+
+    /**
+     * Removes all entries from the queue.
+     */
+    public synchronized void clear() {
+        try {
+            mQueueFile.clear();
+        } catch (IOException e) {
+            Timber.e(e, "Failed to clear flag queue");
+        }
     }
 
     @Override
@@ -93,19 +180,27 @@ public class FlagTapeEntryQueue implements ObjectQueue<FlagTapeEntry> {
         throw new UnsupportedOperationException("Listeners not yet implemented.");
     }
 
-    private static FlagTapeEntryQueue create(Context context, Gson gson) {
-        Converter<FlagTapeEntry> converter = new GsonConverter<FlagTapeEntry>(gson,
-                FlagTapeEntry.class);
-        File queueFile = new File(context.getFilesDir(), FILENAME);
+    private static FlagTapeEntryQueue create(Context context) {
+        context.deleteFile(FILENAME_LEGACY);
 
-        FileObjectQueue<FlagTapeEntry> delegate;
+        File file = new File(context.getFilesDir(), FILENAME);
+        QueueFile queueFile;
         try {
-            delegate = new FileObjectQueue<FlagTapeEntry>(queueFile, converter);
+            queueFile = new QueueFile(file);
         } catch (IOException e) {
-            throw new RuntimeException("Unable to create file queue.", e);
+            // the queue file header is broken, start over with an empty queue
+            Timber.e(e, "Unable to open flag queue file, recreating it");
+            if (!file.delete()) {
+                throw new RuntimeException("Unable to delete broken file queue.", e);
+            }
+            try {
+                queueFile = new QueueFile(file);
+            } catch (IOException e1) {
+                throw new RuntimeException("Unable to create file queue.", e1);
+            }
         }
 
-        return new FlagTapeEntryQueue(delegate, context);
+        return new FlagTapeEntryQueue(queueFile, context);
     }
 
 }
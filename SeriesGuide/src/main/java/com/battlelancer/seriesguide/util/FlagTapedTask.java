@@ -73,28 +73,24 @@ public class FlagTapedTask {
                 try {
                     switch (mAction) {
                         case EPISODE_WATCHED: {
-                            Flag episode = mFlags.get(0);
+                            // may contain multiple episodes if entries were merged
                             if (mIsFlag) {
-                                mShowService.episodeSeen(
-                                        new ShowService.Episodes(mShowId, episode.season,
-                                                episode.episode));
+                                mShowService.episodeSeen(new ShowService.Episodes(
+                                        mShowId, buildEpisodeList(mFlags)));
                             } else {
-                                mShowService.episodeUnseen(
-                                        new ShowService.Episodes(mShowId, episode.season,
-                                                episode.episode));
+                                mShowService.episodeUnseen(new ShowService.Episodes(
+                                        mShowId, buildEpisodeList(mFlags)));
                             }
                             break;
                         }
                         case EPISODE_COLLECTED: {
-                            Flag episode = mFlags.get(0);
+                            // may contain multiple episodes if entries were merged
                             if (mIsFlag) {
-                                mShowService.episodeLibrary(
-                                        new ShowService.Episodes(mShowId, episode.season,
-                                                episode.episode));
+                                mShowService.episodeLibrary(new ShowService.Episodes(
+                                        mShowId, buildEpisodeList(mFlags)));
                             } else {
-                                mShowService.episodeUnlibrary(
-                                        new ShowService.Episodes(mShowId, episode.season,
-                                                episode.episode));
+                                mShowService.episodeUnlibrary(new ShowService.Episodes(
+                                        mShowId, buildEpisodeList(mFlags)));
                             }
                             break;
                         }
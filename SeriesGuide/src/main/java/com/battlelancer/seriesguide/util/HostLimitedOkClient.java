@@ -0,0 +1,107 @@
+/*
+ * Copyright 2014 Uwe Trottmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.battlelancer.seriesguide.util;
+
+import android.net.Uri;
+import com.squareup.okhttp.OkHttpClient;
+import java.io.IOException;
+import java.io.InputStream;
+import retrofit.client.Header;
+import retrofit.client.OkClient;
+import retrofit.client.Request;
+import retrofit.client.Response;
+import retrofit.mime.TypedInput;
+
+/**
+ * {@link retrofit.client.OkClient} that runs requests through {@link HttpHosts} to limit
+ * concurrent requests per API host and to record their metrics. Requests end once their response
+ * body was read and closed, which Retrofit always does for non-streaming methods.
+ */
+public class HostLimitedOkClient extends OkClient {
+
+    public HostLimitedOkClient(OkHttpClient client) {
+        super(client);
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        HttpHosts.Request hostRequest = HttpHosts.begin(Uri.parse(request.getUrl()).getHost());
+        boolean isBodyTracked = false;
+        try {
+            Response response = super.execute(request);
+            boolean fromCache = isFromCache(response);
+            if (response.getBody() == null) {
+                hostRequest.end(0, fromCache);
+                return response;
+            }
+            response = new Response(response.getUrl(), response.getStatus(),
+                    response.getReason(), response.getHeaders(),
+                    new TrackedTypedInput(response.getBody(), hostRequest, fromCache));
+            isBodyTracked = true;
+            return response;
+        } finally {
+            if (!isBodyTracked) {
+                hostRequest.fail();
+            }
+        }
+    }
+
+    private static boolean isFromCache(Response response) {
+        for (Header header : response.getHeaders()) {
+            if (LocalOnlyOkHttpDownloader.RESPONSE_SOURCE_OKHTTP.equals(header.getName())) {
+                return LocalOnlyOkHttpDownloader.parseResponseSourceHeader(header.getValue());
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the body through {@link HttpHosts.Request#track(InputStream, boolean)}.
+     */
+    private static class TrackedTypedInput implements TypedInput {
+
+        private final TypedInput mBody;
+        private final HttpHosts.Request mHostRequest;
+        private final boolean mFromCache;
+
+        TrackedTypedInput(TypedInput body, HttpHosts.Request hostRequest, boolean fromCache) {
+            mBody = body;
+            mHostRequest = hostRequest;
+            mFromCache = fromCache;
+        }
+
+        @Override
+        public String mimeType() {
+            return mBody.mimeType();
+        }
+
+        @Override
+        public long length() {
+            return mBody.length();
+        }
+
+        @Override
+        public InputStream in() throws IOException {
+            try {
+                return mHostRequest.track(mBody.in(), mFromCache);
+            } catch (IOException e) {
+                mHostRequest.fail();
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2014 Uwe Trottmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.battlelancer.seriesguide.util;
+
+import android.os.SystemClock;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import timber.log.Timber;
+
+/**
+ * Per API host bookkeeping for all HTTP requests of the app: limits how many requests may run
+ * against the same host at once and records request count, latency, bytes received and cache
+ * hits.
+ *
+ * <p> Wrap requests with {@link #begin(String)} and {@link Request#end(long, boolean)} or {@link
+ * Request#fail()}. If the response body is read after the request returns, pass it through
+ * {@link Request#track(InputStream, boolean)} instead of ending the request, so the request
+ * holds its permit and is measured until the body was read. Requests that can not be wrapped
+ * (e.g. because the HTTP library does not guarantee a callback on failure) may just {@link
+ * #record(String, long, long, boolean)} their metrics.
+ */
+public final class HttpHosts {
+
+    /**
+     * Same as the OkHttp dispatcher default. Enough to keep parallel show downloads and image
+     * loading busy without hammering a single API.
+     */
+    static final int MAX_REQUESTS_PER_HOST = 5;
+
+    private static final Map<String, Semaphore> sPermits = new HashMap<>();
+
+    private static final Map<String, Metrics> sMetrics = new HashMap<>();
+
+    /**
+     * Counter of the calling thread that bytes received by its requests are added to, see {@link
+     * #setByteCounter(AtomicLong)}.
+     */
+    private static final ThreadLocal<AtomicLong> sByteCounter = new ThreadLocal<>();
+
+    /* This class is never initialized */
+    private HttpHosts() {
+    }
+
+    /**
+     * Blocks until a request to the given host may start.
+     *
+     * @throws InterruptedIOException If interrupted while waiting.
+     */
+    public static Request begin(String host) throws InterruptedIOException {
+        Semaphore permits = getPermits(host);
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for request to " + host);
+        }
+        return new Request(host, permits, sByteCounter.get());
+    }
+
+    /**
+     * Adds the bytes received by requests begun on the calling thread to the given counter, e.g.
+     * to attribute them to a sync. Bytes of a response body are counted even if it is read on
+     * another thread. Pass {@code null} to stop counting.
+     */
+    public static void setByteCounter(AtomicLong counter) {
+        if (counter == null) {
+            sByteCounter.remove();
+        } else {
+            sByteCounter.set(counter);
+        }
+    }
+
+    /**
+     * Records metrics of a request that was not started with {@link #begin(String)}. Received
+     * bytes are added to the counter of the calling thread, if any.
+     *
+     * @param bytes Number of bytes received or -1 if unknown.
+     */
+    public static void record(String host, long latencyMs, long bytes, boolean fromCache) {
+        record(host, latencyMs, bytes, fromCache, sByteCounter.get());
+    }
+
+    private static void record(String host, long latencyMs, long bytes, boolean fromCache,
+            AtomicLong byteCounter) {
+        if (bytes > 0 && byteCounter != null) {
+            byteCounter.addAndGet(bytes);
+        }
+        synchronized (sMetrics) {
+            Metrics metrics = sMetrics.get(host);
+            if (metrics == null) {
+                metrics = new Metrics();
+                sMetrics.put(host, metrics);
+            }
+            metrics.requests++;
+            metrics.latencyMs += latencyMs;
+            if (bytes > 0) {
+                metrics.bytes += bytes;
+            }
+            if (fromCache) {
+                metrics.cacheHits++;
+            }
+        }
+    }
+
+    private static void recordFailure(String host) {
+        synchronized (sMetrics) {
+            Metrics metrics = sMetrics.get(host);
+            if (metrics == null) {
+                metrics = new Metrics();
+                sMetrics.put(host, metrics);
+            }
+            metrics.failures++;
+        }
+    }
+
+    /**
+     * Logs the metrics collected per host since the last call and starts collecting from scratch.
+     */
+    public static void logAndReset() {
+        synchronized (sMetrics) {
+            for (Map.Entry<String, Metrics> entry : sMetrics.entrySet()) {
+                Metrics metrics = entry.getValue();
+                Timber.d("HTTP " + entry.getKey() + ": " + metrics.requests + " requests, "
+                        + metrics.failures + " failed, "
+                        + (metrics.requests == 0 ? 0 : metrics.latencyMs / metrics.requests)
+                        + " ms avg, " + metrics.bytes / 1024 + " KB, "
+                        + (metrics.requests == 0 ? 0 : metrics.cacheHits * 100 / metrics.requests)
+                        + "% from cache");
+            }
+            sMetrics.clear();
+        }
+    }
+
+    private static Semaphore getPermits(String host) {
+        synchronized (sPermits) {
+            Semaphore permits = sPermits.get(host);
+            if (permits == null) {
+                permits = new Semaphore(MAX_REQUESTS_PER_HOST);
+                sPermits.put(host, permits);
+            }
+            return permits;
+        }
+    }
+
+    /**
+     * A running request, holds one of the permits of its host until ended.
+     */
+    public static class Request {
+
+        private final String mHost;
+        private final Semaphore mPermits;
+        private final AtomicLong mByteCounter;
+        private final long mStartTime;
+        private boolean mIsEnded;
+
+        private Request(String host, Semaphore permits, AtomicLong byteCounter) {
+            mHost = host;
+            mPermits = permits;
+            mByteCounter = byteCounter;
+            mStartTime = SystemClock.elapsedRealtime();
+        }
+
+        /**
+         * Records the metrics of this request and lets the next request to its host start.
+         *
+         * @param bytes Number of bytes received or -1 if unknown.
+         */
+        public synchronized void end(long bytes, boolean fromCache) {
+            if (mIsEnded) {
+                return;
+            }
+            mIsEnded = true;
+            mPermits.release();
+            record(mHost, SystemClock.elapsedRealtime() - mStartTime, bytes, fromCache,
+                    mByteCounter);
+        }
+
+        /**
+         * Returns a stream of the given response body that ends this request once it is read to
+         * the end or closed, recording the number of bytes read from it. Fails this request if
+         * reading fails. Callers must close the returned stream.
+         */
+        public InputStream track(InputStream body, boolean fromCache) {
+            return new ResponseInputStream(body, this, fromCache);
+        }
+
+        /**
+         * Like {@link #end(long, boolean)}, but counts the request as failed. Does nothing if
+         * already ended, so it is safe to call in a finally block.
+         */
+        public synchronized void fail() {
+            if (mIsEnded) {
+                return;
+            }
+            mIsEnded = true;
+            mPermits.release();
+            recordFailure(mHost);
+        }
+    }
+
+    /**
+     * Counts the bytes read from a response body, ends its request once done.
+     */
+    private static class ResponseInputStream extends FilterInputStream {
+
+        private final Request mRequest;
+        private final boolean mFromCache;
+        private long mBytes;
+
+        ResponseInputStream(InputStream in, Request request, boolean fromCache) {
+            super(in);
+            mRequest = request;
+            mFromCache = fromCache;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b;
+            try {
+                b = super.read();
+            } catch (IOException e) {
+                mRequest.fail();
+                throw e;
+            }
+            if (b == -1) {
+                mRequest.end(mBytes, mFromCache);
+            } else {
+                mBytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read;
+            try {
+                read = super.read(buffer, offset, count);
+            } catch (IOException e) {
+                mRequest.fail();
+                throw e;
+            }
+            if (read == -1) {
+                mRequest.end(mBytes, mFromCache);
+            } else {
+                mBytes += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long byteCount) throws IOException {
+            long skipped;
+            try {
+                skipped = super.skip(byteCount);
+            } catch (IOException e) {
+                mRequest.fail();
+                throw e;
+            }
+            mBytes += skipped;
+            return skipped;
+        }
+
+        /**
+         * Re-reading marked bytes would count them twice.
+         */
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                mRequest.end(mBytes, mFromCache);
+            }
+        }
+    }
+
+    private static class Metrics {
+        int requests;
+        int failures;
+        int cacheHits;
+        long latencyMs;
+        long bytes;
+    }
+}
@@ -24,12 +24,13 @@ import com.squareup.okhttp.OkUrlFactory;
 import com.squareup.picasso.Downloader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 
 /**
  * Custom {@link com.squareup.picasso.OkHttpDownloader} that loads only from local cache if user
- * wishes to conserve mobile data.
+ * wishes to conserve mobile data. Loads {@link ThumbnailCache} URIs from the thumbnail cache.
  */
 public class LocalOnlyOkHttpDownloader implements Downloader {
 
@@ -43,6 +44,7 @@ public class LocalOnlyOkHttpDownloader implements Downloader {
 
     private final Context context;
     private final OkUrlFactory urlFactory;
+    private final ThumbnailCache thumbnailCache;
 
     public LocalOnlyOkHttpDownloader(final Context context) {
         this(context, createDefaultCacheDir(context));
@@ -55,11 +57,14 @@ public class LocalOnlyOkHttpDownloader implements Downloader {
     private LocalOnlyOkHttpDownloader(final Context context, final File cacheDir,
             final long maxSize) {
         this.context = context.getApplicationContext();
-        this.urlFactory = new OkUrlFactory(new OkHttpClient());
+        // shares the connection pool with all other clients, but uses its own cache
+        OkHttpClient client = ServiceUtils.getOkHttpClient().clone();
         try {
-            urlFactory.client().setCache(new com.squareup.okhttp.Cache(cacheDir, maxSize));
+            client.setCache(new com.squareup.okhttp.Cache(cacheDir, maxSize));
         } catch (IOException ignored) {
         }
+        this.urlFactory = new OkUrlFactory(client);
+        this.thumbnailCache = new ThumbnailCache(context, this);
     }
 
     protected HttpURLConnection openConnection(Uri uri) throws IOException {
@@ -75,35 +80,101 @@ public class LocalOnlyOkHttpDownloader implements Downloader {
 
     @Override
     public Response load(Uri uri, boolean localCacheOnly) throws IOException {
-        if (!Utils.isAllowedLargeDataConnection(context, false)) {
-            localCacheOnly = true;
+        if (ThumbnailCache.SCHEME.equals(uri.getScheme())) {
+            return thumbnailCache.load(uri, localCacheOnly);
         }
 
-        HttpURLConnection connection = openConnection(uri);
-        connection.setUseCaches(true);
-        if (localCacheOnly) {
-            // only-if-cached: do not go over network
-            // max-age: accept cached responses up to one year of age (rec. max. value)
-            // max-stale: accept stale images of any age
-            connection.setRequestProperty("Cache-Control",
-                    "only-if-cached,max-age=31536000,max-stale=31536000");
+        if (!Utils.isAllowedLargeDataConnection(context, false)) {
+            localCacheOnly = true;
         }
 
-        int responseCode = connection.getResponseCode();
-        if (responseCode >= 300) {
-            connection.disconnect();
-            throw new ResponseException(responseCode + " " + connection.getResponseMessage());
+        HttpHosts.Request request = HttpHosts.begin(uri.getHost());
+        boolean isBodyTracked = false;
+        try {
+            HttpURLConnection connection = openConnection(uri);
+            connection.setUseCaches(true);
+            if (localCacheOnly) {
+                // only-if-cached: do not go over network
+                // max-age: accept cached responses up to one year of age (rec. max. value)
+                // max-stale: accept stale images of any age
+                connection.setRequestProperty("Cache-Control",
+                        "only-if-cached,max-age=31536000,max-stale=31536000");
+            }
+
+            int responseCode = connection.getResponseCode();
+            if (responseCode >= 300) {
+                connection.disconnect();
+                throw new ResponseException(responseCode + " " + connection.getResponseMessage());
+            }
+
+            String responseSource = connection.getHeaderField(RESPONSE_SOURCE_OKHTTP);
+            if (responseSource == null) {
+                responseSource = connection.getHeaderField(RESPONSE_SOURCE_ANDROID);
+            }
+
+            long contentLength = connection.getHeaderFieldInt("Content-Length", -1);
+            boolean fromCache = parseResponseSourceHeader(responseSource);
+
+            // Picasso reads the body after returning, end the request once it is closed
+            Response response = new Response(
+                    request.track(connection.getInputStream(), fromCache), fromCache,
+                    contentLength);
+            isBodyTracked = true;
+            return response;
+        } finally {
+            if (!isBodyTracked) {
+                request.fail();
+            }
         }
+    }
 
-        String responseSource = connection.getHeaderField(RESPONSE_SOURCE_OKHTTP);
-        if (responseSource == null) {
-            responseSource = connection.getHeaderField(RESPONSE_SOURCE_ANDROID);
+    /**
+     * Downloads the image at the given URL into the disk cache if it is not cached already.
+     * Ignores the large data connection setting, check it before calling this.
+     *
+     * @return The number of bytes downloaded over the network, 0 if the image was cached.
+     */
+    public long warmCache(Uri uri) throws IOException {
+        HttpHosts.Request request = HttpHosts.begin(uri.getHost());
+        try {
+            HttpURLConnection connection = openConnection(uri);
+            connection.setUseCaches(true);
+
+            int responseCode = connection.getResponseCode();
+            if (responseCode >= 300) {
+                connection.disconnect();
+                throw new ResponseException(responseCode + " " + connection.getResponseMessage());
+            }
+
+            boolean fromCache = parseResponseSourceHeader(
+                    connection.getHeaderField(RESPONSE_SOURCE_OKHTTP));
+
+            // the response is only stored in the cache once it was read completely
+            long bytes = 0;
+            InputStream in = connection.getInputStream();
+            try {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    bytes += read;
+                }
+            } finally {
+                in.close();
+            }
+
+            request.end(bytes, fromCache);
+            return fromCache ? 0 : bytes;
+        } finally {
+            request.fail();
         }
+    }
 
-        long contentLength = connection.getHeaderFieldInt("Content-Length", -1);
-        boolean fromCache = parseResponseSourceHeader(responseSource);
-
-        return new Response(connection.getInputStream(), fromCache, contentLength);
+    /**
+     * Returns the maximum size of the disk cache in bytes.
+     */
+    public long getMaxCacheSize() {
+        com.squareup.okhttp.Cache cache = urlFactory.client().getCache();
+        return cache == null ? 0 : cache.getMaxSize();
     }
 
     static File createDefaultCacheDir(Context context) {
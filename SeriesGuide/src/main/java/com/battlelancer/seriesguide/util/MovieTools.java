@@ -24,6 +24,7 @@ import android.database.Cursor;
 import android.os.AsyncTask;
 import android.preference.PreferenceManager;
 import android.text.TextUtils;
+import com.battlelancer.seriesguide.backend.HexagonPagedUploader;
 import com.battlelancer.seriesguide.backend.HexagonTools;
 import com.battlelancer.seriesguide.backend.settings.HexagonSettings;
 import com.battlelancer.seriesguide.items.MovieDetails;
@@ -796,40 +797,33 @@ public class MovieTools {
     public static class Upload {
 
         /**
-         * Uploads all local movies to Hexagon.
+         * Uploads movies to Hexagon in pages of {@link #MOVIES_MAX_BATCH_SIZE}.
          */
-        public static boolean toHexagon(Context context) {
-            Timber.d("toHexagon: uploading all movies");
+        private static class MoviesUploader extends
+                HexagonPagedUploader<com.uwetrottmann.seriesguide.backend.movies.model.Movie> {
 
-            List<com.uwetrottmann.seriesguide.backend.movies.model.Movie> movies = buildMovieList(
-                    context);
-            if (movies == null) {
-                Timber.e("toHexagon: movie query was null");
-                return false;
-            }
-            if (movies.size() == 0) {
-                // nothing to do
-                Timber.d("toHexagon: no movies to upload");
-                return true;
-            }
+            private final Context mContext;
 
-            MovieList movieList = new MovieList();
-            movieList.setMovies(movies);
-
-            try {
-                HexagonTools.getMoviesService(context).save(movieList).execute();
-            } catch (IOException e) {
-                Timber.e(e, "toHexagon: failed to upload movies");
-                return false;
+            MoviesUploader(Context context) {
+                super("toHexagon", MOVIES_MAX_BATCH_SIZE);
+                mContext = context;
             }
 
-            return true;
+            @Override
+            protected void uploadPage(
+                    List<com.uwetrottmann.seriesguide.backend.movies.model.Movie> page)
+                    throws IOException {
+                MovieList movieList = new MovieList();
+                movieList.setMovies(page);
+                HexagonTools.getMoviesService(mContext).save(movieList).execute();
+            }
         }
 
-        private static List<com.uwetrottmann.seriesguide.backend.movies.model.Movie> buildMovieList(
-                Context context) {
-            List<com.uwetrottmann.seriesguide.backend.movies.model.Movie> movies
-                    = new ArrayList<>();
+        /**
+         * Uploads all local movies to Hexagon.
+         */
+        public static boolean toHexagon(Context context) {
+            Timber.d("toHexagon: uploading all movies");
 
             Cursor query = context.getContentResolver().query(Movies.CONTENT_URI,
                     new String[] {
@@ -839,21 +833,36 @@ public class MovieTools {
                     }, null, null, null
             );
             if (query == null) {
-                return null;
+                Timber.e("toHexagon: movie query was null");
+                return false;
+            }
+            if (query.getCount() == 0) {
+                // nothing to do
+                Timber.d("toHexagon: no movies to upload");
+                query.close();
+                return true;
             }
 
+            // upload movies page by page while reading them
+            MoviesUploader uploader = new MoviesUploader(context);
             while (query.moveToNext()) {
                 com.uwetrottmann.seriesguide.backend.movies.model.Movie movie
                         = new com.uwetrottmann.seriesguide.backend.movies.model.Movie();
                 movie.setTmdbId(query.getInt(0));
                 movie.setIsInCollection(query.getInt(1) == 1);
                 movie.setIsInWatchlist(query.getInt(2) == 1);
-                movies.add(movie);
+                if (!uploader.add(movie)) {
+                    break;
+                }
             }
 
             query.close();
 
-            return movies;
+            boolean success = uploader.finish();
+            if (!success) {
+                Timber.e("toHexagon: failed to upload movies");
+            }
+            return success;
         }
 
         /**
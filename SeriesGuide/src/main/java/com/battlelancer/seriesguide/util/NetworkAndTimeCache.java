@@ -0,0 +1,128 @@
+/*
+ * Copyright 2014 Uwe Trottmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.battlelancer.seriesguide.util;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.text.format.DateUtils;
+
+/**
+ * Caches network and release time strings of shows (e.g. "Network / Tue 08:00 PM"), so show
+ * lists do not have to format them each time a row is bound.
+ *
+ * <p> The strings are dropped if {@link TimeTools#getTimeSettingsGeneration()} changes, e.g. the
+ * user-set offset or the locale changed. They are also dropped once a day, as daylight saving
+ * time may have started or ended.
+ */
+public class NetworkAndTimeCache {
+
+    private static final int CACHE_SIZE = 500;
+
+    private static NetworkAndTimeCache sInstance;
+
+    private final Context mContext;
+
+    private final LruCache<Key, String> mCache = new LruCache<>(CACHE_SIZE);
+
+    /**
+     * Reused to look up strings without allocating a key.
+     */
+    private final Key mLookupKey = new Key();
+
+    private int mGeneration;
+
+    private long mDay;
+
+    public static synchronized NetworkAndTimeCache get(Context context) {
+        if (sInstance == null) {
+            sInstance = new NetworkAndTimeCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private NetworkAndTimeCache(Context context) {
+        mContext = context;
+        mGeneration = TimeTools.getTimeSettingsGeneration();
+        mDay = System.currentTimeMillis() / DateUtils.DAY_IN_MILLIS;
+    }
+
+    /**
+     * Returns a network and release time string formatted like "Network / Tue 08:00 PM".
+     */
+    public synchronized String getNetworkAndTime(long releaseTime, String releaseCountry,
+            String releaseDay, String network) {
+        int generation = TimeTools.getTimeSettingsGeneration();
+        long day = System.currentTimeMillis() / DateUtils.DAY_IN_MILLIS;
+        if (generation != mGeneration || day != mDay) {
+            mCache.evictAll();
+            mGeneration = generation;
+            mDay = day;
+        }
+
+        mLookupKey.set(releaseTime, releaseCountry, releaseDay, network);
+        String networkAndTime = mCache.get(mLookupKey);
+        if (networkAndTime == null) {
+            String[] values = TimeTools.formatToShowReleaseTimeAndDay(mContext, releaseTime,
+                    releaseCountry, releaseDay);
+            networkAndTime = network + " / " + values[1] + " " + values[0];
+
+            Key key = new Key();
+            key.set(releaseTime, releaseCountry, releaseDay, network);
+            mCache.put(key, networkAndTime);
+        }
+        return networkAndTime;
+    }
+
+    private static class Key {
+
+        long releaseTime;
+        String releaseCountry;
+        String releaseDay;
+        String network;
+
+        void set(long releaseTime, String releaseCountry, String releaseDay, String network) {
+            this.releaseTime = releaseTime;
+            this.releaseCountry = releaseCountry;
+            this.releaseDay = releaseDay;
+            this.network = network;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return releaseTime == other.releaseTime
+                    && TextUtils.equals(releaseCountry, other.releaseCountry)
+                    && TextUtils.equals(releaseDay, other.releaseDay)
+                    && TextUtils.equals(network, other.network);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = (int) (releaseTime ^ (releaseTime >>> 32));
+            result = 31 * result + (releaseCountry != null ? releaseCountry.hashCode() : 0);
+            result = 31 * result + (releaseDay != null ? releaseDay.hashCode() : 0);
+            result = 31 * result + (network != null ? network.hashCode() : 0);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014 Uwe Trottmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.battlelancer.seriesguide.util;
+
+import android.content.Context;
+import android.os.Handler;
+import android.text.format.DateUtils;
+import com.battlelancer.seriesguide.R;
+import java.util.Date;
+
+/**
+ * Formats episode release times relative to now (e.g. "in 15 mins (Fri)") when they are
+ * displayed, so they do not have to be stored and rewritten while time passes.
+ *
+ * <p> Relative times have a resolution of one minute, so formatted strings are cached until the
+ * current minute ends. Views displaying them can use a {@link MinuteTicker} to be rebound once
+ * per minute.
+ */
+public class ReleaseTimeFormatter {
+
+    private static final int CACHE_SIZE = 256;
+
+    private static ReleaseTimeFormatter sInstance;
+
+    private final Context mContext;
+
+    private final LruCache<Long, String> mCache = new LruCache<>(CACHE_SIZE);
+
+    private long mCacheMinute;
+
+    public static synchronized ReleaseTimeFormatter get(Context context) {
+        if (sInstance == null) {
+            sInstance = new ReleaseTimeFormatter(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ReleaseTimeFormatter(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Returns the relative release time and release day, e.g. "in 15 mins (Fri)".
+     *
+     * @param releaseTime Release time in ms as stored in the database, user-set offsets are
+     * applied.
+     */
+    public synchronized String formatRelativeTimeAndDay(long releaseTime) {
+        long currentMinute = System.currentTimeMillis() / DateUtils.MINUTE_IN_MILLIS;
+        if (currentMinute != mCacheMinute) {
+            mCache.evictAll();
+            mCacheMinute = currentMinute;
+        }
+
+        String text = mCache.get(releaseTime);
+        if (text == null) {
+            Date actualRelease = TimeTools.getEpisodeReleaseTime(mContext, releaseTime);
+            text = mContext.getString(R.string.release_date_and_day,
+                    TimeTools.formatToRelativeLocalReleaseTime(mContext, actualRelease),
+                    TimeTools.formatToLocalReleaseDay(actualRelease));
+            mCache.put(releaseTime, text);
+        }
+        return text;
+    }
+
+    /**
+     * Calls a {@link Runnable} on the main thread at the start of every minute while started,
+     * e.g. to rebind views displaying relative times.
+     */
+    public static class MinuteTicker {
+
+        private final Handler mHandler = new Handler();
+
+        private final Runnable mOnTick;
+
+        private boolean mIsStarted;
+
+        public MinuteTicker(Runnable onTick) {
+            mOnTick = onTick;
+        }
+
+        public void start() {
+            if (mIsStarted) {
+                return;
+            }
+            mIsStarted = true;
+            scheduleTick();
+        }
+
+        public void stop() {
+            mIsStarted = false;
+            mHandler.removeCallbacks(mTickRunnable);
+        }
+
+        private void scheduleTick() {
+            long untilNextMinute = DateUtils.MINUTE_IN_MILLIS
+                    - System.currentTimeMillis() % DateUtils.MINUTE_IN_MILLIS;
+            mHandler.postDelayed(mTickRunnable, untilNextMinute);
+        }
+
+        private final Runnable mTickRunnable = new Runnable() {
+            @Override
+            public void run() {
+                if (!mIsStarted) {
+                    return;
+                }
+                mOnTick.run();
+                scheduleTick();
+            }
+        };
+    }
+}
@@ -33,6 +33,7 @@ import com.battlelancer.seriesguide.tmdbapi.SgTmdb;
 import com.battlelancer.seriesguide.traktapi.SgTrakt;
 import com.jakewharton.trakt.Trakt;
 import com.squareup.okhttp.Cache;
+import com.squareup.okhttp.ConnectionPool;
 import com.squareup.okhttp.OkHttpClient;
 import com.squareup.okhttp.OkUrlFactory;
 import com.squareup.picasso.Picasso;
@@ -54,6 +55,8 @@ public final class ServiceUtils {
     private static final String API_CACHE = "api-cache";
     private static final int MIN_DISK_API_CACHE_SIZE = 2 * 1024 * 1024; // 2MB
     private static final int MAX_DISK_API_CACHE_SIZE = 10 * 1024 * 1024; // 10MB
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    private static final long KEEP_ALIVE_DURATION_MILLIS = 5 * 60 * 1000; // 5min
 
     private static final String IMDB_APP_TITLE_URI_POSTFIX = "/";
 
@@ -82,6 +85,8 @@ public final class ServiceUtils {
 
     private static Picasso sPicasso;
 
+    private static LocalOnlyOkHttpDownloader sPicassoDownloader;
+
     private static Trakt trakt;
 
     private static Trakt traktWithAuth;
@@ -94,12 +99,18 @@ public final class ServiceUtils {
 
     /**
      * Returns this apps {@link com.squareup.okhttp.OkHttpClient} with no cache enabled.
+     *
+     * <p> All other clients are {@link com.squareup.okhttp.OkHttpClient#clone()}s of this one, so
+     * they share its connection pool and connections to the same host can be reused by TVDb,
+     * trakt, TMDb and image requests alike.
      */
     public static synchronized OkHttpClient getOkHttpClient() {
         if (httpClient == null) {
             httpClient = new OkHttpClient();
             httpClient.setConnectTimeout(CONNECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
             httpClient.setReadTimeout(READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            httpClient.setConnectionPool(
+                    new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION_MILLIS));
         }
         return httpClient;
     }
@@ -110,9 +121,7 @@ public final class ServiceUtils {
      */
     public static synchronized OkHttpClient getCachingOkHttpClient(Context context) {
         if (cachingHttpClient == null) {
-            cachingHttpClient = new OkHttpClient();
-            cachingHttpClient.setConnectTimeout(CONNECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
-            cachingHttpClient.setReadTimeout(READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            cachingHttpClient = getOkHttpClient().clone();
             File cacheDir = createApiCacheDir(context);
             try {
                 cachingHttpClient.setCache(
@@ -162,12 +171,24 @@ public final class ServiceUtils {
 
     public static synchronized Picasso getPicasso(Context context) {
         if (sPicasso == null) {
-            sPicasso = new Picasso.Builder(context).downloader(
-                    new LocalOnlyOkHttpDownloader(context)).build();
+            sPicasso = new Picasso.Builder(context)
+                    .downloader(getPicassoDownloader(context))
+                    .build();
         }
         return sPicasso;
     }
 
+    /**
+     * Returns the downloader used by {@link #getPicasso(android.content.Context)}, e.g. to
+     * download images into its disk cache ahead of time.
+     */
+    public static synchronized LocalOnlyOkHttpDownloader getPicassoDownloader(Context context) {
+        if (sPicassoDownloader == null) {
+            sPicassoDownloader = new LocalOnlyOkHttpDownloader(context);
+        }
+        return sPicassoDownloader;
+    }
+
     /**
      * Get a tmdb-java instance with our API key set.
      */
@@ -26,6 +26,7 @@ import android.preference.PreferenceManager;
 import android.text.TextUtils;
 import android.widget.Toast;
 import com.battlelancer.seriesguide.R;
+import com.battlelancer.seriesguide.backend.HexagonPagedUploader;
 import com.battlelancer.seriesguide.backend.HexagonTools;
 import com.battlelancer.seriesguide.backend.settings.HexagonSettings;
 import com.battlelancer.seriesguide.enums.NetworkResult;
@@ -82,41 +83,8 @@ public class ShowTools {
             sendIsRemoved(showTvdbId, true);
         }
 
-        // remove database entries in stages, so if an earlier stage fails, user can at least try again
-        // also saves memory by applying batches early
-
-        // SEARCH DATABASE ENTRIES
-        final Cursor episodes = mContext.getContentResolver().query(
-                SeriesGuideContract.Episodes.buildEpisodesOfShowUri(showTvdbId), new String[] {
-                        SeriesGuideContract.Episodes._ID
-                }, null, null, null
-        );
-        if (episodes == null) {
-            // failed
-            return Result.ERROR;
-        }
-        List<String> episodeTvdbIds = new LinkedList<>(); // need those for search entries
-        while (episodes.moveToNext()) {
-            episodeTvdbIds.add(episodes.getString(0));
-        }
-        episodes.close();
-
-        // remove episode search database entries
+        // remove episodes (triggers remove their search entries), seasons and show
         final ArrayList<ContentProviderOperation> batch = new ArrayList<>();
-        for (String episodeTvdbId : episodeTvdbIds) {
-            batch.add(ContentProviderOperation.newDelete(
-                    SeriesGuideContract.EpisodeSearch.buildDocIdUri(episodeTvdbId)).build());
-        }
-        try {
-            DBUtils.applyInSmallBatches(mContext, batch);
-        } catch (OperationApplicationException e) {
-            Timber.e(e, "Removing episode search entries failed");
-            return Result.ERROR;
-        }
-        batch.clear();
-
-        // ACTUAL ENTITY ENTRIES
-        // remove episodes, seasons and show
         batch.add(ContentProviderOperation.newDelete(
                 SeriesGuideContract.Episodes.buildEpisodesOfShowUri(showTvdbId)).build());
         batch.add(ContentProviderOperation.newDelete(
@@ -255,22 +223,69 @@ public class ShowTools {
 
     public static class Upload {
 
+        /**
+         * Uploads shows to Hexagon in pages of {@link #SHOWS_MAX_BATCH_SIZE}.
+         */
+        private static class ShowsUploader extends HexagonPagedUploader<Show> {
+
+            private final Context mContext;
+
+            ShowsUploader(Context context) {
+                super("toHexagon", SHOWS_MAX_BATCH_SIZE);
+                mContext = context;
+            }
+
+            @Override
+            protected void uploadPage(List<Show> page) throws IOException {
+                ShowList showList = new ShowList();
+                showList.setShows(page);
+                HexagonTools.getShowsService(mContext).save(showList).execute();
+            }
+        }
+
         /**
          * Uploads all local shows to Hexagon.
          */
         public static boolean toHexagon(Context context) {
             Timber.d("toHexagon: uploading all shows");
-            List<Show> shows = buildShowList(context);
-            if (shows == null) {
+            Cursor query = context.getContentResolver()
+                    .query(SeriesGuideContract.Shows.CONTENT_URI, new String[] {
+                            SeriesGuideContract.Shows._ID,
+                            SeriesGuideContract.Shows.FAVORITE,
+                            SeriesGuideContract.Shows.HIDDEN,
+                            SeriesGuideContract.Shows.GETGLUEID
+                    }, null, null, null);
+            if (query == null) {
                 Timber.e("toHexagon: show query was null");
                 return false;
             }
-            if (shows.size() == 0) {
+            if (query.getCount() == 0) {
                 Timber.d("toHexagon: no shows to upload");
                 // nothing to upload
+                query.close();
                 return true;
             }
-            return toHexagon(context, shows);
+
+            // upload shows page by page while reading them
+            ShowsUploader uploader = new ShowsUploader(context);
+            while (query.moveToNext()) {
+                Show show = new Show();
+                show.setTvdbId(query.getInt(0));
+                show.setIsFavorite(query.getInt(1) == 1);
+                show.setIsHidden(query.getInt(2) == 1);
+                show.setTvtagId(query.getString(3));
+                if (!uploader.add(show)) {
+                    break;
+                }
+            }
+
+            query.close();
+
+            boolean success = uploader.finish();
+            if (!success) {
+                Timber.e("toHexagon: failed to upload shows");
+            }
+            return success;
         }
 
         /**
@@ -293,34 +308,6 @@ public class ShowTools {
 
             return true;
         }
-
-        private static List<Show> buildShowList(Context context) {
-            List<Show> shows = new LinkedList<>();
-
-            Cursor query = context.getContentResolver()
-                    .query(SeriesGuideContract.Shows.CONTENT_URI, new String[] {
-                            SeriesGuideContract.Shows._ID,
-                            SeriesGuideContract.Shows.FAVORITE,
-                            SeriesGuideContract.Shows.HIDDEN,
-                            SeriesGuideContract.Shows.GETGLUEID
-                    }, null, null, null);
-            if (query == null) {
-                return null;
-            }
-
-            while (query.moveToNext()) {
-                Show show = new Show();
-                show.setTvdbId(query.getInt(0));
-                show.setIsFavorite(query.getInt(1) == 1);
-                show.setIsHidden(query.getInt(2) == 1);
-                show.setTvtagId(query.getString(3));
-                shows.add(show);
-            }
-
-            query.close();
-
-            return shows;
-        }
     }
 
     public static class Download {
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014 Uwe Trottmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.battlelancer.seriesguide.util;
+
+import android.text.format.DateUtils;
+import com.battlelancer.seriesguide.thetvdbapi.TheTVDB.ShowStatus;
+
+/**
+ * Decides when a show should be updated from TVDb again, stored in {@link
+ * com.battlelancer.seriesguide.provider.SeriesGuideContract.Shows#NEXT_UPDATE}.
+ *
+ * <p> Shows with an episode about to be released or recently edited on TVDb are updated often, as
+ * release times and episode details are likely to change. Shows on hiatus are updated less often
+ * the further away their next episode is, ended shows and shows not edited for a long time only
+ * every few weeks.
+ */
+public class ShowUpdateScheduler {
+
+    static final long MIN_INTERVAL_MS = 12 * DateUtils.HOUR_IN_MILLIS;
+
+    static final long RECENTLY_EDITED_INTERVAL_MS = DateUtils.DAY_IN_MILLIS
+            + 12 * DateUtils.HOUR_IN_MILLIS;
+
+    static final long NO_RELEASE_INTERVAL_MS = 2 * DateUtils.WEEK_IN_MILLIS;
+
+    static final long MAX_INTERVAL_MS = 28 * DateUtils.DAY_IN_MILLIS;
+
+    /**
+     * Episodes released within this time are likely to still get changed release times.
+     */
+    static final long RELEASE_SOON_MS = 2 * DateUtils.DAY_IN_MILLIS;
+
+    /**
+     * Shows edited on TVDb within this time are likely to be edited again.
+     */
+    static final long RECENTLY_EDITED_MS = DateUtils.WEEK_IN_MILLIS;
+
+    /**
+     * Shows not edited on TVDb for longer are unlikely to be edited again soon.
+     */
+    static final long LONG_UNEDITED_MS = 90 * DateUtils.DAY_IN_MILLIS;
+
+    /**
+     * Returns the time after which a show should be updated again.
+     *
+     * @param status One of {@link com.battlelancer.seriesguide.thetvdbapi.TheTVDB.ShowStatus}.
+     * @param nextReleaseTime Release time of the next episode, or 0 if there is none.
+     * @param lastEditedTime Time the show or one of its episodes was last edited on TVDb, or 0 if
+     * unknown.
+     */
+    public static long getNextUpdateTime(long currentTime, int status, long nextReleaseTime,
+            long lastEditedTime) {
+        long sinceLastEdit = currentTime - lastEditedTime;
+        boolean isRecentlyEdited = lastEditedTime > 0 && sinceLastEdit < RECENTLY_EDITED_MS;
+
+        long interval;
+        if (status == ShowStatus.ENDED && !isRecentlyEdited) {
+            interval = MAX_INTERVAL_MS;
+        } else if (nextReleaseTime > currentTime) {
+            long untilRelease = nextReleaseTime - currentTime;
+            if (untilRelease < RELEASE_SOON_MS) {
+                interval = MIN_INTERVAL_MS;
+            } else {
+                // check a few times until the release, less often for shows on hiatus
+                interval = Math.max(MIN_INTERVAL_MS, Math.min(untilRelease / 2, MAX_INTERVAL_MS));
+            }
+        } else if (lastEditedTime > 0 && sinceLastEdit > LONG_UNEDITED_MS) {
+            interval = MAX_INTERVAL_MS;
+        } else {
+            interval = NO_RELEASE_INTERVAL_MS;
+        }
+
+        if (isRecentlyEdited) {
+            interval = Math.min(interval, RECENTLY_EDITED_INTERVAL_MS);
+        }
+
+        return currentTime + interval;
+    }
+}
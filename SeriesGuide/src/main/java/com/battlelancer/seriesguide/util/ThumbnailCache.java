@@ -0,0 +1,272 @@
+/*
+ * Copyright 2014 Uwe Trottmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.battlelancer.seriesguide.util;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.net.Uri;
+import com.squareup.picasso.Downloader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import timber.log.Timber;
+
+/**
+ * Disk cache of images scaled and cropped to the size they are displayed at, e.g. poster
+ * thumbnails for lists and widgets. A thumbnail is generated once from the original image and
+ * afterwards decoded directly, instead of decoding and scaling the full size original every time.
+ *
+ * <p> Load thumbnails with Picasso using a {@link #buildUri(Context, String, int, int)} URI, the
+ * {@link LocalOnlyOkHttpDownloader} hands them to {@link #load(Uri, boolean)}.
+ */
+public class ThumbnailCache {
+
+    public static final String SCHEME = "sgthumbnail";
+
+    private static final String PARAM_URL = "url";
+    private static final String PARAM_WIDTH = "w";
+    private static final String PARAM_HEIGHT = "h";
+
+    private static final String THUMBNAIL_CACHE = "thumbnails";
+
+    private static final long MAX_DISK_CACHE_SIZE = 10 * 1024 * 1024; // 10MB
+
+    /**
+     * Check the size of the cache after writing this many thumbnails.
+     */
+    private static final int TRIM_INTERVAL = 50;
+
+    private static final int JPEG_QUALITY = 90;
+
+    private final File mCacheDir;
+
+    private final Downloader mDownloader;
+
+    private int mWritesSinceTrim = TRIM_INTERVAL;
+
+    /**
+     * @param downloader Used to load the original images.
+     */
+    public ThumbnailCache(Context context, Downloader downloader) {
+        mCacheDir = new File(context.getApplicationContext().getCacheDir(), THUMBNAIL_CACHE);
+        if (!mCacheDir.exists()) {
+            //noinspection ResultOfMethodCallIgnored
+            mCacheDir.mkdirs();
+        }
+        mDownloader = downloader;
+    }
+
+    /**
+     * Builds a URI to load a thumbnail of the image at the given URL with Picasso. The thumbnail
+     * is center cropped to the given dimensions.
+     */
+    public static Uri buildUri(Context context, String imageUrl, int widthDimenRes,
+            int heightDimenRes) {
+        return new Uri.Builder()
+                .scheme(SCHEME)
+                .authority("image")
+                .appendQueryParameter(PARAM_URL, imageUrl)
+                .appendQueryParameter(PARAM_WIDTH, String.valueOf(
+                        context.getResources().getDimensionPixelSize(widthDimenRes)))
+                .appendQueryParameter(PARAM_HEIGHT, String.valueOf(
+                        context.getResources().getDimensionPixelSize(heightDimenRes)))
+                .build();
+    }
+
+    /**
+     * Returns the thumbnail for the given {@link #buildUri(Context, String, int, int)} URI from
+     * disk, or generates it from the original image if it does not exist yet.
+     *
+     * @param localCacheOnly Passed on when loading the original image.
+     */
+    public Downloader.Response load(Uri uri, boolean localCacheOnly) throws IOException {
+        String imageUrl = uri.getQueryParameter(PARAM_URL);
+        int width;
+        int height;
+        try {
+            width = Integer.parseInt(uri.getQueryParameter(PARAM_WIDTH));
+            height = Integer.parseInt(uri.getQueryParameter(PARAM_HEIGHT));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid thumbnail size " + uri);
+        }
+        if (imageUrl == null || width <= 0 || height <= 0) {
+            throw new IOException("Invalid thumbnail " + uri);
+        }
+
+        File file = new File(mCacheDir,
+                Utils.toSHA1(imageUrl) + "_" + width + "x" + height + ".jpg");
+        if (file.exists()) {
+            // keep recently used thumbnails when trimming
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+            return new Downloader.Response(new FileInputStream(file), true, file.length());
+        }
+
+        Downloader.Response original = mDownloader.load(Uri.parse(imageUrl), localCacheOnly);
+        Bitmap thumbnail = createThumbnail(readFully(original.getInputStream()), width, height);
+        if (thumbnail == null) {
+            throw new IOException("Failed to decode " + imageUrl);
+        }
+        write(thumbnail, file);
+
+        // freshly generated, so count as loaded from the network
+        return new Downloader.Response(thumbnail, false);
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        if (in == null) {
+            throw new IOException("Response has no body");
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Decodes the image subsampled to the smallest size still larger than the thumbnail, then
+     * center crops and scales it to exactly the thumbnail size.
+     */
+    private static Bitmap createThumbnail(byte[] data, int width, int height) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= width
+                && options.outHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        Bitmap source = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (source == null) {
+            return null;
+        }
+
+        // crop the source to the aspect ratio of the thumbnail
+        int sourceWidth = source.getWidth();
+        int sourceHeight = source.getHeight();
+        Rect crop;
+        if (sourceWidth * height > sourceHeight * width) {
+            int cropWidth = sourceHeight * width / height;
+            int left = (sourceWidth - cropWidth) / 2;
+            crop = new Rect(left, 0, left + cropWidth, sourceHeight);
+        } else {
+            int cropHeight = sourceWidth * height / width;
+            int top = (sourceHeight - cropHeight) / 2;
+            crop = new Rect(0, top, sourceWidth, top + cropHeight);
+        }
+
+        Bitmap thumbnail = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(thumbnail);
+        canvas.drawBitmap(source, crop, new Rect(0, 0, width, height),
+                new Paint(Paint.FILTER_BITMAP_FLAG));
+        source.recycle();
+        return thumbnail;
+    }
+
+    private void write(Bitmap thumbnail, File file) {
+        // write to a temporary file first, so a thumbnail is never read while being written
+        File tempFile = new File(mCacheDir, file.getName() + "." + Thread.currentThread().getId());
+        try {
+            FileOutputStream out = new FileOutputStream(tempFile);
+            try {
+                thumbnail.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+            } finally {
+                out.close();
+            }
+            if (!tempFile.renameTo(file)) {
+                //noinspection ResultOfMethodCallIgnored
+                tempFile.delete();
+            }
+        } catch (IOException e) {
+            // the thumbnail is generated again next time
+            Timber.w(e, "Failed to write thumbnail");
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            return;
+        }
+
+        boolean shouldTrim;
+        synchronized (this) {
+            shouldTrim = ++mWritesSinceTrim >= TRIM_INTERVAL;
+            if (shouldTrim) {
+                mWritesSinceTrim = 0;
+            }
+        }
+        if (shouldTrim) {
+            trim();
+        }
+    }
+
+    /**
+     * Deletes the least recently used thumbnails until the cache is smaller than {@link
+     * #MAX_DISK_CACHE_SIZE}.
+     */
+    private void trim() {
+        File[] files = mCacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= MAX_DISK_CACHE_SIZE) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsModified = lhs.lastModified();
+                long rhsModified = rhs.lastModified();
+                return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+        int deleted = 0;
+        for (int i = 0; i < files.length && size > MAX_DISK_CACHE_SIZE; i++) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                size -= length;
+                deleted++;
+            }
+        }
+        Timber.d("Trimmed thumbnail cache, deleted " + deleted + " thumbnails");
+    }
+}
@@ -16,23 +16,33 @@
 
 package com.battlelancer.seriesguide.util;
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.preference.PreferenceManager;
 import android.text.TextUtils;
 import android.text.format.DateFormat;
 import android.text.format.DateUtils;
 import com.battlelancer.seriesguide.R;
 import com.battlelancer.seriesguide.ui.SeriesGuidePreferences;
-import java.text.DateFormatSymbols;
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Helps with converting timestamps used by TVDb and other services.
+ *
+ * <p> Release time conversions are done arithmetically on cached time zones instead of with
+ * {@link Calendar} and {@link SimpleDateFormat}, they run for every episode when parsing shows and
+ * for every row of show lists.
  */
 public class TimeTools {
 
@@ -74,17 +84,86 @@ public class TimeTools {
     private static final String TIMEZONE_ID_US_ARIZONA = "America/Phoenix";
     private static final String TIMEZONE_ID_US_PACIFIC = "America/Los_Angeles";
 
-    private static final SimpleDateFormat TIME_FORMAT_TRAKT = new SimpleDateFormat(
-            "h:mmaa", Locale.US);
+    /**
+     * Offset of {@link #TIMEZONE_ID_CUSTOM}, which has no daylight saving time.
+     */
+    private static final long OFFSET_CUSTOM_MS = -8 * DateUtils.HOUR_IN_MILLIS;
+
+    /**
+     * Days between 1970-01-01 (a Thursday) and the previous Sunday.
+     */
+    private static final int EPOCH_DAY_OF_WEEK_OFFSET = 4;
+
+    private static final long INVALID_DATE = Long.MIN_VALUE;
+
+    /**
+     * Release time zones of supported countries, looked up once as resolving a time zone by id is
+     * expensive. Not modified after class initialization, so safe to read from any thread.
+     */
+    private static final Map<String, TimeZone> TIME_ZONES_BY_COUNTRY = new HashMap<>();
 
-    private static final SimpleDateFormat DATE_FORMAT_TVDB = new SimpleDateFormat("yyyy-MM-dd",
-            Locale.US);
+    private static final TimeZone TIME_ZONE_US_PACIFIC = TimeZone.getTimeZone(
+            TIMEZONE_ID_US_PACIFIC);
 
     static {
-        // assume all times are in a custom time zone
-        TimeZone customTimeZone = TimeZone.getTimeZone(TIMEZONE_ID_CUSTOM);
-        TIME_FORMAT_TRAKT.setTimeZone(customTimeZone);
-        DATE_FORMAT_TVDB.setTimeZone(customTimeZone);
+        for (String country : new String[] {
+                AUSTRALIA, CANADA, FINLAND, GERMANY, JAPAN, NETHERLANDS, UNITED_KINGDOM,
+                UNITED_STATES
+        }) {
+            TIME_ZONES_BY_COUNTRY.put(country,
+                    TimeZone.getTimeZone(getTimeZoneIdForCountry(country)));
+        }
+    }
+
+    /**
+     * Id of the device time zone, kept up to date by a receiver registered in {@link
+     * #setUpCaches(Context)}. Avoids {@link TimeZone#getDefault()}, which returns a copy.
+     */
+    private static volatile String sDeviceTimeZoneId;
+
+    private static volatile boolean sIsUserOffsetCached;
+
+    private static volatile int sUserOffset;
+
+    /**
+     * Strong reference, {@link SharedPreferences} only keep weak references to listeners.
+     */
+    private static OnSharedPreferenceChangeListener sUserOffsetListener;
+
+    private static final AtomicInteger sTimeSettingsGeneration = new AtomicInteger();
+
+    /**
+     * Caches the device time zone and the user-set offset, so converting release times does not
+     * have to look them up again. Call once the app is started.
+     */
+    public static void setUpCaches(Context context) {
+        context = context.getApplicationContext();
+        initUserOffset(context);
+
+        sDeviceTimeZoneId = TimeZone.getDefault().getID();
+        IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+        // also sent if the 24-hour format setting changes
+        filter.addAction(Intent.ACTION_TIME_CHANGED);
+        filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+        context.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                if (Intent.ACTION_TIMEZONE_CHANGED.equals(intent.getAction())) {
+                    String timeZoneId = intent.getStringExtra("time-zone");
+                    sDeviceTimeZoneId = timeZoneId != null
+                            ? timeZoneId : TimeZone.getDefault().getID();
+                }
+                sTimeSettingsGeneration.incrementAndGet();
+            }
+        }, filter);
+    }
+
+    /**
+     * Returns a number that changes whenever the user-set offset, the device time zone, the time
+     * format or the locale changes, so callers can tell if strings they formatted are outdated.
+     */
+    public static int getTimeSettingsGeneration() {
+        return sTimeSettingsGeneration.get();
     }
 
     /**
@@ -96,78 +175,93 @@ public class TimeTools {
      * matches the input.
      */
     public static long parseShowReleaseTime(String traktAirTimeString) {
-        // try parsing with different formats, starting with the most likely
-        Date time = null;
-        if (traktAirTimeString != null && traktAirTimeString.length() != 0) {
-            try {
-                time = TIME_FORMAT_TRAKT.parse(traktAirTimeString);
-            } catch (ParseException e) {
-                // string may be wrongly formatted
-                time = null;
-            }
+        // times resolution is at most in minutes, so -1 (ms) can never exist
+        if (traktAirTimeString == null) {
+            return -1;
+        }
+        final int length = traktAirTimeString.length();
+
+        // hour, one or two digits
+        int index = 0;
+        int hour = 0;
+        while (index < length && index < 2 && isDigit(traktAirTimeString.charAt(index))) {
+            hour = hour * 10 + traktAirTimeString.charAt(index) - '0';
+            index++;
+        }
+        if (index == 0 || index >= length || traktAirTimeString.charAt(index) != ':') {
+            return -1;
         }
+        index++;
 
-        if (time != null) {
-            return time.getTime();
-        } else {
-            // times resolution is at most in minutes, so -1 (ms) can never exist
+        // minute, two digits
+        if (index + 2 > length
+                || !isDigit(traktAirTimeString.charAt(index))
+                || !isDigit(traktAirTimeString.charAt(index + 1))) {
             return -1;
         }
+        int minute = (traktAirTimeString.charAt(index) - '0') * 10
+                + traktAirTimeString.charAt(index + 1) - '0';
+        index += 2;
+
+        // am or pm, case insensitive
+        while (index < length && traktAirTimeString.charAt(index) == ' ') {
+            index++;
+        }
+        if (index + 2 > length) {
+            return -1;
+        }
+        char amOrPm = Character.toLowerCase(traktAirTimeString.charAt(index));
+        if (Character.toLowerCase(traktAirTimeString.charAt(index + 1)) != 'm'
+                || (amOrPm != 'a' && amOrPm != 'p')) {
+            return -1;
+        }
+
+        if (hour > 12 || minute > 59) {
+            return -1;
+        }
+        int hourOfDay = hour % 12 + (amOrPm == 'p' ? 12 : 0);
+
+        return hourOfDay * DateUtils.HOUR_IN_MILLIS + minute * DateUtils.MINUTE_IN_MILLIS
+                - OFFSET_CUSTOM_MS;
     }
 
+    /**
+     * Calculates the release time of an episode from its release date in the format used by TVDb
+     * (e.g. "2014-05-31") and the release time of its show (see {@link
+     * #parseShowReleaseTime(String)}).
+     *
+     * <p> Safe to call from multiple threads and does not allocate, it is called for every episode
+     * when parsing shows.
+     *
+     * @return The release time in UTC ms or -1 if the date could not be parsed.
+     */
     public static long parseEpisodeReleaseTime(String releaseDateEpisode, long releaseTimeShow,
             String releaseCountry) {
-        // create calendar, set to custom time zone
-        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone(TIMEZONE_ID_CUSTOM));
-
         // extract day, month and year
-        Date releaseDate;
-        try {
-            releaseDate = DATE_FORMAT_TVDB.parse(releaseDateEpisode);
-        } catch (ParseException e) {
-            releaseDate = null;
-        }
-        if (releaseDate == null) {
+        long epochDay = parseDate(releaseDateEpisode);
+        if (epochDay == INVALID_DATE) {
             return -1;
         }
-        calendar.setTime(releaseDate);
-        int year = calendar.get(Calendar.YEAR);
-        int month = calendar.get(Calendar.MONTH);
-        int day = calendar.get(Calendar.DAY_OF_MONTH);
 
         // extract hour and minute
         int hour;
         int minute;
         if (releaseTimeShow != -1) {
-            calendar.setTimeInMillis(releaseTimeShow);
-            hour = calendar.get(Calendar.HOUR_OF_DAY);
-            minute = calendar.get(Calendar.MINUTE);
+            long timeOfDay = floorMod(releaseTimeShow + OFFSET_CUSTOM_MS,
+                    DateUtils.DAY_IN_MILLIS);
+            hour = (int) (timeOfDay / DateUtils.HOUR_IN_MILLIS);
+            minute = (int) (timeOfDay % DateUtils.HOUR_IN_MILLIS / DateUtils.MINUTE_IN_MILLIS);
         } else {
             // no exact time? default to 5 in the morning
             hour = 5;
             minute = 0;
         }
 
-        // set calendar to release time zone
-        String timeZoneId = getTimeZoneIdForCountry(releaseCountry);
-        calendar.setTimeZone(TimeZone.getTimeZone(timeZoneId));
-
-        // set parsed date and time
-        calendar.set(Calendar.YEAR, year);
-        calendar.set(Calendar.MONTH, month);
-        calendar.set(Calendar.DAY_OF_MONTH, day);
-        calendar.set(Calendar.HOUR_OF_DAY, hour);
-        calendar.set(Calendar.MINUTE, minute);
-        calendar.set(Calendar.SECOND, 0);
-        calendar.set(Calendar.MILLISECOND, 0);
-
         // US shows air at the same LOCAL time across all its time zones (with exceptions)
         // this depends on the current device time zone, so if it changes to/from a US time zone
         // updating all episode time stamps is necessary
         // as current episodes are updated regularly this should not be an issue
-        applyCustomCorrections(calendar, hour, releaseCountry);
-
-        return calendar.getTimeInMillis();
+        return toReleaseTime(epochDay, hour, minute, releaseCountry);
     }
 
     public static String[] formatToShowReleaseTimeAndDay(Context context, long releaseTime,
@@ -181,12 +275,11 @@ public class TimeTools {
 
         int releaseDayOfWeek = getDayOfWeek(releaseDay);
 
-        Calendar calendar = getShowReleaseTime(releaseTime, releaseCountry, releaseDayOfWeek);
-
-        setUserOffset(context, calendar);
+        long showReleaseTime = getShowReleaseTime(releaseTime, releaseCountry, releaseDayOfWeek);
 
         // convert and format to local
-        Date actualRelease = calendar.getTime();
+        Date actualRelease = new Date(showReleaseTime
+                + getUserOffset(context) * DateUtils.HOUR_IN_MILLIS);
         return new String[] {
                 formatToLocalReleaseTime(context, actualRelease),
                 formatToLocalReleaseDay(context, releaseDayOfWeek, actualRelease)
@@ -204,64 +297,185 @@ public class TimeTools {
             return -1;
         }
 
-        // catch Daily
-        if ("Daily".equals(day)) {
-            return RELEASE_DAY_DAILY;
+        switch (day) {
+            case "Daily":
+                return RELEASE_DAY_DAILY;
+            case "Sunday":
+                return Calendar.SUNDAY;
+            case "Monday":
+                return Calendar.MONDAY;
+            case "Tuesday":
+                return Calendar.TUESDAY;
+            case "Wednesday":
+                return Calendar.WEDNESDAY;
+            case "Thursday":
+                return Calendar.THURSDAY;
+            case "Friday":
+                return Calendar.FRIDAY;
+            case "Saturday":
+                return Calendar.SATURDAY;
+            default:
+                // no match
+                return -1;
         }
+    }
 
-        // catch Monday through Sunday
-        DateFormatSymbols dfs = new DateFormatSymbols(Locale.US);
-        String[] weekdays = dfs.getWeekdays();
+    /**
+     * Returns the next release of a show in UTC ms, today or within the next week.
+     */
+    private static long getShowReleaseTime(long releaseTime, String releaseCountry,
+            int releaseDayOfWeek) {
+        // get release "hours"
+        long timeOfDay = floorMod(releaseTime + OFFSET_CUSTOM_MS, DateUtils.DAY_IN_MILLIS);
+        int hour = (int) (timeOfDay / DateUtils.HOUR_IN_MILLIS);
+        int minute = (int) (timeOfDay % DateUtils.HOUR_IN_MILLIS / DateUtils.MINUTE_IN_MILLIS);
+
+        // get today in the release time zone
+        // release "hours" are set on this day as release time typically stays the same even if
+        // DST starts
+        TimeZone timeZone = getTimeZoneForCountry(releaseCountry);
+        long now = System.currentTimeMillis();
+        long epochDay = floorDiv(now + timeZone.getOffset(now), DateUtils.DAY_IN_MILLIS);
 
-        for (int i = 1; i < weekdays.length; i++) {
-            if (day.equals(weekdays[i])) {
-                return i;
-            }
+        // move to correct release day (not for daily shows)
+        if (releaseDayOfWeek > 0) {
+            // make sure we always assume a release date which is today or in the future
+            // to get correct local DST information when converting
+            int todayDayOfWeek = getDayOfWeekOfEpochDay(epochDay);
+            // get how far release day is ahead of today
+            epochDay += (releaseDayOfWeek + 7 - todayDayOfWeek) % 7;
         }
 
-        // no match
-        return -1;
+        return toReleaseTime(epochDay, hour, minute, releaseCountry);
     }
 
-    private static Calendar getShowReleaseTime(long releaseTime, String releaseCountry,
-            int releaseDayOfWeek) {
-        // create calendar, set to custom time zone
-        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone(TIMEZONE_ID_CUSTOM));
+    /**
+     * Converts a release date and time in the time zone of the release country to UTC ms and
+     * applies some TV specific corrections.
+     */
+    private static long toReleaseTime(long epochDay, int hour, int minute,
+            String releaseCountry) {
+        // TV scheduling madness: times between 12:00AM (midnight) and 12:59AM are attributed
+        // to the hour after the end of the current day
+        // example: Late Night with Jimmy Fallon
+        if (hour == 0) {
+            // move ahead one day (24 hours)
+            epochDay++;
+        }
 
-        // get release "hours"
-        calendar.setTimeInMillis(releaseTime);
-        int hour = calendar.get(Calendar.HOUR_OF_DAY);
-        int minute = calendar.get(Calendar.MINUTE);
+        TimeZone timeZone = getTimeZoneForCountry(releaseCountry);
+        long localTime = epochDay * DateUtils.DAY_IN_MILLIS + hour * DateUtils.HOUR_IN_MILLIS
+                + minute * DateUtils.MINUTE_IN_MILLIS;
+        long releaseTime = localToUtc(timeZone, localTime);
 
-        // set calendar to release time zone
-        String timeZoneId = getTimeZoneIdForCountry(releaseCountry);
-        calendar.setTimeZone(TimeZone.getTimeZone(timeZoneId));
+        return releaseTime + getCorrectionHours(timeZone, releaseTime, releaseCountry)
+                * DateUtils.HOUR_IN_MILLIS;
+    }
 
-        // set to today
-        calendar.setTimeInMillis(System.currentTimeMillis());
+    /**
+     * Converts a local time in the given time zone to UTC ms. Like {@link Calendar}, a local time
+     * skipped when daylight saving time starts is interpreted as standard time.
+     */
+    private static long localToUtc(TimeZone timeZone, long localTime) {
+        long standardTime = localTime - timeZone.getRawOffset();
+        int offset = timeZone.getOffset(standardTime);
+        long time = localTime - offset;
+        if (timeZone.getOffset(time) != offset) {
+            // the local time does not exist
+            return standardTime;
+        }
+        return time;
+    }
 
-        // set release "hours" on release country calendar
-        // has to be done as release time typically stays the same even if DST starts
-        calendar.set(Calendar.HOUR_OF_DAY, hour);
-        calendar.set(Calendar.MINUTE, minute);
-        calendar.set(Calendar.SECOND, 0);
-        calendar.set(Calendar.MILLISECOND, 0);
+    /**
+     * Parses a date in the format "yyyy-MM-dd".
+     *
+     * @return Days since 1970-01-01, or {@link #INVALID_DATE}.
+     */
+    private static long parseDate(String date) {
+        if (date == null) {
+            return INVALID_DATE;
+        }
+        final int length = date.length();
+        int index = 0;
+
+        int year = 0;
+        int start = index;
+        while (index < length && isDigit(date.charAt(index))) {
+            year = year * 10 + date.charAt(index) - '0';
+            index++;
+        }
+        if (index == start || index - start > 4 || index >= length || date.charAt(index) != '-') {
+            return INVALID_DATE;
+        }
+        index++;
 
-        // move to correct release day (not for daily shows)
-        if (releaseDayOfWeek > 0) {
-            // make sure we always assume a release date which is today or in the future
-            // to get correct local DST information when converting
-            int todayDayOfWeek = calendar.get(Calendar.DAY_OF_WEEK);
-            // get how far release day is ahead of today
-            int daysToMoveAhead = (releaseDayOfWeek + 7 - todayDayOfWeek) % 7;
-            // move ahead accordingly
-            calendar.add(Calendar.DAY_OF_MONTH, daysToMoveAhead);
+        int month = 0;
+        start = index;
+        while (index < length && isDigit(date.charAt(index))) {
+            month = month * 10 + date.charAt(index) - '0';
+            index++;
+        }
+        if (index == start || index - start > 2 || index >= length || date.charAt(index) != '-') {
+            return INVALID_DATE;
+        }
+        index++;
+
+        int day = 0;
+        start = index;
+        while (index < length && isDigit(date.charAt(index))) {
+            day = day * 10 + date.charAt(index) - '0';
+            index++;
+        }
+        if (index == start || index - start > 2) {
+            return INVALID_DATE;
+        }
+
+        if (month < 1 || month > 12 || day < 1 || day > 31) {
+            return INVALID_DATE;
+        }
+
+        return toEpochDay(year, month, day);
+    }
+
+    /**
+     * Returns the days since 1970-01-01 of a date in the proleptic Gregorian calendar. Days past
+     * the end of the month roll over into the next month.
+     */
+    private static long toEpochDay(int year, int month, int day) {
+        // see http://howardhinnant.github.io/date_algorithms.html#days_from_civil
+        if (month <= 2) {
+            year--;
         }
+        long era = (year >= 0 ? year : year - 399) / 400;
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * Returns the Calendar constant (e.g. <code>Calendar.SUNDAY</code>) for the day of the week
+     * of the given day since 1970-01-01.
+     */
+    private static int getDayOfWeekOfEpochDay(long epochDay) {
+        return (int) floorMod(epochDay + EPOCH_DAY_OF_WEEK_OFFSET, 7) + Calendar.SUNDAY;
+    }
 
-        // apply some TV specific corrections
-        applyCustomCorrections(calendar, hour, releaseCountry);
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
 
-        return calendar;
+    private static long floorDiv(long x, long y) {
+        long result = x / y;
+        if ((x % y != 0) && ((x < 0) != (y < 0))) {
+            result--;
+        }
+        return result;
+    }
+
+    private static long floorMod(long x, long y) {
+        return x - floorDiv(x, y) * y;
     }
 
     /**
@@ -269,23 +483,14 @@ public class TimeTools {
      * long, String)}) and adds user-set offsets.
      */
     public static Date getEpisodeReleaseTime(Context context, long releaseTime) {
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTimeInMillis(releaseTime);
-
-        setUserOffset(context, calendar);
-
-        return calendar.getTime();
+        return new Date(releaseTime + getUserOffset(context) * DateUtils.HOUR_IN_MILLIS);
     }
 
     /**
      * Returns the current system time with inverted user-set offsets applied.
      */
     public static long getCurrentTime(Context context) {
-        Calendar calendar = Calendar.getInstance();
-
-        setUserOffsetInverted(context, calendar);
-
-        return calendar.getTimeInMillis();
+        return System.currentTimeMillis() - getUserOffset(context) * DateUtils.HOUR_IN_MILLIS;
     }
 
     private static String formatToLocalReleaseDay(Context context, int releaseDayOfWeek,
@@ -411,38 +616,31 @@ public class TimeTools {
     }
 
     /**
-     * Corrects the "hour past midnight" and for US shows the release time if the device is set to a
-     * US time zone.
+     * Returns by how many hours the release time of a show from the given country has to be
+     * corrected if the device is set to a US or Canadian time zone.
      */
-    private static void applyCustomCorrections(Calendar calendar, int releaseHourOfDay,
+    private static int getCorrectionHours(TimeZone releaseTimeZone, long releaseTime,
             String releaseCountry) {
-        // TV scheduling madness: times between 12:00AM (midnight) and 12:59AM are attributed
-        // to the hour after the end of the current day
-        // example: Late Night with Jimmy Fallon
-        if (releaseHourOfDay == 0) {
-            // move ahead one day (24 hours)
-            calendar.add(Calendar.DAY_OF_MONTH, 1);
-        }
-
         // Shows from Canada typically air at the same time across its time zones
         if (CANADA.equals(releaseCountry)) {
-            applyCanadaCorrections(calendar);
-            return;
+            return getCanadaCorrectionHours();
         }
 
         // US shows air at the same LOCAL time across all its time zones (with exceptions)
         if (releaseCountry == null || releaseCountry.length() == 0
                 || UNITED_STATES.equals(releaseCountry)) {
-            applyUnitedStatesCorrections(calendar);
+            return getUnitedStatesCorrectionHours(releaseTimeZone, releaseTime);
         }
+
+        return 0;
     }
 
     /**
      * Reverse some time zone based release time shifts for Canadian time zones.
      */
-    private static void applyCanadaCorrections(Calendar calendar) {
+    private static int getCanadaCorrectionHours() {
         // get device time zone
-        final String localTimeZone = TimeZone.getDefault().getID();
+        final String localTimeZone = getDeviceTimeZoneId();
 
         /**
          * Base time zone for Canada is Eastern (see getTimeZoneIdForCountry()).
@@ -457,37 +655,34 @@ public class TimeTools {
                 || localTimeZone.equals(TIMEZONE_ID_CANADA_EASTERN)
                 || localTimeZone.equals(TIMEZONE_ID_CANADA_CENTRAL)
                 || localTimeZone.equals(TIMEZONE_ID_CANADA_MOUNTAIN)) {
-            return;
+            return 0;
         }
 
         // need to correct Pacific + Atlantic time zones
-        int hourOffset = 0;
         if (localTimeZone.equals(TIMEZONE_ID_CANADA_ATLANTIC)) {
             // 1 hour earlier than Eastern
-            hourOffset -= 1;
+            return -1;
         } else if (localTimeZone.equals(TIMEZONE_ID_CANADA_PACIFIC)) {
             // same LOCAL time as Eastern
-            hourOffset += 3;
-        }
-
-        if (hourOffset != 0) {
-            calendar.add(Calendar.HOUR_OF_DAY, hourOffset);
+            return 3;
         }
+        return 0;
     }
 
     /**
-     * If the device is set to a US time zone, adjusts the time based on the assumption that all US
-     * shows air at the same LOCAL time across US time zones (also handles exceptions for e.g. US
-     * Central time).<br/> <b>Do only call this for TV shows released in the US!</b>
+     * If the device is set to a US time zone, returns the correction based on the assumption that
+     * all US shows air at the same LOCAL time across US time zones (also handles exceptions for
+     * e.g. US Central time).<br/> <b>Do only call this for TV shows released in the US!</b>
      */
-    private static void applyUnitedStatesCorrections(Calendar calendar) {
+    private static int getUnitedStatesCorrectionHours(TimeZone releaseTimeZone,
+            long releaseTime) {
         // get device time zone
-        final String localTimeZone = TimeZone.getDefault().getID();
+        final String localTimeZone = getDeviceTimeZoneId();
 
         // no-op if device is set to US Pacific or non-US time zone
         if (!localTimeZone.startsWith(TIMEZONE_ID_PREFIX_AMERICA, 0)
                 || localTimeZone.equals(TIMEZONE_ID_US_PACIFIC)) {
-            return;
+            return 0;
         }
 
         // by default US shows are either in PST UTC−8:00 or PDT UTC−7:00
@@ -499,7 +694,8 @@ public class TimeTools {
             offset -= 1;
         } else if (localTimeZone.equals(TIMEZONE_ID_US_ARIZONA)) {
             // is always UTC-07:00, so like Mountain, but no DST
-            boolean pacificInDaylight = calendar.getTimeZone().inDaylightTime(calendar.getTime());
+            boolean pacificInDaylight = releaseTimeZone.getOffset(releaseTime)
+                    != releaseTimeZone.getRawOffset();
             if (!pacificInDaylight) {
                 offset -= 1;
             }
@@ -515,12 +711,15 @@ public class TimeTools {
 
         // TODO all applicable US time zones enter/leave DST at the same LOCAL time
         // correct for the short period where eastern zones already enabled/disabled DST,
-        // but the given calendar is still in PST/PDT
+        // but the given release time is still in PST/PDT
         // boolean isInDaylight = TimeZone.getTimeZone(localTimeZone).inDaylightTime();
 
-        if (offset != 0) {
-            calendar.add(Calendar.HOUR_OF_DAY, offset);
-        }
+        return offset;
+    }
+
+    private static String getDeviceTimeZoneId() {
+        String timeZoneId = sDeviceTimeZoneId;
+        return timeZoneId != null ? timeZoneId : TimeZone.getDefault().getID();
     }
 
     /**
@@ -591,29 +790,47 @@ public class TimeTools {
         return timeZoneId;
     }
 
-    private static void setUserOffset(Context context, Calendar calendar) {
-        int offset = getUserOffset(context);
-
-        if (offset != 0) {
-            calendar.add(Calendar.HOUR_OF_DAY, offset);
+    private static TimeZone getTimeZoneForCountry(String releaseCountry) {
+        if (releaseCountry == null) {
+            return TIME_ZONE_US_PACIFIC;
         }
+        TimeZone timeZone = TIME_ZONES_BY_COUNTRY.get(releaseCountry);
+        return timeZone != null ? timeZone : TIME_ZONE_US_PACIFIC;
     }
 
-    private static void setUserOffsetInverted(Context context, Calendar calendar) {
-        int offset = getUserOffset(context);
-
-        // invert
-        offset = -offset;
+    private static int getUserOffset(Context context) {
+        if (!sIsUserOffsetCached) {
+            initUserOffset(context.getApplicationContext());
+        }
+        return sUserOffset;
+    }
 
-        if (offset != 0) {
-            calendar.add(Calendar.HOUR_OF_DAY, offset);
+    /**
+     * Reads the user-set offset and keeps it up to date with a preference listener.
+     */
+    private static synchronized void initUserOffset(Context context) {
+        if (sIsUserOffsetCached) {
+            return;
         }
+        final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        sUserOffsetListener = new OnSharedPreferenceChangeListener() {
+            @Override
+            public void onSharedPreferenceChanged(SharedPreferences sharedPreferences,
+                    String key) {
+                if (SeriesGuidePreferences.KEY_OFFSET.equals(key)) {
+                    sUserOffset = readUserOffset(sharedPreferences);
+                    sTimeSettingsGeneration.incrementAndGet();
+                }
+            }
+        };
+        prefs.registerOnSharedPreferenceChangeListener(sUserOffsetListener);
+        sUserOffset = readUserOffset(prefs);
+        sIsUserOffsetCached = true;
     }
 
-    private static int getUserOffset(Context context) {
+    private static int readUserOffset(SharedPreferences prefs) {
         try {
-            return Integer.valueOf(PreferenceManager.getDefaultSharedPreferences(context)
-                    .getString(SeriesGuidePreferences.KEY_OFFSET, "0"));
+            return Integer.valueOf(prefs.getString(SeriesGuidePreferences.KEY_OFFSET, "0"));
         } catch (NumberFormatException e) {
             return 0;
         }
@@ -16,9 +16,8 @@
 
 package com.battlelancer.seriesguide.util;
 
-import android.content.ContentProviderOperation;
+import android.content.ContentValues;
 import android.content.Context;
-import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.support.v4.app.FragmentManager;
 import com.battlelancer.seriesguide.R;
@@ -56,15 +55,18 @@ public class TraktTools {
     private static final String TRAKT_SEARCH_EPISODE_ARG = "&e=";
 
     /**
-     * Downloads and sets watched and collected flags from trakt on local episodes.
+     * Downloads watched and collected flags from trakt and changes the flags of local episodes
+     * where they differ. Episodes that already have the correct flag are not touched.
      *
-     * @param clearExistingFlags If set, all watched and collected (and only those, e.g. skipped
-     *                           flag is preserved) flags will be removed prior to getting the
-     *                           actual flags from trakt (season by season).
+     * @param changedShows       TVDb ids of shows with changed episode flags are added to this.
+     * @param clearExistingFlags If set, watched and collected (and only those, e.g. skipped flag is
+     *                           preserved) flags of episodes not watched or collected on trakt will
+     *                           be removed.
      * @return Any of the {@link TraktTools} result codes.
      */
     public static int syncToSeriesGuide(Context context, Trakt trakt,
-            HashSet<Integer> localShows, boolean clearExistingFlags) {
+            HashSet<Integer> localShows, HashSet<Integer> changedShows,
+            boolean clearExistingFlags) {
         if (localShows.size() == 0) {
             return SUCCESS_NOWORK;
         }
@@ -84,9 +86,9 @@ public class TraktTools {
         if (remoteShows == null) {
             return FAILED_API;
         }
-        if (!remoteShows.isEmpty()) {
-            applyEpisodeFlagChanges(context, remoteShows, localShows,
-                    SeriesGuideContract.Episodes.WATCHED, clearExistingFlags);
+        if (!applyEpisodeFlagChanges(context, remoteShows, localShows, changedShows,
+                SeriesGuideContract.Episodes.WATCHED, clearExistingFlags)) {
+            return FAILED;
         }
 
         // collected episodes
@@ -100,145 +102,206 @@ public class TraktTools {
         if (remoteShows == null) {
             return FAILED_API;
         }
-        if (!remoteShows.isEmpty()) {
-            applyEpisodeFlagChanges(context, remoteShows, localShows,
-                    SeriesGuideContract.Episodes.COLLECTED, clearExistingFlags);
+        if (!applyEpisodeFlagChanges(context, remoteShows, localShows, changedShows,
+                SeriesGuideContract.Episodes.COLLECTED, clearExistingFlags)) {
+            return FAILED;
         }
 
         return SUCCESS;
     }
 
-    private static void applyEpisodeFlagChanges(Context context, List<TvShow> remoteShows,
-            HashSet<Integer> localShows, String episodeFlagColumn, boolean clearExistingFlags) {
-        HashSet<Integer> skippedShows = new HashSet<>(localShows);
-
-        // loop through shows on trakt, update the ones existing locally
-        for (TvShow tvShow : remoteShows) {
-            if (tvShow == null || tvShow.tvdb_id == null
-                    || !localShows.contains(tvShow.tvdb_id)) {
-                // does not match, skip
-                continue;
-            }
-
-            applyEpisodeFlagChanges(context, tvShow, episodeFlagColumn, clearExistingFlags);
-
-            skippedShows.remove(tvShow.tvdb_id);
-        }
-
-        // clear flags on all shows not synced
-        if (clearExistingFlags && skippedShows.size() > 0) {
-            clearFlagsOfShow(context, episodeFlagColumn, skippedShows);
+    /**
+     * Compares the episodes flagged on trakt with the locally flagged ones (read with a single
+     * query) and only writes the differences. Does nothing if no shows are flagged on trakt. Adds
+     * the TVDb ids of shows with changed episodes to {@code changedShows}.
+     *
+     * @return False if the local flags could not be read.
+     */
+    private static boolean applyEpisodeFlagChanges(Context context, List<TvShow> remoteShows,
+            HashSet<Integer> localShows, HashSet<Integer> changedShows, String episodeFlagColumn,
+            boolean clearExistingFlags) {
+        if (remoteShows.isEmpty()) {
+            // do not clear all local flags, e.g. if trakt returned an empty response by mistake
+            return true;
         }
-    }
 
-    private static void clearFlagsOfShow(Context context, String episodeFlagColumn,
-            HashSet<Integer> skippedShows) {
+        int episodeFlag;
         int episodeDefaultFlag;
+        String flaggedSelection;
         switch (episodeFlagColumn) {
             case SeriesGuideContract.Episodes.WATCHED:
+                episodeFlag = EpisodeFlags.WATCHED;
                 episodeDefaultFlag = EpisodeFlags.UNWATCHED;
+                // do not remove flag of skipped episodes, only for watched ones
+                flaggedSelection = SeriesGuideContract.Episodes.SELECTION_WATCHED;
                 break;
             case SeriesGuideContract.Episodes.COLLECTED:
-            default:
+                episodeFlag = 1;
                 episodeDefaultFlag = 0;
+                flaggedSelection = SeriesGuideContract.Episodes.SELECTION_COLLECTED;
                 break;
+            default:
+                return true;
+        }
+
+        // episodes flagged on trakt of shows that exist locally
+        HashSet<EpisodeKey> remoteFlagged = new HashSet<>();
+        for (TvShow tvShow : remoteShows) {
+            if (tvShow == null || tvShow.tvdb_id == null
+                    || !localShows.contains(tvShow.tvdb_id)) {
+                // does not match, skip
+                continue;
+            }
+            addEpisodeKeys(remoteFlagged, tvShow);
         }
 
-        ArrayList<ContentProviderOperation> batch = new ArrayList<>();
-        for (Integer tvShowTvdbId : skippedShows) {
-            batch.add(ContentProviderOperation
-                    .newUpdate(SeriesGuideContract.Episodes.buildEpisodesOfShowUri(tvShowTvdbId))
-                    .withValue(episodeFlagColumn, episodeDefaultFlag).build());
+        // episodes flagged locally are either already correct or not flagged on trakt
+        ArrayList<ContentValues> changes = new ArrayList<>();
+        Cursor flagged = context.getContentResolver().query(
+                SeriesGuideContract.Episodes.CONTENT_URI, FlaggedEpisodesQuery.PROJECTION,
+                flaggedSelection, null, null);
+        if (flagged == null) {
+            Timber.e("Querying " + episodeFlagColumn + " episodes failed");
+            return false;
         }
-        try {
-            DBUtils.applyInSmallBatches(context, batch);
-        } catch (OperationApplicationException e) {
-            Timber.e("Clearing " + episodeFlagColumn + " flags for shows failed");
-            // continue, next sync will try again
+        while (flagged.moveToNext()) {
+            int showTvdbId = flagged.getInt(FlaggedEpisodesQuery.SHOW_ID);
+            int season = flagged.getInt(FlaggedEpisodesQuery.SEASON);
+            int number = flagged.getInt(FlaggedEpisodesQuery.NUMBER);
+            if (!remoteFlagged.remove(new EpisodeKey(showTvdbId, season, number))
+                    && clearExistingFlags && localShows.contains(showTvdbId)) {
+                changes.add(buildFlagValues(showTvdbId, season, number, episodeFlagColumn,
+                        episodeDefaultFlag));
+                changedShows.add(showTvdbId);
+            }
+        }
+        flagged.close();
+
+        // remaining episodes are only flagged on trakt
+        for (EpisodeKey key : remoteFlagged) {
+            changes.add(buildFlagValues(key.showTvdbId, key.season, key.number,
+                    episodeFlagColumn, episodeFlag));
+            changedShows.add(key.showTvdbId);
         }
+
+        Timber.d("Applying " + changes.size() + " " + episodeFlagColumn + " flag changes");
+        applyFlagChanges(context, changes);
+        return true;
     }
 
     /**
-     * Applies database ops in small increments for the given episodes, setting the appropriate
-     * flag
-     * in the given column.
+     * Sets the watched or collected flag for all episodes of the given show from trakt. Does not
+     * remove any flags.
      *
-     * @param episodeFlagColumn  Which flag column the given data should change. Supports {@link
-     *                           com.battlelancer.seriesguide.provider.SeriesGuideContract.Episodes#WATCHED}
-     *                           and {@link com.battlelancer.seriesguide.provider.SeriesGuideContract.Episodes#COLLECTED}.
-     * @param clearExistingFlags If set, existing flags for all of this shows episodes will be set
-     *                           to the default flag prior applying other changes.
+     * @param episodeFlagColumn Which flag column the given data should change. Supports {@link
+     *                          com.battlelancer.seriesguide.provider.SeriesGuideContract.Episodes#WATCHED}
+     *                          and {@link com.battlelancer.seriesguide.provider.SeriesGuideContract.Episodes#COLLECTED}.
      */
     public static void applyEpisodeFlagChanges(Context context,
-            TvShow tvShow, String episodeFlagColumn, boolean clearExistingFlags) {
+            TvShow tvShow, String episodeFlagColumn) {
         if (tvShow.seasons == null) {
             return;
         }
 
         int episodeFlag;
-        int episodeDefaultFlag;
-        String clearSelection;
         switch (episodeFlagColumn) {
             case SeriesGuideContract.Episodes.WATCHED:
                 episodeFlag = EpisodeFlags.WATCHED;
-                episodeDefaultFlag = EpisodeFlags.UNWATCHED;
-                // do not remove flag of skipped episodes, only for watched ones
-                clearSelection = SeriesGuideContract.Episodes.WATCHED + "=" + EpisodeFlags.WATCHED;
                 break;
             case SeriesGuideContract.Episodes.COLLECTED:
                 episodeFlag = 1;
-                episodeDefaultFlag = 0;
-                // only remove flags for already collected episodes
-                clearSelection = SeriesGuideContract.Episodes.COLLECTED + "=1";
                 break;
             default:
                 return;
         }
 
-        ArrayList<ContentProviderOperation> batch = new ArrayList<>();
+        ArrayList<ContentValues> changes = new ArrayList<>();
+        for (TvShowSeason season : tvShow.seasons) {
+            if (season == null || season.season == null ||
+                    season.episodes == null || season.episodes.numbers == null) {
+                continue;
+            }
+            for (Integer episode : season.episodes.numbers) {
+                if (episode != null) {
+                    changes.add(buildFlagValues(tvShow.tvdb_id, season.season, episode,
+                            episodeFlagColumn, episodeFlag));
+                }
+            }
+        }
+
+        applyFlagChanges(context, changes);
+    }
+
+    /**
+     * Identifies an episode by show TVDb id, season and episode number.
+     */
+    private static class EpisodeKey {
+
+        final int showTvdbId;
+        final int season;
+        final int number;
+
+        EpisodeKey(int showTvdbId, int season, int number) {
+            this.showTvdbId = showTvdbId;
+            this.season = season;
+            this.number = number;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof EpisodeKey)) {
+                return false;
+            }
+            EpisodeKey other = (EpisodeKey) o;
+            return showTvdbId == other.showTvdbId && season == other.season
+                    && number == other.number;
+        }
 
-        if (clearExistingFlags) {
-            // remove all flags for episodes of this show
-            // loop below will run at least once (would not be here if not at least one season),
-            // so op-apply is ensured
-            batch.add(ContentProviderOperation
-                    .newUpdate(SeriesGuideContract.Episodes.buildEpisodesOfShowUri(tvShow.tvdb_id))
-                    .withSelection(clearSelection, null)
-                    .withValue(episodeFlagColumn, episodeDefaultFlag)
-                    .build());
+        @Override
+        public int hashCode() {
+            int result = showTvdbId;
+            result = 31 * result + season;
+            result = 31 * result + number;
+            return result;
         }
+    }
 
+    private static void addEpisodeKeys(HashSet<EpisodeKey> keys, TvShow tvShow) {
+        if (tvShow.seasons == null) {
+            return;
+        }
         for (TvShowSeason season : tvShow.seasons) {
             if (season == null || season.season == null ||
                     season.episodes == null || season.episodes.numbers == null) {
                 continue;
             }
-
-            // build db ops to flag episodes according to given data
             for (Integer episode : season.episodes.numbers) {
-                batch.add(ContentProviderOperation
-                        .newUpdate(
-                                SeriesGuideContract.Episodes.buildEpisodesOfShowUri(tvShow.tvdb_id))
-                        .withSelection(
-                                SeriesGuideContract.Episodes.SEASON + "=" + season.season + " AND "
-                                        + SeriesGuideContract.Episodes.NUMBER + "=" + episode, null
-                        )
-                        .withValue(episodeFlagColumn, episodeFlag)
-                        .build());
+                if (episode != null) {
+                    keys.add(new EpisodeKey(tvShow.tvdb_id, season.season, episode));
+                }
             }
+        }
+    }
 
-            // apply batch of this season
-            try {
-                DBUtils.applyInSmallBatches(context, batch);
-            } catch (OperationApplicationException e) {
-                Timber.e("Applying flag changes failed: " + tvShow.tvdb_id + " season: "
-                        + season.season + " column: " + episodeFlagColumn, e);
-                // do not abort, try other seasons
-                // some episodes might be in incorrect state, but next update should fix that
-                // this includes the clear flags op failing
-            }
-            batch.clear();
+    private static ContentValues buildFlagValues(int showTvdbId, int season, int number,
+            String episodeFlagColumn, int flag) {
+        ContentValues values = new ContentValues();
+        values.put(SeriesGuideContract.Shows.REF_SHOW_ID, showTvdbId);
+        values.put(SeriesGuideContract.Episodes.SEASON, season);
+        values.put(SeriesGuideContract.Episodes.NUMBER, number);
+        values.put(episodeFlagColumn, flag);
+        return values;
+    }
+
+    private static void applyFlagChanges(Context context, ArrayList<ContentValues> changes) {
+        if (changes.isEmpty()) {
+            return;
         }
+        context.getContentResolver().bulkInsert(SeriesGuideContract.Episodes.CONTENT_URI_FLAGS,
+                changes.toArray(new ContentValues[changes.size()]));
     }
 
     /**
@@ -252,64 +315,71 @@ public class TraktTools {
         }
 
         ShowService showService = trakt.showService();
-        for (Integer showTvdbId : localShows) {
-            // build a list of all watched episodes
-            /**
-             * We do not have to worry about uploading episodes that are already watched on
-             * trakt, it will keep the original timestamp of the episodes being watched.
-             */
-            List<ShowService.Episodes.Episode> watchedEpisodesToUpload = new ArrayList<>();
-            Cursor watchedEpisodes = context.getContentResolver().query(
-                    SeriesGuideContract.Episodes.buildEpisodesOfShowUri(showTvdbId),
-                    EpisodesQuery.PROJECTION,
-                    SeriesGuideContract.Episodes.SELECTION_WATCHED, null, null);
-            if (watchedEpisodes == null) {
-                return FAILED;
-            }
-            buildEpisodeList(watchedEpisodesToUpload, watchedEpisodes);
-            watchedEpisodes.close();
-
-            // build a list of collected episodes
-            List<ShowService.Episodes.Episode> collectedEpisodesToUpload = new ArrayList<>();
-            Cursor collectedEpisodes = context.getContentResolver()
-                    .query(SeriesGuideContract.Episodes.buildEpisodesOfShowUri(showTvdbId),
-                            EpisodesQuery.PROJECTION,
-                            SeriesGuideContract.Episodes.SELECTION_COLLECTED, null, null);
-            if (collectedEpisodes == null) {
-                return FAILED;
-            }
-            buildEpisodeList(collectedEpisodesToUpload, collectedEpisodes);
-            collectedEpisodes.close();
-
-            try {
-                // post to trakt
-                // watched episodes
-                if (watchedEpisodesToUpload.size() > 0) {
-                    showService.episodeSeen(new ShowService.Episodes(
-                            showTvdbId, watchedEpisodesToUpload
-                    ));
+
+        /**
+         * We do not have to worry about uploading episodes that are already watched on
+         * trakt, it will keep the original timestamp of the episodes being watched.
+         */
+        int result = uploadEpisodes(context, showService, localShows,
+                SeriesGuideContract.Episodes.SELECTION_WATCHED, true);
+        if (result < 0) {
+            return result;
+        }
+        return uploadEpisodes(context, showService, localShows,
+                SeriesGuideContract.Episodes.SELECTION_COLLECTED, false);
+    }
+
+    /**
+     * Reads all episodes matching the selection ordered by show with a single query and sends
+     * them to trakt show by show.
+     */
+    private static int uploadEpisodes(Context context, ShowService showService,
+            HashSet<Integer> localShows, String selection, boolean isWatched) {
+        Cursor episodes = context.getContentResolver().query(
+                SeriesGuideContract.Episodes.CONTENT_URI, FlaggedEpisodesQuery.PROJECTION,
+                selection, null, FlaggedEpisodesQuery.SORT_BY_SHOW);
+        if (episodes == null) {
+            return FAILED;
+        }
+
+        try {
+            int currentShowTvdbId = 0;
+            List<ShowService.Episodes.Episode> episodesToUpload = new ArrayList<>();
+            while (episodes.moveToNext()) {
+                int showTvdbId = episodes.getInt(FlaggedEpisodesQuery.SHOW_ID);
+                if (!localShows.contains(showTvdbId)) {
+                    continue;
                 }
-                // collected episodes
-                if (collectedEpisodesToUpload.size() > 0) {
-                    showService.episodeLibrary(new ShowService.Episodes(
-                            showTvdbId, collectedEpisodesToUpload
-                    ));
+                if (showTvdbId != currentShowTvdbId) {
+                    uploadEpisodesOfShow(showService, currentShowTvdbId, episodesToUpload,
+                            isWatched);
+                    episodesToUpload = new ArrayList<>();
+                    currentShowTvdbId = showTvdbId;
                 }
-            } catch (RetrofitError e) {
-                Timber.e(e, "Uploading episodes to trakt failed");
-                return FAILED_API;
+                episodesToUpload.add(new ShowService.Episodes.Episode(
+                        episodes.getInt(FlaggedEpisodesQuery.SEASON),
+                        episodes.getInt(FlaggedEpisodesQuery.NUMBER)));
             }
+            uploadEpisodesOfShow(showService, currentShowTvdbId, episodesToUpload, isWatched);
+        } catch (RetrofitError e) {
+            Timber.e(e, "Uploading episodes to trakt failed");
+            return FAILED_API;
+        } finally {
+            episodes.close();
         }
 
         return SUCCESS;
     }
 
-    private static void buildEpisodeList(List<ShowService.Episodes.Episode> episodesToUpload,
-            Cursor episodes) {
-        while (episodes.moveToNext()) {
-            int season = episodes.getInt(EpisodesQuery.SEASON);
-            int episode = episodes.getInt(EpisodesQuery.EPISODE);
-            episodesToUpload.add(new ShowService.Episodes.Episode(season, episode));
+    private static void uploadEpisodesOfShow(ShowService showService, int showTvdbId,
+            List<ShowService.Episodes.Episode> episodes, boolean isWatched) {
+        if (episodes.isEmpty()) {
+            return;
+        }
+        if (isWatched) {
+            showService.episodeSeen(new ShowService.Episodes(showTvdbId, episodes));
+        } else {
+            showService.episodeLibrary(new ShowService.Episodes(showTvdbId, episodes));
         }
     }
 
@@ -407,13 +477,17 @@ public class TraktTools {
         newFragment.show(fragmentManager, "traktratedialog");
     }
 
-    public interface EpisodesQuery {
+    private interface FlaggedEpisodesQuery {
 
-        public String[] PROJECTION = new String[] {
-                SeriesGuideContract.Episodes.SEASON, SeriesGuideContract.Episodes.NUMBER
+        String[] PROJECTION = new String[] {
+                SeriesGuideContract.Shows.REF_SHOW_ID, SeriesGuideContract.Episodes.SEASON,
+                SeriesGuideContract.Episodes.NUMBER
         };
 
-        int SEASON = 0;
-        int EPISODE = 1;
+        String SORT_BY_SHOW = SeriesGuideContract.Shows.REF_SHOW_ID + " ASC";
+
+        int SHOW_ID = 0;
+        int SEASON = 1;
+        int NUMBER = 2;
     }
 }
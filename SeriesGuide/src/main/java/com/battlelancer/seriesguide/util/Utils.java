@@ -43,6 +43,7 @@ import com.battlelancer.seriesguide.Analytics;
 import com.battlelancer.seriesguide.BuildConfig;
 import com.battlelancer.seriesguide.R;
 import com.battlelancer.seriesguide.billing.BillingActivity;
+import com.battlelancer.seriesguide.service.ImagePrefetchService;
 import com.battlelancer.seriesguide.service.NotificationService;
 import com.battlelancer.seriesguide.service.OnAlarmReceiver;
 import com.battlelancer.seriesguide.settings.AdvancedSettings;
@@ -147,6 +148,14 @@ public class Utils {
         context.startService(i);
     }
 
+    /**
+     * Run the image prefetch service to download posters and episode images into the image cache.
+     */
+    public static void runImagePrefetchService(Context context) {
+        Intent i = new Intent(context, ImagePrefetchService.class);
+        context.startService(i);
+    }
+
     /**
      * Run the notification service delayed by a minute to display and (re)schedule upcoming episode
      * alarms.
@@ -396,9 +405,9 @@ public class Utils {
             return;
         }
 
-        ServiceUtils.getPicasso(context).load(TheTVDB.buildPosterUrl(posterPath))
-                .centerCrop()
-                .resizeDimen(R.dimen.show_poster_width, R.dimen.show_poster_height)
+        ServiceUtils.getPicasso(context)
+                .load(ThumbnailCache.buildUri(context, TheTVDB.buildPosterUrl(posterPath),
+                        R.dimen.show_poster_width, R.dimen.show_poster_height))
                 .error(R.drawable.ic_image_missing)
                 .into(imageView);
     }
@@ -594,10 +603,7 @@ public class Utils {
     public static InputStream downloadUrl(String urlString) throws IOException {
         URL url = new URL(urlString);
 
-        HttpURLConnection conn = ServiceUtils.getUrlFactory().open(url);
-        conn.connect();
-
-        return conn.getInputStream();
+        return openConnection(ServiceUtils.getUrlFactory().open(url));
     }
 
     /**
@@ -609,9 +615,29 @@ public class Utils {
             throws IOException {
         URL url = new URL(urlString);
 
-        HttpURLConnection conn = ServiceUtils.getCachingUrlFactory(context).open(url);
-        conn.connect();
+        return openConnection(ServiceUtils.getCachingUrlFactory(context).open(url));
+    }
 
-        return conn.getInputStream();
+    /**
+     * Connects, waiting for a free slot for the host of the connection. The slot is held and
+     * metrics (see {@link com.battlelancer.seriesguide.util.HttpHosts}) are recorded until the
+     * returned stream is closed, so callers must close it.
+     */
+    private static InputStream openConnection(HttpURLConnection conn) throws IOException {
+        HttpHosts.Request request = HttpHosts.begin(conn.getURL().getHost());
+        boolean isBodyTracked = false;
+        try {
+            conn.connect();
+            InputStream in = conn.getInputStream();
+            boolean fromCache = LocalOnlyOkHttpDownloader.parseResponseSourceHeader(
+                    conn.getHeaderField(LocalOnlyOkHttpDownloader.RESPONSE_SOURCE_OKHTTP));
+            in = request.track(in, fromCache);
+            isBodyTracked = true;
+            return in;
+        } finally {
+            if (!isBodyTracked) {
+                request.fail();
+            }
+        }
     }
 }